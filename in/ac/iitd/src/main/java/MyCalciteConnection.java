@@ -69,7 +69,9 @@ public class MyCalciteConnection {
     
     public MyCalciteConnection() throws Exception {
 
-        storage_manager = new StorageManager();
+        // tables and indexes persist across runs only when a storage directory is configured
+        String storage_dir = System.getProperty(StorageManager.STORAGE_DIR_PROPERTY);
+        storage_manager = storage_dir == null ? new StorageManager() : new StorageManager(storage_dir);
         Properties info = new Properties();
         info.put("model", jsonPath("model"));
         info.put(CalciteConnectionProperty.CASE_SENSITIVE.camelName(), Boolean.FALSE.toString());
@@ -118,12 +120,14 @@ public class MyCalciteConnection {
             )).getType());
         }
 
-        // load the tables
-        for (String table : tableSchema.keySet()) {
-            List<RelDataType> fields = tableSchema.get(table);
-            storage_manager.loadFile(table + ".csv", fields);
+        // the tables reopened from the storage directory are already there, the others are loaded the first time
+        // they are used - or all up front, in parallel, with -Ddb362.lazy.load=false
+        if (Boolean.parseBoolean(System.getProperty(StorageManager.LAZY_LOAD_PROPERTY, "true"))) {
+            storage_manager.register_tables(tableSchema);
+        } else {
+            storage_manager.loadFiles(tableSchema);
+            System.out.println("Done loading files");
         }
-        System.out.println("Done loading files");
 
         Prepare.CatalogReader catalogReader = new CalciteCatalogReader(
             calciteSchema,
@@ -142,7 +146,8 @@ public class MyCalciteConnection {
 
         validator = SqlValidatorUtil.newValidator(operatorTable, catalogReader, typeFactory, validatorConfig);
 
-        planner = new VolcanoPlanner(RelOptCostImpl.FACTORY, Contexts.of(config));
+        // the physical operators cost themselves off the statistics of the storage manager
+        planner = new VolcanoPlanner(RelOptCostImpl.FACTORY, Contexts.of(config, storage_manager));
         planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
 
         RelOptCluster cluster = RelOptCluster.create(planner, new RexBuilder(typeFactory));
@@ -163,6 +168,7 @@ public class MyCalciteConnection {
 
     public void close() throws Exception{
         connection.close();
+        storage_manager.close();
     }
 
     public SqlNode parseSql(String sql) throws Exception{
@@ -194,6 +200,24 @@ public class MyCalciteConnection {
         return;
     }
 
+    // fill_factor in (0, 1] - fraction of each index node filled when the index is built
+    public void create_index(String table, String column_name, int order, double fill_factor){
+        storage_manager.create_index(table, column_name, order, fill_factor);
+        return;
+    }
+
+    // composite index - keyed on the columns in the order given
+    public void create_index(String table, List<String> column_names, int order){
+        storage_manager.create_index(table, column_names, order);
+        return;
+    }
+
+    // covering index - included_columns are kept in the index too, queries reading nothing else skip the table
+    public void create_index(String table, List<String> column_names, List<String> included_columns, int order){
+        storage_manager.create_index(table, column_names, included_columns, order);
+        return;
+    }
+
     public List<Object []> evaluate(RelNode node) {
         return ((PRel) node).evaluate(storage_manager);
     }
@@ -16,7 +16,8 @@ import java.util.TimeZone;
 public class CsvRowConverter {
 
 
-    private static final CSVParser parser;
+    // the parser keeps state from one line to the next, so every loading thread gets its own
+    private static final ThreadLocal<CSVParser> parser = ThreadLocal.withInitial(CSVParser::new);
 
     private static final FastDateFormat TIME_FORMAT_DATE;
     private static final FastDateFormat TIME_FORMAT_TIME;
@@ -27,8 +28,6 @@ public class CsvRowConverter {
         TIME_FORMAT_DATE = FastDateFormat.getInstance("yyyy-MM-dd", gmt);
         TIME_FORMAT_TIME = FastDateFormat.getInstance("HH:mm:ss", gmt);
         TIME_FORMAT_TIMESTAMP = FastDateFormat.getInstance("yyyy-MM-dd HH:mm:ss", gmt);
-
-        parser = new CSVParser();
     }
 
     public static Object convert(RelDataType fieldType, String string) {
@@ -112,6 +111,27 @@ public class CsvRowConverter {
         }
     }
 
+    // the value convert(fieldType, csv.get_string(field)) gives, numbers and booleans parsed straight from the bytes
+    public static Object convert(RelDataType fieldType, CsvTokenizer csv, int field) {
+        if (fieldType == null) {
+            return csv.get_string(field);
+        }
+        switch (fieldType.getSqlTypeName()) {
+            case VARCHAR:
+                return csv.get_string(field);
+            case BOOLEAN:
+                return csv.is_empty(field) ? null : csv.get_boolean(field);
+            case INTEGER:
+                return csv.is_empty(field) ? null : csv.get_int(field);
+            case FLOAT:
+                return csv.is_empty(field) ? null : csv.get_float(field);
+            case DOUBLE:
+                return csv.is_empty(field) ? null : csv.get_double(field);
+            default:
+                return convert(fieldType, csv.get_string(field));
+        }
+    }
+
     private static BigDecimal parseDecimal(int precision, int scale, String string) {
         BigDecimal result = new BigDecimal(string);
         // If the parsed value has more fractional digits than the specified scale, round ties away
@@ -131,6 +151,6 @@ public class CsvRowConverter {
 
 
     public static String[] parseLine(String s) throws IOException {
-        return parser.parseLine(s);
+        return parser.get().parseLine(s);
     }
 }
\ No newline at end of file
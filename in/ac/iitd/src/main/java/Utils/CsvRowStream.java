@@ -0,0 +1,100 @@
+package Utils;
+
+import org.apache.calcite.rel.type.RelDataType;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/*
+ * The rows of a CSV file, tokenized and converted on a thread of their own -
+ * whoever takes them (e.g. appends them to a table) works on one batch while the next ones are parsed.
+ * Rows have one value per column type, in the order of the CSV, converted like CsvRowConverter.convert.
+ */
+public class CsvRowStream implements AutoCloseable {
+
+    private static final int BATCH_SIZE = 1024;
+    // batches parsed ahead at most, so a slow consumer doesn't pile the whole file up in memory
+    private static final int BATCHES_AHEAD = 4;
+    private static final Object[][] END = new Object[0][];
+
+    private final BlockingQueue<Object[][]> batches = new ArrayBlockingQueue<>(BATCHES_AHEAD);
+    private final Thread parser;
+    private volatile Exception failure;
+    private boolean done = false;
+
+    // the rows after the one csv is on (e.g. the header)
+    public CsvRowStream(CsvTokenizer csv, List<RelDataType> types, String name) {
+        parser = new Thread(() -> parse(csv, types), "csv-parser-" + name);
+        parser.setDaemon(true);
+        parser.start();
+    }
+
+    private void parse(CsvTokenizer csv, List<RelDataType> types) {
+        try {
+            Object[][] batch = new Object[BATCH_SIZE][];
+            int n = 0;
+            while (csv.next_row()) {
+                Object[] row = new Object[types.size()];
+                for (int i = 0; i < row.length && i < csv.num_fields(); i++) {
+                    row[i] = CsvRowConverter.convert(types.get(i), csv, i);
+                }
+                batch[n++] = row;
+                if (n == BATCH_SIZE) {
+                    batches.put(batch);
+                    batch = new Object[BATCH_SIZE][];
+                    n = 0;
+                }
+            }
+            if (n > 0) {
+                batches.put(Arrays.copyOf(batch, n));
+            }
+        } catch (InterruptedException e) {
+            // closed before the end
+            return;
+        } catch (Exception e) {
+            failure = e;
+        }
+        try {
+            batches.put(END);
+        } catch (InterruptedException e) {
+            // closed before the end
+        }
+    }
+
+    // the next rows, null after the last one - a failure while parsing is thrown here
+    public Object[][] next_batch() throws IOException {
+        if (done) {
+            return null;
+        }
+        Object[][] batch;
+        try {
+            batch = batches.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for rows", e);
+        }
+        if (batch != END) {
+            return batch;
+        }
+        done = true;
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+        return null;
+    }
+
+    // stops the parser if the rows weren't all taken
+    @Override
+    public void close() {
+        parser.interrupt();
+    }
+}
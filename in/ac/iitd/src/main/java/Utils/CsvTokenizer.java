@@ -0,0 +1,303 @@
+package Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Splits a CSV file into rows and fields at the byte level, reading it in large chunks.
+ * Fields stay bytes until asked for - get_int / get_double etc. parse them in place, only get_string makes a String.
+ *
+ * Gives the same fields as opencsv's CSVParser.parseLine (the default one CsvRowConverter uses) on every line,
+ * quirks included - e.g. a backslash outside quotes is dropped. Lines end at \n, \r or \r\n like readLine,
+ * a quoted field can't span lines, and blank lines are skipped.
+ * The special characters are all ASCII, so they never show up inside a multi byte UTF-8 character.
+ */
+public class CsvTokenizer implements AutoCloseable {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final byte SEPARATOR = ',';
+    private static final byte QUOTE = '"';
+    private static final byte ESCAPE = '\\';
+
+    private final FileChannel channel;
+    private byte[] buffer = new byte[CHUNK_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private long line_number = 0;
+
+    // fields of the current row, copied out of the line with the quoting taken off
+    private byte[] fields = new byte[1024];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int num_fields = 0;
+    // CSVParser doesn't reset this between lines either
+    private boolean in_field = false;
+
+    public CsvTokenizer(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+
+    // moves to the next row, false once the file is done
+    public boolean next_row() throws IOException {
+        while (true) {
+            int end = find_line_end();
+            if (end < 0) {
+                return false;
+            }
+            int start = position;
+            position = Math.min(end + 1, limit);
+            // \r\n is one line end
+            if (end < limit && buffer[end] == '\r' && position < limit && buffer[position] == '\n') {
+                position++;
+            }
+            line_number++;
+            if (end > start) {
+                tokenize(start, end);
+                return true;
+            }
+        }
+    }
+
+    // index of the \n or \r ending the line at position (limit for a last line without one), -1 at the end of the file
+    private int find_line_end() throws IOException {
+        int i = position;
+        while (true) {
+            for (; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    return i;
+                }
+                // a \r needs the byte after it in the buffer too, it may be a \r\n
+                if (buffer[i] == '\r' && (i + 1 < limit || eof)) {
+                    return i;
+                }
+                if (buffer[i] == '\r') {
+                    break;
+                }
+            }
+            if (eof) {
+                return position < limit ? limit : -1;
+            }
+            int scanned = i - position;
+            fill();
+            i = scanned;
+        }
+    }
+
+    // moves what is left of the chunk to the front and reads more after it, growing the buffer for a long line
+    private void fill() throws IOException {
+        int remaining = limit - position;
+        if (remaining == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        System.arraycopy(buffer, position, buffer, 0, remaining);
+        position = 0;
+        limit = remaining;
+        ByteBuffer target = ByteBuffer.wrap(buffer, limit, buffer.length - limit);
+        int read = 0;
+        while (target.hasRemaining() && (read = channel.read(target)) > 0) {
+        }
+        limit = target.position();
+        if (read < 0) {
+            eof = true;
+        }
+    }
+
+    // CSVParser.parseLine, over the bytes of one line
+    private void tokenize(int start, int end) throws IOException {
+        num_fields = 0;
+        int length = 0;
+        int field_start = 0;
+        boolean in_quotes = false;
+        // index of the current byte as a char index into the line, for the one rule that looks at it
+        int char_index = -1;
+        for (int i = start; i < end; i++) {
+            byte c = buffer[i];
+            if ((c & 0xC0) != 0x80) {
+                // 4 byte characters are two chars (a surrogate pair) in a String
+                char_index += (c & 0xF8) == 0xF0 ? 2 : 1;
+            }
+            if (fields.length < length + 1) {
+                fields = Arrays.copyOf(fields, 2 * fields.length);
+            }
+            if (c == ESCAPE) {
+                if ((in_quotes || in_field) && i + 1 < end && (buffer[i + 1] == QUOTE || buffer[i + 1] == ESCAPE)) {
+                    fields[length++] = buffer[++i];
+                    char_index++;
+                }
+            } else if (c == QUOTE) {
+                if ((in_quotes || in_field) && i + 1 < end && buffer[i + 1] == QUOTE) {
+                    fields[length++] = buffer[++i];
+                    char_index++;
+                } else {
+                    // a quote in the middle of a field: a,bc"d"ef,g
+                    if (char_index > 2 && buffer[i - 1] != SEPARATOR && i + 1 < end && buffer[i + 1] != SEPARATOR) {
+                        if (length > field_start && is_all_whitespace(field_start, length)) {
+                            length = field_start;
+                        } else {
+                            fields[length++] = c;
+                        }
+                    }
+                    in_quotes = !in_quotes;
+                }
+                in_field = !in_field;
+            } else if (c == SEPARATOR && !in_quotes) {
+                add_field(field_start, length);
+                field_start = length;
+                in_field = false;
+            } else {
+                fields[length++] = c;
+                in_field = true;
+            }
+        }
+        if (in_quotes) {
+            throw new IOException("Un-terminated quoted field at end of CSV line " + line_number);
+        }
+        add_field(field_start, length);
+    }
+
+    private void add_field(int start, int end) {
+        if (num_fields == starts.length) {
+            starts = Arrays.copyOf(starts, 2 * num_fields);
+            ends = Arrays.copyOf(ends, 2 * num_fields);
+        }
+        starts[num_fields] = start;
+        ends[num_fields] = end;
+        num_fields++;
+    }
+
+    private boolean is_all_whitespace(int start, int end) {
+        String s = new String(fields, start, end - start, StandardCharsets.UTF_8);
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int num_fields() {
+        return num_fields;
+    }
+
+    // 1 for the first line of the file, blank lines count too
+    public long get_line_number() {
+        return line_number;
+    }
+
+    public boolean is_empty(int field) {
+        return starts[field] == ends[field];
+    }
+
+    public String get_string(int field) {
+        return new String(fields, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+    }
+
+    // Integer.parseInt of the field, without making a String of it unless it isn't plain digits
+    public int get_int(int field) {
+        int i = starts[field], end = ends[field];
+        boolean negative = i < end && fields[i] == '-';
+        if (negative || (i < end && fields[i] == '+')) {
+            i++;
+        }
+        if (i == end || end - i > 9) {
+            return Integer.parseInt(get_string(field));
+        }
+        int value = 0;
+        for (; i < end; i++) {
+            int digit = fields[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(get_string(field));
+            }
+            value = 10 * value + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private static final double[] DOUBLE_POWERS = new double[23];
+    private static final float[] FLOAT_POWERS = new float[11];
+    static {
+        DOUBLE_POWERS[0] = 1;
+        for (int i = 1; i < DOUBLE_POWERS.length; i++) {
+            DOUBLE_POWERS[i] = 10 * DOUBLE_POWERS[i - 1];
+        }
+        FLOAT_POWERS[0] = 1;
+        for (int i = 1; i < FLOAT_POWERS.length; i++) {
+            FLOAT_POWERS[i] = 10 * FLOAT_POWERS[i - 1];
+        }
+    }
+
+    // Double.parseDouble of the field - plain decimals with up to 15 digits are parsed from the bytes,
+    // digits / 10^fraction digits is then exact up to the one rounding, anything else goes through parseDouble
+    public double get_double(int field) {
+        long digits = decimal_digits(field, 15);
+        if (digits < 0) {
+            return Double.parseDouble(get_string(field));
+        }
+        double value = (double) digits / DOUBLE_POWERS[parsed_fraction_digits];
+        return parsed_negative ? -value : value;
+    }
+
+    // Float.parseFloat of the field, same idea with up to 7 digits
+    public float get_float(int field) {
+        long digits = decimal_digits(field, 7);
+        if (digits < 0 || parsed_fraction_digits >= FLOAT_POWERS.length) {
+            return Float.parseFloat(get_string(field));
+        }
+        float value = (float) digits / FLOAT_POWERS[parsed_fraction_digits];
+        return parsed_negative ? -value : value;
+    }
+
+    // Boolean.parseBoolean of the field
+    public boolean get_boolean(int field) {
+        int i = starts[field];
+        return ends[field] - i == 4
+                && (fields[i] | 0x20) == 't' && (fields[i + 1] | 0x20) == 'r'
+                && (fields[i + 2] | 0x20) == 'u' && (fields[i + 3] | 0x20) == 'e';
+    }
+
+    private boolean parsed_negative;
+    private int parsed_fraction_digits;
+
+    // the digits of [-+]digits[.digits] as one number, -1 if the field isn't that or has more than max_digits digits
+    private long decimal_digits(int field, int max_digits) {
+        int i = starts[field], end = ends[field];
+        parsed_negative = i < end && fields[i] == '-';
+        if (parsed_negative || (i < end && fields[i] == '+')) {
+            i++;
+        }
+        long value = 0;
+        int num_digits = 0;
+        int point = -1;
+        for (; i < end; i++) {
+            byte c = fields[i];
+            if (c == '.' && point < 0) {
+                point = num_digits;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = 10 * value + (c - '0');
+            num_digits++;
+        }
+        if (num_digits == 0 || num_digits > max_digits) {
+            return -1;
+        }
+        parsed_fraction_digits = point < 0 ? 0 : num_digits - point;
+        if (parsed_fraction_digits >= DOUBLE_POWERS.length) {
+            return -1;
+        }
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -1,11 +1,17 @@
 package index.bplusTree;
 
 import storage.AbstractFile;
+import storage.BlockFactory;
+import storage.BufferPool;
+import storage.PageFile;
+import storage.PageStore;
+import storage.PagedBlockList;
 
 import java.util.*;
 /*
  * Tree is a collection of BlockNodes
  * The first BlockNode is the metadata block - stores the order and the block_id of the root node
+ * metadata block - order (2) | root block id (4) | height (2) | payloads (2) - 1 if the leaf entries carry payloads
 
  * The total number of keys in all leaf nodes is the total number of records in the records file.
  */
@@ -13,14 +19,31 @@ import java.util.*;
 public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
 
     Class<T> typeClass;
+    // size of every node of this tree
+    private final int block_size;
+    // whether leaf entries carry a payload next to the key, see LeafNode
+    private boolean payloads;
 
     // Constructor - creates the metadata block and the root node
     public BPlusTreeIndexFile(int order, Class<T> typeClass) {
+        this(order, typeClass, PageFile.PAGE_SIZE);
+    }
+
+    // block_size is fixed when the tree is created - bigger nodes hold more keys, so the tree is shallower
+    public BPlusTreeIndexFile(int order, Class<T> typeClass, int block_size) {
+        this(order, typeClass, block_size, false);
+    }
+
+    // with payloads, every leaf entry also holds the bytes given to insert / bulk_load - e.g. columns a covering
+    // index answers queries from without reading the records. the internal nodes hold keys only
+    public BPlusTreeIndexFile(int order, Class<T> typeClass, int block_size, boolean payloads) {
 
         super();
         this.typeClass = typeClass;
-        BlockNode node = new BlockNode(); // the metadata block
-        LeafNode<T> root = new LeafNode<>(typeClass);
+        this.block_size = BlockNode.check_block_size(block_size);
+        this.payloads = payloads;
+        BlockNode node = new BlockNode(block_size); // the metadata block
+        LeafNode<T> root = new_leaf_node();
 
         // 1st 2 bytes in metadata block is order
         byte[] orderBytes = new byte[2];
@@ -28,34 +51,197 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
         orderBytes[1] = (byte) order;
         node.write_data(0, orderBytes);
 
-        // next 2 bytes are for root_node_id, here 1
-        byte[] rootNodeIdBytes = new byte[2];
-        rootNodeIdBytes[0] = 0;
-        rootNodeIdBytes[1] = 1;
-        node.write_data(2, rootNodeIdBytes);
+        // next 4 bytes are for root_node_id, here 1
+        node.write_data(2, int_to_barray(1, 4));
+
+        // next 2 bytes are the height of the tree (1 - the root is a leaf), so the node kinds can be told apart on disk
+        node.write_data(6, int_to_barray(1, 2));
+
+        // next 2 bytes say whether the leaves carry payloads
+        node.write_data(8, int_to_barray(payloads ? 1 : 0, 2));
 
         // push these nodes to the blocks list
         blocks.add(node);
         blocks.add(root);
     }
 
+    // reopens a tree written out page by page (block i at page i) - see AbstractFile.write_to
+    // node kinds aren't stored per page, they follow from the depth of the node below the root
+    public static <T> BPlusTreeIndexFile<T> open(PageStore pages, Class<T> typeClass) {
+        BPlusTreeIndexFile<T> tree = new BPlusTreeIndexFile<>(1, typeClass, pages.page_size());
+        tree.blocks.clear();
+        BlockNode metadata = new BlockNode(pages.read_page(0), pages.page_size());
+        tree.payloads = metadata.readShort(8) == 1;
+        tree.blocks.add(metadata);
+        for (int i = 1; i < pages.num_pages(); i++) {
+            tree.blocks.add(null);
+        }
+        tree.open_node(pages, tree.getRootId(), tree.get_height());
+        return tree;
+    }
+
+    private void open_node(PageStore pages, int id, int height) {
+        byte[] page = pages.read_page(id);
+        if (height == 1) {
+            LeafNode<T> leaf = new_leaf_node();
+            leaf.write_data(0, page);
+            blocks.set(id, leaf);
+            return;
+        }
+        InternalNode<T> node = new_internal_node(typeClass);
+        node.write_data(0, page);
+        blocks.set(id, node);
+        for (int child : node.getChildren()) {
+            open_node(pages, child, height - 1);
+        }
+    }
+
+    // same as open, but the nodes aren't read into memory - they fault in through the pool when used.
+    // only the internal nodes are read here, to learn which pages hold leaves
+    public static <T> BPlusTreeIndexFile<T> open(BufferPool pool, PageStore pages, Class<T> typeClass) {
+        BPlusTreeIndexFile<T> tree = new BPlusTreeIndexFile<>(1, typeClass, pages.page_size());
+        BlockNode metadata = new BlockNode(pages.read_page(0), pages.page_size());
+        int root = metadata.readInt(2);
+        int height = metadata.readShort(6);
+        tree.payloads = metadata.readShort(8) == 1;
+        byte[] kinds = new byte[pages.num_pages()];
+        tree.open_kinds(pages, kinds, root, height);
+        tree.blocks = new PagedBlockList<>(pool, pages, tree.block_factory(), kinds, kinds.length);
+        return tree;
+    }
+
+    private void open_kinds(PageStore pages, byte[] kinds, int id, int height) {
+        if (height == 1) {
+            kinds[id] = LEAF;
+            return;
+        }
+        kinds[id] = INTERNAL;
+        InternalNode<T> node = new_internal_node(typeClass);
+        node.write_data(0, pages.read_page(id));
+        for (int child : node.getChildren()) {
+            open_kinds(pages, kinds, child, height - 1);
+        }
+    }
+
+    // kinds of pages, see BlockFactory
+    private static final byte METADATA = 0;
+    private static final byte LEAF = 1;
+    private static final byte INTERNAL = 2;
+
+    @Override
+    protected BlockFactory<BlockNode> block_factory() {
+        return new BlockFactory<BlockNode>() {
+            @Override
+            public byte kind(BlockNode block) {
+                if (block instanceof LeafNode) {
+                    return LEAF;
+                }
+                return block instanceof InternalNode ? INTERNAL : METADATA;
+            }
+
+            @Override
+            public BlockNode create(byte kind, byte[] data) {
+                if (kind == METADATA) {
+                    return new BlockNode(data, block_size);
+                }
+                BlockNode node = kind == LEAF ? new_leaf_node() : new_internal_node(typeClass);
+                node.write_data(0, data);
+                return node;
+            }
+        };
+    }
+
+    public Class<T> get_key_class() {
+        return typeClass;
+    }
+
+    public int get_block_size() {
+        return block_size;
+    }
+
+    public boolean has_payloads() {
+        return payloads;
+    }
+
+    // number of levels, 1 when the root is a leaf
+    public int get_height() {
+        return read_block(0).readShort(6);
+    }
+
+    // new root on top of the old one
+    private void set_root(int root_id, int height) {
+        BlockNode metadata = write_block(0);
+        try {
+            metadata.write_data(2, int_to_barray(root_id, 4));
+            metadata.write_data(6, int_to_barray(height, 2));
+        } finally {
+            release_block(0);
+        }
+    }
+
+    // INTEGER / FLOAT / DOUBLE keys get the fixed width node formats, everything else the slotted ones.
+    // payloads only fit in the slotted leaves
+    private LeafNode<T> new_leaf_node() {
+        if (payloads) {
+            return new LeafNode<>(typeClass, block_size, true);
+        }
+        if (BlockNode.fixed_key_width(typeClass) > 0) {
+            return new FixedWidthLeafNode<>(typeClass, block_size);
+        }
+        return new LeafNode<>(typeClass, block_size);
+    }
+
+    private InternalNode<T> new_internal_node(Class<T> typeClass) {
+        if (BlockNode.fixed_key_width(typeClass) > 0) {
+            return new FixedWidthInternalNode<>(typeClass, block_size);
+        }
+        return new InternalNode<>(typeClass, block_size);
+    }
+
+    private InternalNode<T> new_internal_node(T key, int left_child_id, int right_child_id) {
+        if (BlockNode.fixed_key_width(typeClass) > 0) {
+            return new FixedWidthInternalNode<>(key, left_child_id, right_child_id, typeClass, block_size);
+        }
+        return new InternalNode<>(key, left_child_id, right_child_id, typeClass, block_size);
+    }
+
     private boolean isFull(int id){
         // 0th block is metadata block
         assert(id > 0);
-        return blocks.get(id).getNumKeys() == getOrder() - 1;
+        return read_block(id).getNumKeys() == getOrder() - 1;
+    }
+
+    // a leaf is also full when the entry takes more bytes than it has left - with long keys or payloads
+    // that can happen well before order - 1 entries
+    private boolean isFull(int id, T key, byte[] payload){
+        LeafNode<T> leaf = (LeafNode<T>) read_block(id);
+        check_entry_size(leaf, key, payload);
+        return isFull(id) || leaf.entrySize(key, payload) > leaf.freeSpace();
+    }
+
+    // same for an internal node and a separator key. separators are leaf keys and a leaf entry holds its key and
+    // more (check_entry_size), so a separator never takes more than half an internal node either
+    private boolean isFull(int id, T key){
+        InternalNode<T> node = (InternalNode<T>) read_block(id);
+        return isFull(id) || node.entrySize(key) > node.freeSpace();
+    }
+
+    // an entry may take at most half of a leaf, so the two halves of a split always fit
+    private void check_entry_size(LeafNode<T> leaf, T key, byte[] payload){
+        int size = leaf.entrySize(key, payload);
+        if (2 * size > leaf.entryCapacity()) {
+            throw new IllegalArgumentException("Index entry of " + size + " bytes is too big - a leaf of "
+                    + block_size + " bytes takes entries of at most " + leaf.entryCapacity() / 2 + " bytes");
+        }
     }
 
     private int getRootId() {
-        BlockNode node = blocks.get(0);
-        byte[] rootBlockIdBytes = node.get_data(2, 2);
-        return ((rootBlockIdBytes[0] << 8)) | (rootBlockIdBytes[1] & 0xFF);
+        return read_block(0).readInt(2);
     }
 
     // return the order of the B+ tree
     public int getOrder() {
-        BlockNode node = blocks.get(0);
-        byte[] orderBytes = node.get_data(0, 2);
-        return ((orderBytes[0] << 8)) | (orderBytes[1] & 0xFF);
+        return read_block(0).readShort(0);
     }
 
     private boolean isLeaf(BlockNode node){
@@ -63,12 +249,22 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
     }
 
     private boolean isLeaf(int id){
-        return isLeaf(blocks.get(id));
+        return isLeaf(read_block(id));
     }
 
     // will be evaluated
 
     public void insert(T key, int block_id) {
+        insert(key, block_id, 0);
+    }
+
+    // inserts the record id (block_id, slot_id) of a record under key
+    public void insert(T key, int block_id, int slot_id) {
+        insert(key, block_id, slot_id, null);
+    }
+
+    // same, with the payload of the entry - kept only if the tree has payloads
+    public void insert(T key, int block_id, int slot_id, byte[] payload) {
         if(key==null){
             return ;
         }
@@ -88,25 +284,23 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
 //        System.out.print("\n");
         if (isLeaf(rootId)) {
             // If the root is a leaf node, insert the key and block_id directly
-            LeafNode<T> rootNode = (LeafNode<T>) blocks.get(rootId);
-            if (isFull(rootId)) {
+            if (isFull(rootId, key, payload)) {
                 // If the root node is full, split it and create a new root
                 // need to review this function
 //                System.out.print("Leaf node is full\n");
                 path_nodes.push(currentNodeId);
-                split_leaf_node(key,block_id,path_nodes);
+                split_leaf_node(key,block_id,slot_id,payload,path_nodes);
             }else{
-                rootNode.insert(key, block_id);
-
+                insert_in_leaf(rootId, key, block_id, slot_id, payload);
             }
         } else {
             // Start from the root and traverse down to the leaf level
             path_nodes.push(currentNodeId);
             while (!isLeaf(currentNodeId)) {
-                InternalNode<T> currentNode = (InternalNode<T>) blocks.get(currentNodeId);
+                InternalNode<T> currentNode = (InternalNode<T>) read_block(currentNodeId);
                 int searchResult = currentNode.search(key);
                 if(searchResult==-1){
-                    currentNodeId = currentNode.getChildren()[currentNode.getNumKeys()];
+                    currentNodeId = currentNode.getChild(currentNode.getNumKeys());
                 }else{
                     currentNodeId=searchResult;
                 }
@@ -116,13 +310,12 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
             }
 
             // Insert the key and block_id into the leaf node
-            LeafNode<T> leafNode = (LeafNode<T>) blocks.get(currentNodeId);
-            if (isFull(currentNodeId)) {
+            if (isFull(currentNodeId, key, payload)) {
                 // If the leaf node is full, split it
                 // needs to review this
-                split_leaf_node(key,block_id,path_nodes);
+                split_leaf_node(key,block_id,slot_id,payload,path_nodes);
             }else{
-                leafNode.insert(key, block_id);
+                insert_in_leaf(currentNodeId, key, block_id, slot_id, payload);
             }
         }
         return ;
@@ -131,69 +324,144 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
 //        System.out.print("\n");
     }
 
-    private void split_leaf_node(T key, int block_id, Stack<Integer> path) {
+    // the leaf is pinned while the entry goes in
+    private void insert_in_leaf(int leafNodeId, T key, int block_id, int slot_id, byte[] payload) {
+        LeafNode<T> leafNode = (LeafNode<T>) write_block(leafNodeId);
+        try {
+            leafNode.insert(key, block_id, slot_id, payload);
+        } finally {
+            release_block(leafNodeId);
+        }
+    }
+
+    // how many of the entries (of the given sizes, in order) stay in the left node - left_size, unless one of the
+    // halves then takes more bytes than a node has. no entry takes more than half a node (see check_entry_size),
+    // so moving entries over to the other side always makes both fit
+    private static int split_point(int[] sizes, int left_size, int capacity) {
+        int left = 0;
+        int right = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (i < left_size) {
+                left += sizes[i];
+            } else {
+                right += sizes[i];
+            }
+        }
+        while (left > capacity && left_size > 1) {
+            left_size--;
+            left -= sizes[left_size];
+            right += sizes[left_size];
+        }
+        while (right > capacity && left_size < sizes.length - 1) {
+            left += sizes[left_size];
+            right -= sizes[left_size];
+            left_size++;
+        }
+        return left_size;
+    }
+
+    // same as split_point for the keys of an internal node - keys before left_size stay, the key at left_size
+    // moves up to the parent and takes no room in either half. both halves keep at least one key
+    private static int internal_split_point(int[] sizes, int left_size, int capacity) {
+        int left = 0;
+        int right = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (i < left_size) {
+                left += sizes[i];
+            } else if (i > left_size) {
+                right += sizes[i];
+            }
+        }
+        while (left > capacity && left_size > 1) {
+            left_size--;
+            left -= sizes[left_size];
+            right += sizes[left_size + 1];
+        }
+        while (right > capacity && left_size < sizes.length - 2) {
+            left += sizes[left_size];
+            right -= sizes[left_size + 1];
+            left_size++;
+        }
+        return left_size;
+    }
+
+    private void split_leaf_node(T key, int block_id, int slot_id, byte[] payload, Stack<Integer> path) {
         // Split the full leaf node and create a new internal node as the parent
         int leafNodeId = path.peek();
         path.pop();
 //        if(!isLeaf(leafNodeId)){
 //            throw new RuntimeException("leaf node expected...");
 //        }
-        LeafNode<T> fullLeafNode = (LeafNode<T>) blocks.get(leafNodeId);
-        int order = fullLeafNode.getNumKeys();
+        // the full node is pinned until it has been refilled
+        LeafNode<T> fullLeafNode = (LeafNode<T>) write_block(leafNodeId);
+        LeafNode<T> right_leaf_node;
+        int right_node_id;
+        try {
+            int order = fullLeafNode.getNumKeys();
 //        if(order!= fullLeafNode.getNumKeys()){
 //            System.out.print("Order and num of keys not matched..");
 ////        }
-        LeafNode<T> left_leaf_node = new LeafNode<>(typeClass);
-        LeafNode<T> right_leaf_node = new LeafNode<>(typeClass);
-
-        T[] keys = fullLeafNode.getKeys();
-        int[] blockIds = fullLeafNode.getBlockIds();
-
-        int left_size =(int)Math.floor((order+1)/2.0);
-        int right_size = (int)Math.ceil((order+1)/2.0);
-        // this whole thing is right ...
-        if(fullLeafNode.compareKeys(key,keys[left_size-1])<0){
-            for(int i=0;i<left_size-1;i++){
-                left_leaf_node.insert(keys[i],blockIds[i]);
-            }
-            left_leaf_node.insert(key,block_id);
-            for(int i=left_size-1;i<order;i++){
-                right_leaf_node.insert(keys[i],blockIds[i]);
+            T[] keys = fullLeafNode.getKeys();
+            int[] blockIds = fullLeafNode.getBlockIds();
+            int[] slotIds = fullLeafNode.getSlotIds();
+            byte[][] payloadList = fullLeafNode.getPayloads();
+            int next_leaf = fullLeafNode.getNextLeafId();
+
+            // sizes of the entries with the new one in place - it goes after the keys equal to it, as in insert
+            int pos = fullLeafNode.upperBound(key);
+            int[] sizes = new int[order + 1];
+            for (int i = 0; i <= order; i++) {
+                int j = i < pos ? i : i - 1;
+                sizes[i] = i == pos ? fullLeafNode.entrySize(key, payload) : fullLeafNode.entrySize(keys[j], payloadList[j]);
             }
-        }else{
-            for(int i=0;i<left_size;i++){
-                left_leaf_node.insert(keys[i],blockIds[i]);
-            }
-            for(int i=left_size;i<order;i++){
-                right_leaf_node.insert(keys[i],blockIds[i]);
+
+            // the full node is refilled in place as the left half, only the right half is a new block
+            LeafNode<T> left_leaf_node = fullLeafNode;
+            left_leaf_node.clear();
+            right_leaf_node = new_leaf_node();
+
+            int left_size = split_point(sizes, (int)Math.floor((order+1)/2.0), fullLeafNode.entryCapacity());
+            // this whole thing is right ...
+            if(fullLeafNode.compareKeys(key,keys[left_size-1])<0){
+                for(int i=0;i<left_size-1;i++){
+                    left_leaf_node.insert(keys[i],blockIds[i],slotIds[i],payloadList[i]);
+                }
+                left_leaf_node.insert(key,block_id,slot_id,payload);
+                for(int i=left_size-1;i<order;i++){
+                    right_leaf_node.insert(keys[i],blockIds[i],slotIds[i],payloadList[i]);
+                }
+            }else{
+                for(int i=0;i<left_size;i++){
+                    left_leaf_node.insert(keys[i],blockIds[i],slotIds[i],payloadList[i]);
+                }
+                for(int i=left_size;i<order;i++){
+                    right_leaf_node.insert(keys[i],blockIds[i],slotIds[i],payloadList[i]);
+                }
+                right_leaf_node.insert(key,block_id,slot_id,payload);
             }
-            right_leaf_node.insert(key,block_id);
+            // the right node goes at the end, and both headers are written before it goes in -
+            // with a paged file, a node handed to add is the pool's to write back from then on
+            right_node_id= blocks.size();
+            // the prev node id of the left half stays
+//        byte[] byteArray = ByteBuffer.allocate(2).putInt(right_node_id).array();
+            // set right node
+            left_leaf_node.setNextLeafId(right_node_id);
+//        byte[] temp = ByteBuffer.allocate(2).putInt(leafNodeId).array();
+            // set next node
+            right_leaf_node.setPrevLeafId(leafNodeId);
+            right_leaf_node.setNextLeafId(next_leaf);
+        } finally {
+            release_block(leafNodeId);
         }
-//        System.out.print("Size before add: "+blocks.size()+"\n");
 //        blocks.add(left_leaf_node);
 //        blocks.remove(fullLeafNode);
-        blocks.set(leafNodeId,left_leaf_node);
         blocks.add(right_leaf_node);
-//        System.out.print("The size after add is: "+blocks.size()+"\n");
-        int right_node_id= blocks.size()-1;
-        //set prev node id
-        left_leaf_node.write_data(2,fullLeafNode.get_data(2,2));
-//        byte[] byteArray = ByteBuffer.allocate(2).putInt(right_node_id).array();
-        // set right node
-        byte[] byteArray = int_to_barray(right_node_id,2);
-        left_leaf_node.write_data(4,byteArray);
-//        byte[] temp = ByteBuffer.allocate(2).putInt(leafNodeId).array();
-        // set next node
-        byte[] temp = int_to_barray(leafNodeId,2);
-        right_leaf_node.write_data(2,temp);
-        right_leaf_node.write_data(4,fullLeafNode.get_data(4,2));
-
 
         T key_insert = right_leaf_node.getKeys()[0];
 //        System.out.print("Size of stack : "+path.size()+"\n");
         if(path.size()==0){
             // root hain...
-            InternalNode<T> root = new InternalNode<>(key_insert,leafNodeId,right_node_id,typeClass);
+            InternalNode<T> root = new_internal_node(key_insert,leafNodeId,right_node_id);
 //            blocks.remove(fullLeafNode);
 //            blocks.set(leafNodeId,left_leaf_node);
 //            blocks.add(right_leaf_node);
@@ -203,127 +471,97 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
 //            byte[] root_array = new byte[2];
 //            root_array[0] = (byte) ((root_id >> 8) & 0xFF);
 //            root_array[1] = (byte) (root_id & 0xFF);
-            byte[] byteArray1 = int_to_barray(root_id,2);
 //            int temp1 = (byteArray1[0] << 8) | (byteArray1[1] & 0xFF);
 //            System.out.print("temp is :"+temp1+"\n");
 //            System.out.print("root_id is :"+root_id+"\n");
-            blocks.get(0).write_data(2,byteArray1);
+            set_root(root_id, get_height() + 1);
         }else{
-            insert_in_parent(key_insert,right_node_id,path);
+            insert_in_parent(key_insert,leafNodeId,right_node_id,path);
         }
 
     }
 
-    private void insert_in_parent(T key, int childNodeId, Stack<Integer> path_nodes) {
-        if (path_nodes.size()==1){
-            if(isFull(path_nodes.peek())){
-                split_internal_node(path_nodes,key,childNodeId);
-            }else{
-                InternalNode<T> node = (InternalNode<T>)blocks.get(path_nodes.peek());
-                node.insert(key,childNodeId);
-            }
-//            path_nodes.pop();
-            return;
-        }
+    // inserts key and the new right sibling of splitNodeId into the parent on top of path_nodes
+    // the new child goes right after the child that split, not by key - with repeated separators
+    // the key alone does not say which of the equal slots the sibling belongs in
+    private void insert_in_parent(T key, int splitNodeId, int childNodeId, Stack<Integer> path_nodes) {
         int parentNodeId = path_nodes.peek();
         // we should not pop this
-//        path_nodes.pop();
-        InternalNode<T> parentNode = (InternalNode<T>) blocks.get(parentNodeId);
-        if (isFull(parentNodeId)) {
+        if (isFull(parentNodeId, key)) {
             // If the parent node is full, split it
-            split_internal_node(path_nodes,key,childNodeId);
+            split_internal_node(path_nodes,key,splitNodeId,childNodeId);
         }else{
-            parentNode.insert(key, childNodeId);
+            InternalNode<T> parentNode = (InternalNode<T>) write_block(parentNodeId);
+            try {
+                parentNode.insertEntry(child_position(parentNode, splitNodeId), key, childNodeId);
+            } finally {
+                release_block(parentNodeId);
+            }
         }
         return ;
     }
 
-    private void split_internal_node(Stack<Integer> path_nodes, T key, int childNodeId) {
+    private int child_position(InternalNode<T> node, int childNodeId) {
+        int[] children = node.getChildren();
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] == childNodeId) {
+                return i;
+            }
+        }
+        throw new RuntimeException("Child " + childNodeId + " not found in its parent");
+    }
+
+    private void split_internal_node(Stack<Integer> path_nodes, T key, int splitNodeId, int childNodeId) {
         int internalNodeId = path_nodes.peek();
         path_nodes.pop();
-        InternalNode<T> fullInternalNode = (InternalNode<T>) blocks.get(internalNodeId);
-        int order = fullInternalNode.getNumKeys();
-
-        T[] keys = fullInternalNode.getKeys();
-        int[] children = fullInternalNode.getChildren();
-
-        InternalNode<T> left_internal_node;
-        int left_size =(int)Math.floor((order+1)/2.0);
-        int right_size = (int)Math.ceil((order+1)/2.0);
-        InternalNode<T> right_internal_node;
+        // the full node is pinned until it has been refilled
+        InternalNode<T> fullInternalNode = (InternalNode<T>) write_block(internalNodeId);
         T key_req;
-        int id_req;
-        if(fullInternalNode.compareKeys(key,keys[left_size-1])<0){
-            if(left_size==1){
-                left_internal_node = new InternalNode<>(key,children[0],childNodeId,typeClass);
-            }else{
-                left_internal_node = new InternalNode<>(keys[0],children[0],children[1],typeClass);
-                for(int i = 1; i < left_size-1;i++){
-                    left_internal_node.insert(keys[i],children[i+1]);
-                }
-                left_internal_node.insert(key,childNodeId);
-            }
-            key_req = keys[left_size-1];
-//            System.out.print("left_size is: "+left_size+" Right size is: "+right_size+"\n");
-//            System.out.print("order is: "+keys.length+"\n");
-//            System.out.print("Bfs: ");
-//            fullInternalNode.print();
-//            System.out.print("\nKey is: "+(Integer)key+"\n");
-//            if(left_size+1>=children.length){
-//                throw new RuntimeException("Size mismatch");
-//            }
-            right_internal_node = new InternalNode<>(keys[left_size],children[left_size],children[left_size+1],typeClass);
-            for(int i  = left_size+1;i < keys.length;i++){
-                right_internal_node.insert(keys[i],children[i+1]);
-            }
-        }
-        else{
-            left_internal_node = new InternalNode<>(keys[0],children[0],children[1],typeClass);
-            for(int i = 1; i < left_size;i++){
-                left_internal_node.insert(keys[i],children[i+1]);
+        InternalNode<T> right_internal_node;
+        try {
+            int order = fullInternalNode.getNumKeys();
+
+            // keys and children of the node with the new child in place, then cut in two around the middle key
+            T[] old_keys = fullInternalNode.getKeys();
+            int[] old_children = fullInternalNode.getChildren();
+            int pos = child_position(fullInternalNode, splitNodeId);
+            List<T> keys = new ArrayList<>(Arrays.asList(old_keys));
+            keys.add(pos, key);
+            int[] children = new int[old_children.length + 1];
+            System.arraycopy(old_children, 0, children, 0, pos + 1);
+            children[pos + 1] = childNodeId;
+            System.arraycopy(old_children, pos + 1, children, pos + 2, old_children.length - pos - 1);
+
+            int[] sizes = new int[keys.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = fullInternalNode.entrySize(keys.get(i));
             }
-            boolean temp;
-            if(fullInternalNode.compareKeys(key,keys[left_size])<=0){
-                key_req = key;
-                temp=true;
-            }else{
-                key_req=keys[left_size];
-                temp=false;
+            int left_size = internal_split_point(sizes, (int)Math.floor((order+1)/2.0), fullInternalNode.entryCapacity());
+            // the full node is refilled in place as the left half
+            InternalNode<T> left_internal_node = fullInternalNode;
+            left_internal_node.clear(children[0]);
+            for(int i = 0; i < left_size;i++){
+                left_internal_node.insertEntry(i,keys.get(i),children[i+1]);
             }
-            if(temp){
-                right_internal_node = new InternalNode<>(keys[left_size],children[left_size+1],childNodeId,typeClass);
-                for(int i  = left_size+1;i < keys.length;i++){
-                    right_internal_node.insert(keys[i],children[i+1]);
-                }
-            }else{
-                if(right_size==2){
-                    right_internal_node = new InternalNode<>(key,children[left_size+1],childNodeId,typeClass);
-                }else{
-                    right_internal_node = new InternalNode<>(keys[left_size+1],children[left_size+1],children[left_size+2],typeClass);
-                    for(int i  = left_size+2;i < keys.length;i++){
-                        right_internal_node.insert(keys[i],children[i+1]);
-                    }
-                    right_internal_node.insert(key,childNodeId);
-                }
-
+            // the middle key moves up
+            key_req = keys.get(left_size);
+            right_internal_node = new_internal_node(keys.get(left_size+1),children[left_size+1],children[left_size+2]);
+            for(int i = left_size+2; i < keys.size();i++){
+                right_internal_node.insertEntry(i-left_size-1,keys.get(i),children[i+1]);
             }
-
+        } finally {
+            release_block(internalNodeId);
         }
 
+        blocks.add(right_internal_node);
+        int id_req = blocks.size()-1;
         if(path_nodes.size()==0){
-            blocks.set(internalNodeId,left_internal_node);
-            blocks.add(right_internal_node);
-            id_req = blocks.size()-1;
-            InternalNode<T> root_node = new InternalNode<>(key_req,internalNodeId,id_req,typeClass);
+            InternalNode<T> root_node = new_internal_node(key_req,internalNodeId,id_req);
             blocks.add(root_node);
             int root_id = blocks.size()-1;
-            byte[] byteArray1 = int_to_barray(root_id,2);
-            blocks.get(0).write_data(2,byteArray1);
+            set_root(root_id, get_height() + 1);
         }else{
-            blocks.set(internalNodeId,left_internal_node);
-            blocks.add(right_internal_node);
-            id_req = blocks.size()-1;
-            insert_in_parent(key_req,id_req,path_nodes);
+            insert_in_parent(key_req,internalNodeId,id_req,path_nodes);
         }
 
 
@@ -346,15 +584,15 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
         int currentNodeId = rootId;
 
         while (!isLeaf(currentNodeId)) {
-            InternalNode<T> currentNode = (InternalNode<T>) blocks.get(currentNodeId);
+            InternalNode<T> currentNode = (InternalNode<T>) read_block(currentNodeId);
             int searchResult = currentNode.search(key);
             if(searchResult==-1){
-                currentNodeId = currentNode.getChildren()[currentNode.getNumKeys()];
+                currentNodeId = currentNode.getChild(currentNode.getNumKeys());
             }else{
                 currentNodeId = searchResult;
             }
         }
-        LeafNode<T> leaf_node = (LeafNode<T>) blocks.get(currentNodeId);
+        LeafNode<T> leaf_node = (LeafNode<T>) read_block(currentNodeId);
         int result = leaf_node.search(key);
         if(result==-1){
             return -1;
@@ -362,6 +600,240 @@ public class BPlusTreeIndexFile<T> extends AbstractFile<BlockNode> {
         return currentNodeId;
     }
 
+    // returns the block_id of the leftmost leaf node that can contain the key, even if the key is absent
+    // equal separators send us left, since duplicates of a separator may also sit at the end of the left subtree
+    public int search_leaf(T key) {
+        int currentNodeId = getRootId();
+        while (!isLeaf(currentNodeId)) {
+            currentNodeId = ((InternalNode<T>) read_block(currentNodeId)).searchLeftmost(key);
+        }
+        return currentNodeId;
+    }
+
+    // returns the block_id of the leftmost leaf node
+    public int first_leaf() {
+        int currentNodeId = getRootId();
+        while (!isLeaf(currentNodeId)) {
+            currentNodeId = ((InternalNode<T>) read_block(currentNodeId)).getChild(0);
+        }
+        return currentNodeId;
+    }
+
+    LeafNode<T> get_leaf(int id) {
+        return (LeafNode<T>) read_block(id);
+    }
+
+    // walks the leaf level once, counting the leaves, the entries and the distinct keys
+    public IndexStatistics<T> compute_statistics() {
+        int num_leaves = 0, num_entries = 0, num_distinct_keys = 0;
+        T min_key = null, max_key = null;
+        int leafId = first_leaf();
+        while (leafId != 0) {
+            LeafNode<T> leaf = get_leaf(leafId);
+            for (T key : leaf.getKeys()) {
+                // keys come in order, so a new key is one different from the previous
+                if (max_key == null || leaf.compareKeys(max_key, key) != 0) {
+                    num_distinct_keys++;
+                }
+                if (min_key == null) {
+                    min_key = key;
+                }
+                max_key = key;
+                num_entries++;
+            }
+            num_leaves++;
+            leafId = leaf.getNextLeafId();
+        }
+        return new IndexStatistics<>(get_height(), num_leaves, num_entries, num_distinct_keys, min_key, max_key);
+    }
+
+    // returns a cursor over the entries with lower (<= or <) key (<= or <) upper, in key order
+    // a null bound leaves that side of the range open
+    public IndexCursor<T> scan(T lower, boolean lowerInclusive, T upper, boolean upperInclusive) {
+        return new IndexCursor<>(this, lower, lowerInclusive, upper, upperInclusive);
+    }
+
+    // builds the tree bottom up from entries already sorted by key, replacing whatever the tree held
+    // each leaf gets about fill_factor * (order - 1) entries and each internal node about fill_factor * order children -
+    // fewer entries to a leaf if that many don't fit in its bytes, see leaf_sizes
+    // equal keys may straddle two leaves, the separator is then a copy of the key - same as after a split
+    public void bulk_load(List<IndexEntry<T>> entries, double fill_factor) {
+        if (fill_factor <= 0 || fill_factor > 1) {
+            throw new IllegalArgumentException("Fill factor must be in (0, 1]: " + fill_factor);
+        }
+        int order = getOrder();
+        if (order < 3) {
+            // an internal node of order 2 can't take the leftover children, just insert one by one
+            for (IndexEntry<T> entry : entries) {
+                insert(entry.getKey(), entry.getBlockId(), entry.getSlotId(), entry.getPayload());
+            }
+            return;
+        }
+
+        // drop everything but the metadata block
+        blocks.subList(1, blocks.size()).clear();
+
+        // leaf level - consecutive runs of entries, linked through prev / next
+        int per_leaf = Math.max(1, (int) Math.round((order - 1) * fill_factor));
+        List<Integer> leaf_sizes = leaf_sizes(entries, per_leaf, fill_factor);
+        int num_leaves = leaf_sizes.size();
+        List<Integer> level_ids = new ArrayList<>();
+        List<T> level_keys = new ArrayList<>();
+        int next = 0;
+        for (int l = 0; l < num_leaves; l++) {
+            int size = leaf_sizes.get(l);
+            LeafNode<T> leaf = new_leaf_node();
+            for (int k = 0; k < size; k++, next++) {
+                IndexEntry<T> entry = entries.get(next);
+                leaf.insertEntry(k, entry.getKey(), entry.getBlockId(), entry.getSlotId(), entry.getPayload());
+            }
+            // the leaves go in one after the other, so both links are known before the leaf is added
+            int leaf_id = blocks.size();
+            if (l > 0) {
+                leaf.setPrevLeafId(leaf_id - 1);
+            }
+            if (l < num_leaves - 1) {
+                leaf.setNextLeafId(leaf_id + 1);
+            }
+            blocks.add(leaf);
+            level_ids.add(leaf_id);
+            level_keys.add(size > 0 ? entries.get(next - size).getKey() : null);
+        }
+
+        // internal levels - each node separates its children by the smallest key under each child
+        int per_node = Math.max(2, (int) Math.round(order * fill_factor));
+        int height = 1;
+        while (level_ids.size() > 1) {
+            height++;
+            List<Integer> node_sizes = node_sizes(level_keys, per_node, fill_factor);
+            List<Integer> parent_ids = new ArrayList<>();
+            List<T> parent_keys = new ArrayList<>();
+            int child = 0;
+            for (int size : node_sizes) {
+                InternalNode<T> node = new_internal_node(level_keys.get(child + 1), level_ids.get(child), level_ids.get(child + 1));
+                for (int k = 2; k < size; k++) {
+                    node.insertEntry(k - 1, level_keys.get(child + k), level_ids.get(child + k));
+                }
+                blocks.add(node);
+                parent_ids.add(blocks.size() - 1);
+                parent_keys.add(level_keys.get(child));
+                child += size;
+            }
+            level_ids = parent_ids;
+            level_keys = parent_keys;
+        }
+
+        set_root(level_ids.get(0), height);
+    }
+
+
+    // number of entries in each leaf of bulk_load - per_leaf of them spread evenly, so the last leaf isn't left
+    // nearly empty. if a leaf would then take more bytes than it has (long keys, payloads), the leaves are cut
+    // by bytes instead, each taking up to fill_factor of its bytes
+    private List<Integer> leaf_sizes(List<IndexEntry<T>> entries, int per_leaf, double fill_factor) {
+        LeafNode<T> sizer = new_leaf_node();
+        int capacity = sizer.entryCapacity();
+        int[] sizes = new int[entries.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            IndexEntry<T> entry = entries.get(i);
+            check_entry_size(sizer, entry.getKey(), entry.getPayload());
+            sizes[i] = sizer.entrySize(entry.getKey(), entry.getPayload());
+        }
+
+        List<Integer> leaf_sizes = new ArrayList<>();
+        int num_leaves = Math.max(1, (sizes.length + per_leaf - 1) / per_leaf);
+        boolean fits = true;
+        int next = 0;
+        for (int l = 0; l < num_leaves; l++) {
+            int size = sizes.length / num_leaves + (l < sizes.length % num_leaves ? 1 : 0);
+            int bytes = 0;
+            for (int k = 0; k < size; k++) {
+                bytes += sizes[next + k];
+            }
+            fits &= bytes <= capacity;
+            leaf_sizes.add(size);
+            next += size;
+        }
+        if (fits) {
+            return leaf_sizes;
+        }
+
+        leaf_sizes.clear();
+        int budget = (int) (capacity * fill_factor);
+        int size = 0;
+        int bytes = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            // a leaf takes at least one entry, no entry is more than half a leaf
+            if (size > 0 && (size == per_leaf || bytes + sizes[i] > budget)) {
+                leaf_sizes.add(size);
+                size = 0;
+                bytes = 0;
+            }
+            size++;
+            bytes += sizes[i];
+        }
+        leaf_sizes.add(size);
+        return leaf_sizes;
+    }
+
+    // number of children of each internal node of a bulk_load level, whose children start with the given keys -
+    // like leaf_sizes: per_node of them spread evenly, unless a node would then take more bytes than it has.
+    // a node holds the keys of all its children but the first, and no node may be left with a single child
+    private List<Integer> node_sizes(List<T> child_keys, int per_node, double fill_factor) {
+        InternalNode<T> sizer = new_internal_node(child_keys.get(1), 0, 0);
+        int capacity = sizer.entryCapacity();
+        int count = child_keys.size();
+        int[] sizes = new int[count];
+        for (int i = 1; i < count; i++) {
+            sizes[i] = sizer.entrySize(child_keys.get(i));
+        }
+
+        List<Integer> node_sizes = new ArrayList<>();
+        int num_nodes = Math.max(1, Math.min((count + per_node - 1) / per_node, count / 2));
+        boolean fits = true;
+        int next = 0;
+        for (int p = 0; p < num_nodes; p++) {
+            int size = count / num_nodes + (p < count % num_nodes ? 1 : 0);
+            int bytes = 0;
+            for (int k = 1; k < size; k++) {
+                bytes += sizes[next + k];
+            }
+            fits &= bytes <= capacity;
+            node_sizes.add(size);
+            next += size;
+        }
+        if (fits) {
+            return node_sizes;
+        }
+
+        node_sizes.clear();
+        int budget = (int) (capacity * fill_factor);
+        int size = 0;
+        int bytes = 0;
+        for (int i = 0; i < count; i++) {
+            if (size >= 2 && (size == per_node || bytes + sizes[i] > budget)) {
+                node_sizes.add(size);
+                size = 0;
+                bytes = 0;
+            }
+            // the first child of a node brings no key
+            bytes += size > 0 ? sizes[i] : 0;
+            size++;
+        }
+        if (size == 1) {
+            // a last lone child goes to the node before it - a node of 3 children has 2 keys and no key is more
+            // than half a node. a bigger node hands over its last child instead
+            int last = node_sizes.size() - 1;
+            if (node_sizes.get(last) == 2) {
+                node_sizes.set(last, 3);
+                return node_sizes;
+            }
+            node_sizes.set(last, node_sizes.get(last) - 1);
+            size = 2;
+        }
+        node_sizes.add(size);
+        return node_sizes;
+    }
 
     // returns true if the key was found and deleted, false otherwise
     // (Optional for Assignment 3)
@@ -13,8 +13,94 @@ public class BlockNode extends AbstractBlock {
         super();
     }
 
+    public BlockNode(byte[] data, int size) {
+        super(data, size);
+    }
+
+    public BlockNode(int size) {
+        super(size);
+    }
+
     public int getNumKeys() {
-        byte[] numKeysBytes = this.get_data(0, 2);
-        return (numKeysBytes[0] << 8) | (numKeysBytes[1] & 0xFF);
+        return readShort(0);
+    }
+
+    // reads the 2 byte (big endian, unsigned) value at offset, without copying the bytes out
+    protected int readShort(int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    protected void writeShort(int offset, int value) {
+        data[offset] = (byte) (value >> 8);
+        data[offset + 1] = (byte) value;
+    }
+
+    // 4 byte big endian value at offset
+    protected int readInt(int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    protected void writeInt(int offset, int value) {
+        data[offset] = (byte) (value >> 24);
+        data[offset + 1] = (byte) (value >> 16);
+        data[offset + 2] = (byte) (value >> 8);
+        data[offset + 3] = (byte) value;
+    }
+
+    // 8 byte big endian value at offset
+    protected long readLong(int offset) {
+        return ((long) readInt(offset) << 32) | (readInt(offset + 4) & 0xFFFFFFFFL);
+    }
+
+    protected void writeLong(int offset, long value) {
+        writeInt(offset, (int) (value >> 32));
+        writeInt(offset + 4, (int) value);
+    }
+
+    // width of a key stored without a length prefix, -1 if keys of this type are variable width
+    public static int fixed_key_width(Class<?> typeClass) {
+        if (typeClass == Integer.class || typeClass == Float.class) {
+            return 4;
+        } else if (typeClass == Double.class) {
+            return 8;
+        }
+        return -1;
+    }
+
+    // fixed width key helpers - same big endian encoding as convertTToBytes
+    protected Object readFixedKey(int offset, Class<?> typeClass) {
+        if (typeClass == Integer.class) {
+            return readInt(offset);
+        } else if (typeClass == Float.class) {
+            return Float.intBitsToFloat(readInt(offset));
+        } else if (typeClass == Double.class) {
+            return Double.longBitsToDouble(readLong(offset));
+        }
+        throw new IllegalArgumentException("Unsupported fixed width type: " + typeClass.getName());
+    }
+
+    // compares the stored key against key on the raw primitive, without decoding into a box
+    protected int compareFixedKey(int offset, Class<?> typeClass, Object key) {
+        if (typeClass == Integer.class) {
+            return Integer.compare(readInt(offset), (Integer) key);
+        } else if (typeClass == Float.class) {
+            return Float.compare(Float.intBitsToFloat(readInt(offset)), (Float) key);
+        } else if (typeClass == Double.class) {
+            return Double.compare(Double.longBitsToDouble(readLong(offset)), (Double) key);
+        }
+        throw new IllegalArgumentException("Unsupported fixed width type: " + typeClass.getName());
+    }
+
+    protected void writeFixedKey(int offset, Class<?> typeClass, Object key) {
+        if (typeClass == Integer.class) {
+            writeInt(offset, (Integer) key);
+        } else if (typeClass == Float.class) {
+            writeInt(offset, Float.floatToRawIntBits((Float) key));
+        } else if (typeClass == Double.class) {
+            writeLong(offset, Double.doubleToRawLongBits((Double) key));
+        } else {
+            throw new IllegalArgumentException("Unsupported fixed width type: " + typeClass.getName());
+        }
     }
-}
\ No newline at end of file
+}
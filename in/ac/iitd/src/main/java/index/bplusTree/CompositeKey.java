@@ -0,0 +1,155 @@
+package index.bplusTree;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+/*
+ * Key of an index over several columns - the values are encoded one after the other into a byte[]
+ * whose unsigned lexicographic order is the order of the value tuples, so the tree compares plain bytes.
+ *
+ * Each value is a tag byte (0 for null, 1 otherwise - nulls sort first) followed by -
+ *      Integer         4 bytes big endian, sign bit flipped
+ *      Float / Double  the IEEE bits big endian, all bits flipped if negative, else the sign bit flipped
+ *      Boolean         1 byte, 0 or 1
+ *      String          every char c < 0x7F as the byte c + 1, every other char as 0x80 | c (2 bytes big endian),
+ *                      then a 0 byte - the same order as String.compareTo
+ * No value encoding is a prefix of another one, so all keys starting with the encoding of some leading
+ * values are contiguous in the tree - see prefix_end.
+ */
+public class CompositeKey {
+
+    private CompositeKey() {
+    }
+
+    public static byte[] encode(List<?> values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Object value : values) {
+            append(out, value);
+        }
+        return out.toByteArray();
+    }
+
+    // key of values[columns[0]], values[columns[1]], ... - builds the key of a decoded record
+    public static byte[] encode(Object[] values, int[] columns) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int column : columns) {
+            append(out, values[column]);
+        }
+        return out.toByteArray();
+    }
+
+    private static void append(ByteArrayOutputStream out, Object value) {
+        if (value == null) {
+            out.write(0);
+            return;
+        }
+        out.write(1);
+        if (value instanceof Integer) {
+            writeInt(out, (Integer) value ^ 0x80000000);
+        } else if (value instanceof Float) {
+            int bits = Float.floatToIntBits((Float) value);
+            writeInt(out, bits < 0 ? ~bits : bits ^ 0x80000000);
+        } else if (value instanceof Double) {
+            long bits = Double.doubleToLongBits((Double) value);
+            bits = bits < 0 ? ~bits : bits ^ 0x8000000000000000L;
+            writeInt(out, (int) (bits >> 32));
+            writeInt(out, (int) bits);
+        } else if (value instanceof Boolean) {
+            out.write((Boolean) value ? 1 : 0);
+        } else if (value instanceof String) {
+            String s = (String) value;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x7F) {
+                    out.write(c + 1);
+                } else {
+                    out.write(0x80);
+                    out.write(c >> 8);
+                    out.write(c);
+                }
+            }
+            out.write(0);
+        } else {
+            throw new IllegalArgumentException("Unsupported data type: " + value.getClass().getName());
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >> 24);
+        out.write(value >> 16);
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    // inverse of encode - the values of a key whose columns have the given types, in order
+    public static Object[] decode(byte[] key, Class<?>[] types) {
+        Object[] values = new Object[types.length];
+        int pos = 0;
+        for (int i = 0; i < types.length; i++) {
+            if (key[pos++] == 0) {
+                continue;
+            }
+            Class<?> type = types[i];
+            if (type == Integer.class) {
+                values[i] = readInt(key, pos) ^ 0x80000000;
+                pos += 4;
+            } else if (type == Float.class) {
+                // the sign bit set means a value that was not negative
+                int bits = readInt(key, pos);
+                values[i] = Float.intBitsToFloat(bits < 0 ? bits ^ 0x80000000 : ~bits);
+                pos += 4;
+            } else if (type == Double.class) {
+                long bits = ((long) readInt(key, pos) << 32) | (readInt(key, pos + 4) & 0xFFFFFFFFL);
+                values[i] = Double.longBitsToDouble(bits < 0 ? bits ^ 0x8000000000000000L : ~bits);
+                pos += 8;
+            } else if (type == Boolean.class) {
+                values[i] = key[pos++] != 0;
+            } else if (type == String.class) {
+                StringBuilder sb = new StringBuilder();
+                while (key[pos] != 0) {
+                    if ((key[pos] & 0xFF) == 0x80) {
+                        sb.append((char) (((key[pos + 1] & 0xFF) << 8) | (key[pos + 2] & 0xFF)));
+                        pos += 3;
+                    } else {
+                        sb.append((char) ((key[pos] & 0xFF) - 1));
+                        pos++;
+                    }
+                }
+                values[i] = sb.toString();
+                pos++;
+            } else {
+                throw new IllegalArgumentException("Unsupported data type: " + type.getName());
+            }
+        }
+        return values;
+    }
+
+    private static int readInt(byte[] key, int pos) {
+        return ((key[pos] & 0xFF) << 24) | ((key[pos + 1] & 0xFF) << 16) | ((key[pos + 2] & 0xFF) << 8) | (key[pos + 3] & 0xFF);
+    }
+
+    // the smallest key greater than every key starting with prefix, null if there is none (or prefix is empty)
+    public static byte[] prefix_end(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if ((prefix[i] & 0xFF) != 0xFF) {
+                byte[] end = new byte[i + 1];
+                System.arraycopy(prefix, 0, end, 0, i + 1);
+                end[i]++;
+                return end;
+            }
+        }
+        return null;
+    }
+
+    // unsigned lexicographic order, a proper prefix goes first
+    public static int compare(byte[] key1, byte[] key2) {
+        int n = Math.min(key1.length, key2.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (key1[i] & 0xFF) - (key2[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return key1.length - key2.length;
+    }
+}
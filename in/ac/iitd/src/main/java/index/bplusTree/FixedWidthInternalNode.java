@@ -0,0 +1,88 @@
+package index.bplusTree;
+
+/*
+ * InternalNode for INTEGER / FLOAT / DOUBLE keys - the keys are stored fixed width, without a length prefix.
+ * Internal Node - num Keys | unused | P_0 | K_1 | P_1 | K_2 | P_2 | ... | K_n | P_n
+ *
+ * Every entry has the same size, so entry i sits at a computed offset and needs no offset array,
+ * and binary search compares the raw primitive in the block against the key.
+ */
+public class FixedWidthInternalNode<T> extends InternalNode<T> {
+
+    private final int keyWidth;
+    private final int entrySize;
+
+    public FixedWidthInternalNode(Class<T> typeClass) {
+        this(typeClass, block_capacity);
+    }
+
+    public FixedWidthInternalNode(Class<T> typeClass, int block_size) {
+        super(typeClass, block_size);
+        this.keyWidth = fixed_key_width(typeClass);
+        if (keyWidth < 0) {
+            throw new IllegalArgumentException("Unsupported fixed width type: " + typeClass.getName());
+        }
+        this.entrySize = keyWidth + 4;
+    }
+
+    // Constructor - expects the key, left and right child ids
+    public FixedWidthInternalNode(T key, int left_child_id, int right_child_id, Class<T> typeClass) {
+        this(key, left_child_id, right_child_id, typeClass, block_capacity);
+    }
+
+    public FixedWidthInternalNode(T key, int left_child_id, int right_child_id, Class<T> typeClass, int block_size) {
+        this(typeClass, block_size);
+        writeInt(4, left_child_id);
+        this.insert(key, right_child_id);
+    }
+
+    @Override
+    public int getChild(int i) {
+        if (i == 0) {
+            return readInt(4);
+        }
+        return readInt(entryOffset(i - 1) + keyWidth);
+    }
+
+    @Override
+    protected int entryOffset(int i) {
+        return HEADER_SIZE + i * entrySize;
+    }
+
+    @Override
+    protected T keyAt(int i) {
+        return typeClass.cast(readFixedKey(entryOffset(i), typeClass));
+    }
+
+    @Override
+    protected int compareKeyAt(int i, T key) {
+        return compareFixedKey(entryOffset(i), typeClass, key);
+    }
+
+    @Override
+    public int entrySize(T key) {
+        return entrySize;
+    }
+
+    @Override
+    public int freeSpace() {
+        return data.length - entryOffset(getNumKeys());
+    }
+
+    @Override
+    protected void insertEntry(int pos, T key, int right_block_id) {
+        int numKeys = getNumKeys();
+        if (entryOffset(numKeys + 1) > data.length) {
+            throw new RuntimeException("Internal node is out of space");
+        }
+
+        // shift the entries after pos by one entry
+        int entryStart = entryOffset(pos);
+        System.arraycopy(data, entryStart, data, entryStart + entrySize, (numKeys - pos) * entrySize);
+
+        writeFixedKey(entryStart, typeClass, key);
+        writeInt(entryStart + keyWidth, right_block_id);
+
+        writeShort(0, numKeys + 1);
+    }
+}
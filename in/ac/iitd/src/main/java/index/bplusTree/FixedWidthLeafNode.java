@@ -0,0 +1,72 @@
+package index.bplusTree;
+
+/*
+ * LeafNode for INTEGER / FLOAT / DOUBLE keys - the keys are stored fixed width, without a length prefix.
+ * Looks Like -
+ * # entries | prev leafnode | next leafnode | unused | blockid_1 | slot_1 | key_1 | blockid_2 | slot_2 | key_2 ...
+ *
+ * Every entry has the same size, so entry i sits at a computed offset and needs no offset array,
+ * and binary search compares the raw primitive in the block against the key.
+ */
+public class FixedWidthLeafNode<T> extends LeafNode<T> {
+
+    private final int keyWidth;
+    private final int entrySize;
+
+    public FixedWidthLeafNode(Class<T> typeClass) {
+        this(typeClass, block_capacity);
+    }
+
+    public FixedWidthLeafNode(Class<T> typeClass, int block_size) {
+        super(typeClass, block_size);
+        this.keyWidth = fixed_key_width(typeClass);
+        if (keyWidth < 0) {
+            throw new IllegalArgumentException("Unsupported fixed width type: " + typeClass.getName());
+        }
+        this.entrySize = 6 + keyWidth;
+    }
+
+    @Override
+    protected int entryOffset(int i) {
+        return HEADER_SIZE + i * entrySize;
+    }
+
+    @Override
+    protected T keyAt(int i) {
+        return typeClass.cast(readFixedKey(entryOffset(i) + 6, typeClass));
+    }
+
+    @Override
+    protected int compareKeyAt(int i, T key) {
+        return compareFixedKey(entryOffset(i) + 6, typeClass, key);
+    }
+
+    @Override
+    public int entrySize(T key, byte[] payload) {
+        return entrySize;
+    }
+
+    @Override
+    public int freeSpace() {
+        return data.length - entryOffset(getNumKeys());
+    }
+
+    // fixed width leaves never have payloads - a tree with payloads uses the slotted LeafNode
+    @Override
+    protected void insertEntry(int pos, T key, int block_id, int slot_id, byte[] payload) {
+        int numKeys = getNumKeys();
+        if (entryOffset(numKeys + 1) > data.length) {
+            throw new RuntimeException("Leaf node is out of space");
+        }
+
+        // shift the entries after pos by one entry
+        int entryStart = entryOffset(pos);
+        System.arraycopy(data, entryStart, data, entryStart + entrySize, (numKeys - pos) * entrySize);
+
+        writeInt(entryStart, block_id);
+        writeShort(entryStart + 4, slot_id);
+        writeFixedKey(entryStart + 6, typeClass, key);
+
+        writeShort(0, numKeys + 1);
+    }
+}
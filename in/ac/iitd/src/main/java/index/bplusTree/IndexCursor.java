@@ -0,0 +1,105 @@
+package index.bplusTree;
+
+/*
+ * Cursor over the leaf level of a BPlusTreeIndexFile, restricted to the keys between lower and upper.
+ * A null bound leaves that side of the range open.
+ *
+ * Leaves are decoded one at a time while following the next leaf pointer of the leaf header,
+ * so a scan never holds more than one leaf worth of keys.
+ *
+ * Usage -
+ *      IndexCursor<Integer> cursor = tree.scan(10, true, 20, false);
+ *      while (cursor.next()) { cursor.getKey(); cursor.getBlockId(); cursor.getSlotId(); }
+ */
+public class IndexCursor<T> {
+
+    private final BPlusTreeIndexFile<T> tree;
+    private final T lower;
+    private final boolean lowerInclusive;
+    private final T upper;
+    private final boolean upperInclusive;
+
+    // current leaf, 0 once the chain is exhausted (block 0 is the metadata block)
+    private int leafId;
+    private LeafNode<T> leaf;
+    private T[] keys;
+    private int[] blockIds;
+    private int[] slotIds;
+    private byte[][] payloads;
+    private int pos;
+    private boolean done;
+
+    IndexCursor(BPlusTreeIndexFile<T> tree, T lower, boolean lowerInclusive, T upper, boolean upperInclusive) {
+        this.tree = tree;
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+
+        this.leafId = lower == null ? tree.first_leaf() : tree.search_leaf(lower);
+        loadLeaf();
+        this.pos = -1;
+        this.done = false;
+    }
+
+    // moves to the next entry in the range, returns false once the range is exhausted
+    public boolean next() {
+        while (!done) {
+            pos++;
+            if (pos >= keys.length) {
+                leafId = leaf.getNextLeafId();
+                if (leafId == 0) {
+                    done = true;
+                    return false;
+                }
+                loadLeaf();
+                pos = -1;
+                continue;
+            }
+            T key = keys[pos];
+            if (lower != null) {
+                int cmp = leaf.compareKeys(key, lower);
+                if (cmp < 0 || (cmp == 0 && !lowerInclusive)) {
+                    continue;
+                }
+            }
+            if (upper != null) {
+                int cmp = leaf.compareKeys(key, upper);
+                if (cmp > 0 || (cmp == 0 && !upperInclusive)) {
+                    done = true;
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // key of the current entry
+    public T getKey() {
+        return keys[pos];
+    }
+
+    // block id of the record the current entry points at
+    public int getBlockId() {
+        return blockIds[pos];
+    }
+
+    // slot of the record the current entry points at, within its block
+    public int getSlotId() {
+        return slotIds[pos];
+    }
+
+    // payload of the current entry, null if the tree has no payloads
+    public byte[] getPayload() {
+        return payloads[pos];
+    }
+
+    private void loadLeaf() {
+        leaf = tree.get_leaf(leafId);
+        keys = leaf.getKeys();
+        blockIds = leaf.getBlockIds();
+        slotIds = leaf.getSlotIds();
+        payloads = leaf.getPayloads();
+    }
+}
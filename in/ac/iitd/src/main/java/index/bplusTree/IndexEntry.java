@@ -0,0 +1,41 @@
+package index.bplusTree;
+
+/*
+ * One (key, record id) pair of an index - the input of BPlusTreeIndexFile.bulk_load.
+ * The record id is the block of the record and its slot in that block's slot directory.
+ * The payload is only kept by a tree with payloads, see LeafNode.
+ */
+public class IndexEntry<T> {
+
+    private final T key;
+    private final int block_id;
+    private final int slot_id;
+    private final byte[] payload;
+
+    public IndexEntry(T key, int block_id, int slot_id) {
+        this(key, block_id, slot_id, null);
+    }
+
+    public IndexEntry(T key, int block_id, int slot_id, byte[] payload) {
+        this.key = key;
+        this.block_id = block_id;
+        this.slot_id = slot_id;
+        this.payload = payload;
+    }
+
+    public T getKey() {
+        return key;
+    }
+
+    public int getBlockId() {
+        return block_id;
+    }
+
+    public int getSlotId() {
+        return slot_id;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+}
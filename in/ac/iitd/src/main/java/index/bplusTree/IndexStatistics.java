@@ -0,0 +1,50 @@
+package index.bplusTree;
+
+/*
+ * What the optimizer knows about an index - see BPlusTreeIndexFile.compute_statistics.
+ * An index scan reads height nodes to reach the leaf level, then the leaves holding the matching keys,
+ * about num_leaves times the fraction of the entries that match.
+ * min_key and max_key are null for an empty index.
+ */
+public class IndexStatistics<T> {
+
+    private final int height;
+    private final int num_leaves;
+    private final int num_entries;
+    private final int num_distinct_keys;
+    private final T min_key;
+    private final T max_key;
+
+    public IndexStatistics(int height, int num_leaves, int num_entries, int num_distinct_keys, T min_key, T max_key) {
+        this.height = height;
+        this.num_leaves = num_leaves;
+        this.num_entries = num_entries;
+        this.num_distinct_keys = num_distinct_keys;
+        this.min_key = min_key;
+        this.max_key = max_key;
+    }
+
+    public int get_height() {
+        return height;
+    }
+
+    public int get_num_leaves() {
+        return num_leaves;
+    }
+
+    public int get_num_entries() {
+        return num_entries;
+    }
+
+    public int get_num_distinct_keys() {
+        return num_distinct_keys;
+    }
+
+    public T get_min_key() {
+        return min_key;
+    }
+
+    public T get_max_key() {
+        return max_key;
+    }
+}
@@ -1,32 +1,40 @@
 package index.bplusTree;
 
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-
 /*
- * Internal Node - num Keys | ptr to next free offset | P_1 | len(K_1) | K_1 | P_2 | len(K_2) | K_2 | ... | P_n
+ * Internal Node - num Keys | start of entry heap | P_0 | offset_1 | offset_2 | ... free ... | entries
  * Only write code where specified
 
+ * offset_i points at entry i (in key order), the entries are packed from the end of the block -
+ * entry_i = len(K_i) | K_i | P_i
+ * so P_i is the child to the right of K_i, and P_0 (in the header) is the leftmost child.
+ * The P_i are 4 bytes, everything else 2.
+ * The offsets are fixed width, so searching a node is a binary search over them.
+
  * Remember that each Node is a block in the Index file, thus, P_i is the block_id of the child node
  */
 public class InternalNode<T> extends BlockNode implements TreeNode<T> {
 
     // Class of the key
     Class<T> typeClass;
+
+    // header is # keys | heap start | P_0
+    protected static final int HEADER_SIZE = 8;
+
     // write by Vikash meena . Not provided by them need to Review.
     public InternalNode(Class<T> typeClass) {
         super();
         this.typeClass = typeClass;
 
-        byte[] numKeysBytes = new byte[2];
-        numKeysBytes[0] = 0;
-        numKeysBytes[1] = 0;
-        this.write_data(0, numKeysBytes);
+        writeShort(0, 0);
+        setHeapStart(data.length);
+    }
+
+    public InternalNode(Class<T> typeClass, int block_size) {
+        super(block_size);
+        this.typeClass = typeClass;
 
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = 0;
-        nextFreeOffsetBytes[1] = 6;
-        this.write_data(2, nextFreeOffsetBytes);
+        writeShort(0, 0);
+        setHeapStart(data.length);
     }
 
 
@@ -36,27 +44,36 @@ public class InternalNode<T> extends BlockNode implements TreeNode<T> {
         super();
         this.typeClass = typeClass;
 
-        byte[] numKeysBytes = new byte[2];
-        numKeysBytes[0] = 0;
-        numKeysBytes[1] = 0;
-
-        this.write_data(0, numKeysBytes);
+        writeShort(0, 0);
+        setHeapStart(data.length);
+        writeInt(4, left_child_id);
 
-        byte[] child_1 = new byte[2];
-        child_1[0] = (byte) ((left_child_id >> 8) & 0xFF);
-        child_1[1] = (byte) (left_child_id & 0xFF);
+        // also calls the insert method
+        this.insert(key, right_child_id);
+        return;
+    }
 
-        this.write_data(4, child_1);
+    public InternalNode(T key, int left_child_id, int right_child_id, Class<T> typeClass, int block_size) {
+        this(typeClass, block_size);
+        writeInt(4, left_child_id);
+        this.insert(key, right_child_id);
+    }
 
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = 0;
-        nextFreeOffsetBytes[1] = 6;
+    // start of the entry heap - a full 64KB block doesn't fit in 2 bytes, it is stored as 0
+    protected int heapStart() {
+        int start = readShort(2);
+        return start == 0 ? data.length : start;
+    }
 
-        this.write_data(2, nextFreeOffsetBytes);
+    protected void setHeapStart(int start) {
+        writeShort(2, start);
+    }
 
-        // also calls the insert method
-        this.insert(key, right_child_id);
-        return;
+    // empties the node so it can be refilled in place, with left_child_id as its only child
+    public void clear(int left_child_id) {
+        writeShort(0, 0);
+        setHeapStart(data.length);
+        writeInt(4, left_child_id);
     }
 
     // returns the keys in the node - will be evaluated
@@ -67,231 +84,148 @@ public class InternalNode<T> extends BlockNode implements TreeNode<T> {
         T[] keys = (T[]) new Object[numKeys];
 
         /* Write your code here */
-        int offset = 4; // Start after the header (num keys, next free offset, left child ID)
         for (int i = 0; i < numKeys; i++) {
-            // Read key length
-            offset+=2;
-            byte[] keyLenBytes = this.get_data(offset, 2);
-            int keyLen = ((keyLenBytes[0] << 8) | (keyLenBytes[1] & 0xFF));
-            offset += 2;
-
-            // Read key bytes
-            byte[] keyBytes = this.get_data(offset, keyLen);
-            offset += keyLen;
-
-            // Convert key bytes to type T
-            keys[i] = convertBytesToT(keyBytes, typeClass);
+            keys[i] = keyAt(i);
         }
 
-
         return keys;
     }
 
     // can be used as helper function - won't be evaluated
+    // a duplicate goes after the equal keys - search() sends equal keys right, so the new child sits to the right
     @Override
     public void insert(T key, int right_block_id) {
         /* Write your code here */
-        int numKeys = getNumKeys();
-
-        // Find the position to insert the key
-//        System.out.print("Internal Node before insertion: ");
-//        this.print();
-//        System.out.print("\n");
-//        System.out.print("Data is: "+(Integer)key+"\n");
-        int insertIndex = 0;
-        int offset = 6; // Start after the header
-        for (int i = 0; i < numKeys; i++) {
-            // Read key length
-            byte[] keyLenBytes = this.get_data(offset, 2);
-            int keyLen = ((keyLenBytes[0] << 8) | (keyLenBytes[1] & 0xFF));
-            offset += 2;
-            // Read key bytes
-            byte[] storedKeyBytes = this.get_data(offset, keyLen);
-            T storedKey = convertBytesToT(storedKeyBytes, typeClass);
-            // Compare keys to find the insertion point
-            if (compareKeys(key, storedKey) <= 0) {
-                break;
-            }
-            // Move to the next key
-            offset += keyLen;
-            offset+=2;
-            insertIndex++;
-        }
-        // Insert the key and update the pointer to the right child ID
-        int offset_copy_from;
-        if(numKeys==0){
-            offset_copy_from = offset;
-        }else if(insertIndex==numKeys){
-            offset_copy_from = offset;
-        }else{
-            offset_copy_from=offset-2;
-            offset=offset-2;
-        }
+        insertEntry(upperBound(key), key, right_block_id);
+    }
 
-        int data_length=0;
-        for (int i = insertIndex; i < numKeys; i++) {
-            byte[] keyLenBytes = this.get_data(offset, 2);
-            int keyLen = ((keyLenBytes[0] << 8) | (keyLenBytes[1] & 0xFF));
-            offset += (keyLen + 4);
-            data_length+=(keyLen + 4);
+    // can be used as helper function - won't be evaluated
+    // returns the child to descend into for key, -1 if that is the rightmost child
+    @Override
+    public int search(T key) {
+        // an equal key keeps going right - separators can repeat, and the key belongs after the last copy
+        int i = upperBound(key);
+        if (i == getNumKeys()) {
+            return -1;
         }
+        return getChild(i);
+    }
 
-//        System.arraycopy();
-        byte[] data_to_written = new byte[data_length];
-        System.arraycopy(this.get_data(offset_copy_from,data_length),0,data_to_written,0,data_length);
-
-
-        // write the length of the key
-        byte[] keyLenBytes = new byte[2];
-        int keyLen;
-        if(key.getClass()==Integer.class){
-            keyLen=4;
-        }else if(key.getClass()==Float.class){
-            keyLen=4;
-        }else if(key.getClass()==Double.class){
-            keyLen=8;
-        }else if(key.getClass()==Boolean.class){
-            keyLen=1;
-        }else if(key.getClass()==String.class){
-            String tmp =(String)key;
-            keyLen = tmp.length();
-        }else{
-            throw new RuntimeException("Key type is wrong in leaf node insertion..");
+    // returns the leftmost child that can hold key - equal separators send us left,
+    // since duplicates of a separator may also sit at the end of the left subtree
+    public int searchLeftmost(T key) {
+        return getChild(lowerBound(key));
+    }
 
+    // block id of child i, 0 <= i <= getNumKeys()
+    public int getChild(int i) {
+        if (i == 0) {
+            return readInt(4);
         }
-//        int keyLen = String.valueOf(key).getBytes().length;
-        // for integer...
-        keyLenBytes[0] = (byte) (keyLen >> 8);
-        keyLenBytes[1] = (byte) keyLen;
-        this.write_data(offset_copy_from, keyLenBytes);
-
-        byte[] keyBytes;
-        if(key.getClass()== Integer.class){
-            keyBytes = toByteArray((Integer)key);
-        }else if(key.getClass()==Float.class){
-            keyBytes = toByteArray((Float)key);
-        }else if(key.getClass()==Double.class){
-            keyBytes = toByteArray((Double)key);
-        }else if(key.getClass()==Boolean.class){
-            keyBytes = toByteArray((Boolean)key);
-        }else if(key.getClass()==String.class){
-            String tmp1 =(String)key;
-            keyBytes = toByteArray(tmp1);
-        }else{
-            throw new RuntimeException("Key type is wrong in leaf node insertion..");
-        }
-        // write the data..
-        this.write_data(offset_copy_from + 2, keyBytes);
+        int offset = entryOffset(i - 1);
+        return readInt(offset + 2 + readShort(offset));
+    }
 
-        // write the right child
-        byte[] rightChildIdBytes = new byte[2];
-        rightChildIdBytes[0] = (byte) ((right_block_id >> 8) & 0xFF);
-        rightChildIdBytes[1] = (byte) (right_block_id & 0xFF);
-        this.write_data(offset_copy_from+2+keyLen, rightChildIdBytes);
+    // should return the block_ids of the children - will be evaluated
+    public int[] getChildren() {
 
-        // Increment the number of keys
-        this.write_data(offset_copy_from+2+keyLen+2,data_to_written);
+        int numKeys = getNumKeys();
 
+        int[] children = new int[numKeys + 1];
 
-        numKeys++;
-        byte[] numKeysBytes = new byte[2];
-        numKeysBytes[0] = (byte) (numKeys >> 8);
-        numKeysBytes[1] = (byte) (numKeys & 0xFF);
-        this.write_data(0, numKeysBytes);
+        /* Write your code here */
+        for (int i = 0; i <= numKeys; i++) {
+            children[i] = getChild(i);
+        }
+        return children;
 
-        // Update the pointer to the next free offset
-        int temp=offset_copy_from+2+keyLen+2+data_length;
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = (byte) (temp >> 8);
-        nextFreeOffsetBytes[1] = (byte) (temp & 0xFF);
-        this.write_data(2, nextFreeOffsetBytes);
+    }
 
-        // print the keys of this internal_node after insertion
-//        System.out.print("Internal Node After Insertion: ");
-//        this.print();
-//        System.out.print("\n");
+    // index of the first key >= the given key, getNumKeys() if there is none
+    public int lowerBound(T key) {
+        int lo = 0;
+        int hi = getNumKeys();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKeyAt(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
 
+    // index of the first key > the given key, getNumKeys() if there is none
+    public int upperBound(T key) {
+        int lo = 0;
+        int hi = getNumKeys();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKeyAt(mid, key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
 
+    // offset of entry i within the block
+    protected int entryOffset(int i) {
+        return readShort(HEADER_SIZE + 2 * i);
     }
 
-    // can be used as helper function - won't be evaluated
-    @Override
-    public int search(T key) {
-        int numKeys = this.getNumKeys();
-//        System.out.print("Num of keys are: "+numKeys+"\n");
-        int offset = 4; // Start after the header (num keys)
-        for (int i = 0; i < numKeys; i++) {
-            // Read key length
-            offset+=2;
-            byte[] keyLenBytes = this.get_data(offset, 2);
-            int keyLen = (keyLenBytes[0] << 8) | (keyLenBytes[1] & 0xFF);
-
-            // Read key bytes
-            offset+=2;
-//            System.out.print("Key_len in search of internal_node is: "+keyLen+" and offset is: "+offset+"\n");
-            byte[] storedKeyBytes = this.get_data(offset, keyLen);
-            if(storedKeyBytes==null){
-                throw new IllegalArgumentException("Stored byte array is null");
-            }
-            // isme dikkat hain ...
-//            byte[] fx_col = storedKeyBytes;
-//            int stored_actual_key = (fx_col[0]<<24) | (fx_col[1]<<16) | (fx_col[2]<<8) | (fx_col[3] & 0xFF);
-//            System.out.print("Actual key is "+stored_actual_key+"\n");
-            // well it is right
-            T storedKey = convertBytesToT(storedKeyBytes, typeClass);
-            // Compare keys
-
-//            System.out.print("Key is: "+(Integer)key+"\n");
-//            System.out.print("Stored key is: "+(Integer)storedKey+"\n");
-            // Not sure whether to use <= or <
-            if (compareKeys(key, storedKey) < 0) {
-                // If the search key is less than the current key,
-                // go to the left child
-
-                byte[] childIdBytes = this.get_data(offset-4, 2);
-                int leftChildId = ((childIdBytes[0] << 8) | (childIdBytes[1] & 0xFF));
-//                System.out.print("return id from search in internal node "+leftChildId+"\n");
-                return leftChildId;
-            }else if(compareKeys(key, storedKey) == 0){
-                byte[] childIdBytes = this.get_data(offset+keyLen, 2);
-                int rightChildId = ((childIdBytes[0] << 8) | (childIdBytes[1] & 0xFF));
-                return rightChildId;
-            }
+    // decodes key i
+    protected T keyAt(int i) {
+        int offset = entryOffset(i);
+        return convertBytesToT(this.get_data(offset + 2, readShort(offset)), typeClass);
+    }
 
-            // Move to the next key and child pointer
-            offset += keyLen;
-        }
+    // compares key i against key, same sign convention as compareKeys(keyAt(i), key)
+    protected int compareKeyAt(int i, T key) {
+        return compareKeys(keyAt(i), key);
+    }
 
-        // If the search key is greater than or equal to all keys in the node,
-        // go to the rightmost child
-//        byte[] childIdBytes = this.get_data(offset, 2);
-//        int rightChildId = ((childIdBytes[0] << 8) | (childIdBytes[1] & 0xFF));
-        // return -1 that's mean that the rightmost child is return..
-        return -1;
+    // bytes a key and its right child take in this node, the offset included
+    public int entrySize(T key) {
+        return 2 + 6 + convertTToBytes(key).length;
     }
 
+    // bytes left for entries
+    public int freeSpace() {
+        return heapStart() - (HEADER_SIZE + 2 * getNumKeys());
+    }
 
-    // should return the block_ids of the children - will be evaluated
-    public int[] getChildren() {
+    // bytes for entries in a node with only its leftmost child
+    public int entryCapacity() {
+        return data.length - HEADER_SIZE;
+    }
 
+    // writes the entry at the front of the heap and opens up position pos in the offset array for it
+    protected void insertEntry(int pos, T key, int right_block_id) {
         int numKeys = getNumKeys();
+        byte[] keyBytes = convertTToBytes(key);
 
-        int[] children = new int[numKeys + 1];
-
-        /* Write your code here */
-        int offset = 4; // Start after the header (num keys)
-        for (int i = 0; i <= numKeys; i++) {
-            byte[] childIdBytes = this.get_data(offset, 2);
-            int childId = ((childIdBytes[0] << 8) | (childIdBytes[1] & 0xFF));
-            children[i] = childId;
-            offset += 2;
-            byte[] keyLenBytes = this.get_data(offset, 2);
-            int keyLen = ((keyLenBytes[0] << 8) | (keyLenBytes[1] & 0xFF));
-            offset+=(2+keyLen);
+        int entryLen = 6 + keyBytes.length;
+        int entryStart = heapStart() - entryLen;
+        if (entryStart < HEADER_SIZE + 2 * (numKeys + 1)) {
+            throw new RuntimeException("Internal node is out of space");
         }
-        return children;
 
+        writeShort(entryStart, keyBytes.length);
+        System.arraycopy(keyBytes, 0, data, entryStart + 2, keyBytes.length);
+        writeInt(entryStart + 2 + keyBytes.length, right_block_id);
+
+        // shift the offsets after pos by one slot
+        int slotPos = HEADER_SIZE + 2 * pos;
+        System.arraycopy(data, slotPos, data, slotPos + 2, 2 * (numKeys - pos));
+        writeShort(slotPos, entryStart);
+
+        writeShort(0, numKeys + 1);
+        setHeapStart(entryStart);
     }
+
     public int compareKeys(T key1, T key2) {
         // Implement comparison logic based on the type of keys
         if (typeClass == String.class) {
@@ -304,31 +238,12 @@ public class InternalNode<T> extends BlockNode implements TreeNode<T> {
             return Float.compare((Float) key1, (Float) key2);
         } else if (typeClass == Double.class) {
             return Double.compare((Double) key1, (Double) key2);
+        } else if (typeClass == byte[].class) {
+            return CompositeKey.compare((byte[]) key1, (byte[]) key2);
         } else {
             // Default comparison: Convert keys to string and compare lexicographically
             return String.valueOf(key1).compareTo(String.valueOf(key2));
         }
     }
 
-    public byte[] toByteArray(int value) {
-        return ByteBuffer.allocate(4).putInt(value).array();
-    }
-
-    public  byte[] toByteArray(String value) {
-        return value.getBytes(StandardCharsets.UTF_8);
-    }
-
-    public byte[] toByteArray(double value) {
-        return ByteBuffer.allocate(8).putDouble(value).array();
-    }
-
-    public  byte[] toByteArray(float value) {
-        return ByteBuffer.allocate(4).putFloat(value).array();
-    }
-    public byte[] toByteArray(boolean value) {
-        byte[] byteArray = new byte[1];
-        byteArray[0] = (byte) (value ? 1 : 0);
-        return byteArray;
-    }
-
-}
\ No newline at end of file
+}
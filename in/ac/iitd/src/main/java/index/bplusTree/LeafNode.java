@@ -1,14 +1,16 @@
 package index.bplusTree;
 
-import com.sun.org.apache.bcel.internal.generic.INEG;
-
-import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-
 /*
- * A LeafNode contains keys and block ids.
+ * A LeafNode contains keys and record ids (block id + slot of the record in that block's slot directory).
  * Looks Like -
- * # entries | prev leafnode | next leafnode | ptr to next free offset | blockid_1 | len(key_1) | key_1 ...
+ * # entries | prev leafnode | next leafnode | start of entry heap | offset_1 | offset_2 | ... free ... | entries
+ *
+ * offset_i points at entry i (in key order), the entries themselves are packed from the end of the block -
+ * entry_i = blockid_i | slot_i | len(key_i) | key_i
+ * or, in the leaves of a tree with payloads (a covering index, the payload holds the included columns) -
+ * entry_i = blockid_i | slot_i | len(key_i) | key_i | len(payload_i) | payload_i
+ * The offsets are fixed width, so an insert only shifts the offset array and lookups can binary search on it.
+ * Block ids (prev, next and blockid_i) are 4 bytes, everything else 2.
  *
  * Note: Only write code where specified!
  */
@@ -16,26 +18,55 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
 
     Class<T> typeClass;
 
+    // whether every entry carries a payload after its key
+    protected final boolean payloads;
+
+    // header is # entries | prev | next | heap start
+    protected static final int HEADER_SIZE = 12;
+
     public LeafNode(Class<T> typeClass) {
 
         super();
         this.typeClass = typeClass;
+        this.payloads = false;
 
         // set numEntries to 0
-        byte[] numEntriesBytes = new byte[2];
-        numEntriesBytes[0] = 0;
-        numEntriesBytes[1] = 0;
-        this.write_data(0, numEntriesBytes);
+        writeShort(0, 0);
 
-        // set ptr to next free offset to 8
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = 0;
-        nextFreeOffsetBytes[1] = 8;
-        this.write_data(6, nextFreeOffsetBytes);
+        // the entry heap starts empty, at the end of the block
+        setHeapStart(data.length);
 
         return;
     }
 
+    public LeafNode(Class<T> typeClass, int block_size) {
+        this(typeClass, block_size, false);
+    }
+
+    public LeafNode(Class<T> typeClass, int block_size, boolean payloads) {
+        super(block_size);
+        this.typeClass = typeClass;
+        this.payloads = payloads;
+        writeShort(0, 0);
+        setHeapStart(data.length);
+    }
+
+    // start of the entry heap - a full 64KB block doesn't fit in 2 bytes, it is stored as 0
+    protected int heapStart() {
+        int start = readShort(10);
+        return start == 0 ? data.length : start;
+    }
+
+    protected void setHeapStart(int start) {
+        writeShort(10, start);
+    }
+
+    // empties the node so it can be refilled in place, the prev / next links stay
+    public void clear() {
+        writeShort(0, 0);
+        setHeapStart(data.length);
+    }
+
     // returns the keys in the node - will be evaluated
     @Override
     public T[] getKeys() {
@@ -44,19 +75,8 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
         T[] keys = (T[]) new Object[numKeys];
 
         /* Write your code here */
-        int offset = 8; // Start after the header (prev node, next node, next free offset)
-
         for (int i = 0; i < numKeys; i++) {
-            offset += 2;
-
-            byte[] keyLenBytes = this.get_data(offset, 2);
-            int keyLen = ((keyLenBytes[0] << 8) | (keyLenBytes[1] & 0xFF));
-            offset += 2;
-//            System.out.print("The len is in get_keys func :"+keyLen+"\n");
-            byte[] keyBytes = this.get_data(offset, keyLen); // Read the key bytes
-            offset += keyLen;
-            // this is right ...
-            keys[i] = convertBytesToT(keyBytes, typeClass);
+            keys[i] = keyAt(i);
         }
 
         return keys;
@@ -64,172 +84,187 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
     }
 
     // returns the block ids in the node - will be evaluated
-    // s
     public int[] getBlockIds() {
 
         int numKeys = getNumKeys();
         int[] block_ids = new int[numKeys];
 
-        int offset=8;
         for (int i = 0; i < numKeys; i++) {
-            byte[] Block_id = this.get_data(offset,2);
-            int block_id = ((Block_id[0] << 8) | (Block_id[1] & 0xFF));
-            block_ids[i]=block_id;
-            offset+=2;
-            byte[] keyLenBytes = this.get_data(offset, 2);
-            int keyLen = ((keyLenBytes[0] << 8) | (keyLenBytes[1] & 0xFF));
-            offset+=2;
-            offset+=keyLen;
+            block_ids[i] = readInt(entryOffset(i));
         }
         return block_ids;
     }
 
+    // block id of the previous leaf node, 0 if there is none
+    public int getPrevLeafId() {
+        return readInt(2);
+    }
+
+    public void setPrevLeafId(int id) {
+        writeInt(2, id);
+    }
+
+    // block id of the next leaf node, 0 if there is none
+    public int getNextLeafId() {
+        return readInt(6);
+    }
+
+    public void setNextLeafId(int id) {
+        writeInt(6, id);
+    }
+
+    // returns the slots of the records in their blocks, parallel to getBlockIds()
+    public int[] getSlotIds() {
+
+        int numKeys = getNumKeys();
+        int[] slot_ids = new int[numKeys];
+
+        for (int i = 0; i < numKeys; i++) {
+            slot_ids[i] = readShort(entryOffset(i) + 4);
+        }
+        return slot_ids;
+    }
+
     // can be used as helper function - won't be evaluated
+    // for callers that only track blocks, the record id points at slot 0 of the block
     @Override
     public void insert(T key, int block_id) {
-        int numKeys = this.getNumKeys();
-//        System.out.print("Num of keys are : "+numKeys+"\n");
-        int offset = 8; // Start after the header (prev node, next node, next free offset)
-        // Find the correct position to insert the new key
-//        System.out.print("Leaf node before insertion: ");
-//        this.print();
-//        System.out.print("\n");
-//        System.out.print("Data is: "+(Integer)key+"\n");
-        int insertIndex = 0;
-        for (int i = 0; i < numKeys; i++) {
-            byte[] keyLenBytes = this.get_data(offset + 2, 2);
-            int keyLen = ((keyLenBytes[0] << 8) | (keyLenBytes[1] & 0xFF));
-//            System.out.print("The length is: "+keyLen+"\n");
-            byte[] keyBytes = this.get_data(offset + 4, keyLen);
-            T storedKey = convertBytesToT(keyBytes, typeClass);
-            // Compare keys to find the insertion point
-            if (compareKeys(key, storedKey) <= 0) {
-                break;
-            }
+        insert(key, block_id, 0);
+    }
 
-            // Move to the next key
-            offset += (keyLen + 4);
-            insertIndex++;
-        }
+    // can be used as helper function - won't be evaluated
+    // duplicates go after the equal keys, so records added in heap order keep their record ids sorted
+    public void insert(T key, int block_id, int slot_id) {
+        insert(key, block_id, slot_id, null);
+    }
 
-        // Shift existing keys and block IDs to make space for the new entry
-        // copy the rest of the data
-        int offset_from_copy=offset;
-        int data_length=0;
-        for (int i = insertIndex; i < numKeys; i++) {
-            byte[] keyLenBytes = this.get_data(offset + 2, 2);
-            int keyLen = ((keyLenBytes[0] << 8) | (keyLenBytes[1] & 0xFF));
-            offset += (keyLen + 4);
-            data_length+=(keyLen + 4);
+    public void insert(T key, int block_id, int slot_id, byte[] payload) {
+        insertEntry(upperBound(key), key, block_id, slot_id, payload);
+    }
+
+    // returns the payloads of the entries, parallel to getKeys() - all null if the node has none
+    public byte[][] getPayloads() {
+        int numKeys = getNumKeys();
+        byte[][] payload_list = new byte[numKeys][];
+        if (payloads) {
+            for (int i = 0; i < numKeys; i++) {
+                int offset = entryOffset(i);
+                int payloadStart = offset + 8 + readShort(offset + 6);
+                payload_list[i] = this.get_data(payloadStart + 2, readShort(payloadStart));
+            }
         }
+        return payload_list;
+    }
 
-        byte[] data_to_be_written= new byte[data_length];
-        System.arraycopy(this.get_data(offset_from_copy,data_length),0,data_to_be_written,0,data_length);
-        // insert the data
-        // write the block_id
-        byte[] blockIdBytes = new byte[2];
-        blockIdBytes[0] = (byte) (block_id >> 8);
-        blockIdBytes[1] = (byte) block_id;
-        this.write_data(offset_from_copy, blockIdBytes);
-        // write the len of key
-        byte[] keyLenBytes = new byte[2];
-        // hope this works..
-        int keyLen;
-        if(key.getClass()==Integer.class){
-            keyLen=4;
-        }else if(key.getClass()==Float.class){
-            keyLen=4;
-        }else if(key.getClass()==Double.class){
-            keyLen=8;
-        }else if(key.getClass()==Boolean.class){
-            keyLen=1;
-        }else if(key.getClass()==String.class){
-            String tmp =(String)key;
-            keyLen = tmp.length();
-        }else{
-            throw new RuntimeException("Key type is wrong in leaf node insertion..");
+    // can be used as helper function - won't be evaluated
+    @Override
+    public int search(T key) {
 
+        /* Write your code here */
+        int i = lowerBound(key);
+        if (i < getNumKeys() && compareKeyAt(i, key) == 0) {
+            return readInt(entryOffset(i));
         }
-//        System.out.print("The key_length in the insert func  is "+keyLen+"\n"+"And key is "+ String.valueOf(key).getBytes()[0]+"\n");
-        keyLenBytes[0] = (byte) (keyLen >> 8);
-        keyLenBytes[1] = (byte) keyLen;
-        this.write_data(offset_from_copy + 2, keyLenBytes);
-        // write the key
-        // Not sure whether this is correct way to right data
-//        byte[] keyBytes = String.valueOf(key).getBytes();
-        // this is the right way...
-
-        byte[] keyBytes;
-        if(key.getClass()== Integer.class){
-            keyBytes = toByteArray((Integer)key);
-        }else if(key.getClass()==Float.class){
-            keyBytes = toByteArray((Float)key);
-        }else if(key.getClass()==Double.class){
-            keyBytes = toByteArray((Double)key);
-        }else if(key.getClass()==Boolean.class){
-            keyBytes = toByteArray((Boolean)key);
-        }else if(key.getClass()==String.class){
-            String tmp1 =(String)key;
-            keyBytes = toByteArray(tmp1);
-        }else{
-            throw new RuntimeException("Key type is wrong in leaf node insertion..");
+        return -1;
+    }
+
+    // index of the first entry with key >= the given key, getNumKeys() if there is none
+    public int lowerBound(T key) {
+        int lo = 0;
+        int hi = getNumKeys();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKeyAt(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
         }
+        return lo;
+    }
 
-//        int temp = (keyBytes[3]<<24) | (keyBytes[2]<<16) | (keyBytes[1]<<8) | (keyBytes[0] & 0xFF);
-//        System.out.print("temp is: "+temp+"\n");
-//        System.out.print("val is: "+val+"\n");
+    // index of the first entry with key > the given key, getNumKeys() if there is none
+    public int upperBound(T key) {
+        int lo = 0;
+        int hi = getNumKeys();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareKeyAt(mid, key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
 
-        this.write_data(offset_from_copy + 4, keyBytes);
+    // offset of entry i within the block
+    protected int entryOffset(int i) {
+        return readShort(HEADER_SIZE + 2 * i);
+    }
 
-        // write the shifted data...
-        this.write_data(offset_from_copy+4+keyLen,data_to_be_written);
+    // decodes the key of entry i
+    protected T keyAt(int i) {
+        int offset = entryOffset(i);
+        int keyLen = readShort(offset + 6);
+        return convertBytesToT(this.get_data(offset + 8, keyLen), typeClass);
+    }
 
+    // compares the key of entry i against key, same sign convention as compareKeys(keyAt(i), key)
+    protected int compareKeyAt(int i, T key) {
+        return compareKeys(keyAt(i), key);
+    }
 
-        // Update the number of keys
-        numKeys++;
-        byte[] numEntriesBytes = new byte[2];
-        numEntriesBytes[0] = (byte) (numKeys >> 8);
-        numEntriesBytes[1] = (byte) numKeys;
-        this.write_data(0, numEntriesBytes);
+    // bytes an entry takes in this node, its offset included - the payload counts only if the node has payloads
+    public int entrySize(T key, byte[] payload) {
+        int payloadLen = payload == null ? 0 : payload.length;
+        return 2 + 8 + convertTToBytes(key).length + (payloads ? 2 + payloadLen : 0);
+    }
 
-        // Update the pointer to the next free offset
-        int nextFreeOffset = offset_from_copy + 4 + keyLen + data_length;
-        byte[] nextFreeOffsetBytes = new byte[2];
-        nextFreeOffsetBytes[0] = (byte) (nextFreeOffset >> 8);
-        nextFreeOffsetBytes[1] = (byte) nextFreeOffset;
-        this.write_data(6, nextFreeOffsetBytes);
+    // bytes left for entries
+    public int freeSpace() {
+        return heapStart() - (HEADER_SIZE + 2 * getNumKeys());
+    }
 
-//        System.out.print("Leaf node After insertion: ");
-//        this.print();
-//        System.out.print("\n");
-        return;
+    // bytes for entries in an empty node
+    public int entryCapacity() {
+        return data.length - HEADER_SIZE;
     }
 
+    protected void insertEntry(int pos, T key, int block_id, int slot_id) {
+        insertEntry(pos, key, block_id, slot_id, null);
+    }
 
-    // can be used as helper function - won't be evaluated
-    @Override
-    public int search(T key) {
+    // writes the entry at the front of the heap and opens up position pos in the offset array for it
+    // the payload is dropped if the node has no payloads, a null payload is stored empty if it has
+    protected void insertEntry(int pos, T key, int block_id, int slot_id, byte[] payload) {
+        int numKeys = getNumKeys();
+        byte[] keyBytes = convertTToBytes(key);
+        byte[] payloadBytes = payload == null ? new byte[0] : payload;
 
-        /* Write your code here */
-        int num_keys = getNumKeys();
-
-        int offset=8;
-        for (int i = 0; i < num_keys; i++) {
-            byte[] Block_id = this.get_data(offset,2);
-            int block_id = ((Block_id[0] << 8) | (Block_id[1] & 0xFF));
-            offset+=2;
-            byte[] keyLenBytes = this.get_data(offset, 2);
-            int keyLen = ((keyLenBytes[0] << 8) | (keyLenBytes[1] & 0xFF));
-            offset+=2;
-            byte[] keyBytes = this.get_data(offset, keyLen); // Read the key bytes
-            T stored_key= convertBytesToT(keyBytes, typeClass);
-            offset+=keyLen;
-            if (compareKeys(stored_key,key)==0){
-                return block_id;
-            }
+        int entryLen = 8 + keyBytes.length + (payloads ? 2 + payloadBytes.length : 0);
+        int entryStart = heapStart() - entryLen;
+        if (entryStart < HEADER_SIZE + 2 * (numKeys + 1)) {
+            throw new RuntimeException("Leaf node is out of space");
         }
 
-        return -1;
+        writeInt(entryStart, block_id);
+        writeShort(entryStart + 4, slot_id);
+        writeShort(entryStart + 6, keyBytes.length);
+        System.arraycopy(keyBytes, 0, data, entryStart + 8, keyBytes.length);
+        if (payloads) {
+            int payloadStart = entryStart + 8 + keyBytes.length;
+            writeShort(payloadStart, payloadBytes.length);
+            System.arraycopy(payloadBytes, 0, data, payloadStart + 2, payloadBytes.length);
+        }
+
+        // shift the offsets after pos by one slot
+        int slotPos = HEADER_SIZE + 2 * pos;
+        System.arraycopy(data, slotPos, data, slotPos + 2, 2 * (numKeys - pos));
+        writeShort(slotPos, entryStart);
+
+        writeShort(0, numKeys + 1);
+        setHeapStart(entryStart);
     }
 
     // Helper method to compare keys
@@ -249,32 +284,12 @@ public class LeafNode<T> extends BlockNode implements TreeNode<T>{
             return Float.compare((Float) key1, (Float) key2);
         } else if (typeClass == Double.class) {
             return Double.compare((Double) key1, (Double) key2);
+        } else if (typeClass == byte[].class) {
+            return CompositeKey.compare((byte[]) key1, (byte[]) key2);
         } else {
             // Default comparison: Convert keys to string and compare lexicographically
             return String.valueOf(key1).compareTo(String.valueOf(key2));
         }
     }
 
-    public byte[] toByteArray(int value) {
-        return ByteBuffer.allocate(4).putInt(value).array();
-    }
-
-    public  byte[] toByteArray(String value) {
-        return value.getBytes(StandardCharsets.UTF_8);
-    }
-
-    public byte[] toByteArray(double value) {
-        return ByteBuffer.allocate(8).putDouble(value).array();
-    }
-
-    public  byte[] toByteArray(float value) {
-        return ByteBuffer.allocate(4).putFloat(value).array();
-    }
-    public byte[] toByteArray(boolean value) {
-        byte[] byteArray = new byte[1];
-        byteArray[0] = (byte) (value ? 1 : 0);
-        return byteArray;
-    }
-
-
-}
\ No newline at end of file
+}
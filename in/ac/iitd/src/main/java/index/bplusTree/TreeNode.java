@@ -1,6 +1,7 @@
 package index.bplusTree;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 // TreeNode interface - will be implemented by InternalNode and LeafNode
 public interface TreeNode <T> {
@@ -27,7 +28,10 @@ public interface TreeNode <T> {
             throw new IllegalArgumentException("Input byte array is null");
         }
         if (typeClass == String.class) {
-            return (T) new String(bytes);
+            return (T) new String(bytes, StandardCharsets.UTF_8);
+        } else if (typeClass == byte[].class) {
+            // a CompositeKey, already encoded
+            return typeClass.cast(bytes);
         } else if (typeClass == Integer.class) {
 //            System.out.print("In the convertBytesToT func for int \n");
             return typeClass.cast(ByteBuffer.wrap(bytes).getInt());
@@ -42,4 +46,23 @@ public interface TreeNode <T> {
         }
     }
 
+    // inverse of convertBytesToT - numbers are big endian, strings UTF-8
+    default public byte[] convertTToBytes(T key){
+        if (key instanceof String) {
+            return ((String) key).getBytes(StandardCharsets.UTF_8);
+        } else if (key instanceof byte[]) {
+            return (byte[]) key;
+        } else if (key instanceof Integer) {
+            return ByteBuffer.allocate(4).putInt((Integer) key).array();
+        } else if (key instanceof Boolean) {
+            return new byte[]{(byte) ((Boolean) key ? 1 : 0)};
+        } else if (key instanceof Float) {
+            return ByteBuffer.allocate(4).putFloat((Float) key).array();
+        } else if (key instanceof Double) {
+            return ByteBuffer.allocate(8).putDouble((Double) key).array();
+        } else {
+            throw new IllegalArgumentException("Unsupported data type: " + key.getClass().getName());
+        }
+    }
+
 }
\ No newline at end of file
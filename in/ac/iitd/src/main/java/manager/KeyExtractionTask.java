@@ -0,0 +1,93 @@
+package manager;
+
+import index.bplusTree.IndexEntry;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/*
+ * Decodes the data blocks [start_block, end_block) of a table and returns the (key, record id) entries
+ * of an index, sorted by key. key_of gives the key of a decoded record - a column, or several columns
+ * encoded as a CompositeKey - and payload_of, unless null, the payload of its entry.
+ * Ranges larger than BLOCKS_PER_TASK are split in two and forked, and the two sorted halves are merged,
+ * so the whole table ends up sorted without a single-threaded sort at the end.
+ *
+ * Only reads the table - safe to run while nothing is appending to it.
+ */
+class KeyExtractionTask<T> extends RecursiveTask<List<IndexEntry<T>>> {
+
+    private static final long serialVersionUID = 1L;
+
+    // small enough that a table of a few hundred blocks still spreads over all the workers
+    static final int BLOCKS_PER_TASK = 16;
+
+    private final StorageManager storage_manager;
+    private final String table_name;
+    private final Function<Object[], T> key_of;
+    private final Function<Object[], byte[]> payload_of;
+    private final Comparator<IndexEntry<T>> order;
+    private final int start_block;
+    private final int end_block;
+
+    KeyExtractionTask(StorageManager storage_manager, String table_name, Function<Object[], T> key_of,
+                      Function<Object[], byte[]> payload_of, Comparator<IndexEntry<T>> order, int start_block, int end_block) {
+        this.storage_manager = storage_manager;
+        this.table_name = table_name;
+        this.key_of = key_of;
+        this.payload_of = payload_of;
+        this.order = order;
+        this.start_block = start_block;
+        this.end_block = end_block;
+    }
+
+    @Override
+    protected List<IndexEntry<T>> compute() {
+        if (end_block - start_block <= BLOCKS_PER_TASK) {
+            return extract();
+        }
+        int mid = (start_block + end_block) >>> 1;
+        KeyExtractionTask<T> left = new KeyExtractionTask<>(storage_manager, table_name, key_of, payload_of, order, start_block, mid);
+        KeyExtractionTask<T> right = new KeyExtractionTask<>(storage_manager, table_name, key_of, payload_of, order, mid, end_block);
+        right.fork();
+        List<IndexEntry<T>> left_entries = left.compute();
+        return merge(left_entries, right.join());
+    }
+
+    private List<IndexEntry<T>> extract() {
+        List<IndexEntry<T>> entries = new ArrayList<>();
+        for (int i = start_block; i < end_block; i++) {
+            List<Object[]> records = storage_manager.get_records_from_block(table_name, i);
+            for (int j = 0; j < records.size(); j++) {
+                Object[] record = records.get(j);
+                T key = key_of.apply(record);
+                // nulls are never matched by a comparison, so they are left out of the index
+                if (key != null) {
+                    entries.add(new IndexEntry<>(key, i, j, payload_of == null ? null : payload_of.apply(record)));
+                }
+            }
+        }
+        // stable, so equal keys keep their record ids in heap order
+        entries.sort(order);
+        return entries;
+    }
+
+    // merges two sorted runs, on equal keys the left run (lower block ids) goes first
+    private List<IndexEntry<T>> merge(List<IndexEntry<T>> left, List<IndexEntry<T>> right) {
+        List<IndexEntry<T>> merged = new ArrayList<>(left.size() + right.size());
+        int i = 0;
+        int j = 0;
+        while (i < left.size() && j < right.size()) {
+            if (order.compare(right.get(j), left.get(i)) < 0) {
+                merged.add(right.get(j++));
+            } else {
+                merged.add(left.get(i++));
+            }
+        }
+        merged.addAll(left.subList(i, left.size()));
+        merged.addAll(right.subList(j, right.size()));
+        return merged;
+    }
+}
@@ -0,0 +1,157 @@
+package manager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/*
+ * Decoder for the records of one table, compiled once from the table's schema block.
+ *
+ * Record layout (all values little endian) -
+ * offset_1 | len_1 | ... | offset_v | len_v | fixed length fields | null bitmap | variable length fields
+ * with one (offset, len) pair per VARCHAR column, the offsets relative to the start of the record.
+ * The null bitmap has one bit per column in schema order (fixed length columns first), most significant bit first.
+ *
+ * Decoded rows are in schema order as well, so the fixed length columns come before the VARCHAR ones.
+ */
+public class RecordCodec {
+
+    private final int num_columns;
+    private final int num_fixed_columns;
+    private final String[] names;
+    private final StorageManager.ColumnType[] types;
+    // offset of each fixed length field from the start of the record, -1 for VARCHAR columns
+    private final int[] fixed_offsets;
+    private final int bitmap_offset;
+    private final HashMap<String, Integer> column_index;
+
+    // parses the schema block - # columns | offset_1 | ... | offset_n | ... | type | len(name) | name ...
+    RecordCodec(byte[] schema) {
+        num_columns = (schema[0] & 0xFF) | ((schema[1] & 0xFF) << 8);
+        names = new String[num_columns];
+        types = new StorageManager.ColumnType[num_columns];
+        fixed_offsets = new int[num_columns];
+        column_index = new HashMap<>();
+
+        int num_var_columns = 0;
+        for (int i = 0; i < num_columns; i++) {
+            int off = (schema[2 + 2 * i] & 0xFF) | ((schema[3 + 2 * i] & 0xFF) << 8);
+            types[i] = StorageManager.ColumnType.values()[schema[off]];
+            names[i] = new String(schema, off + 2, schema[off + 1] & 0xFF, StandardCharsets.UTF_8);
+            column_index.put(names[i], i);
+            if (types[i] == StorageManager.ColumnType.VARCHAR) {
+                num_var_columns++;
+            }
+        }
+        num_fixed_columns = num_columns - num_var_columns;
+
+        int offset = 4 * num_var_columns;
+        for (int i = 0; i < num_columns; i++) {
+            if (types[i] == StorageManager.ColumnType.VARCHAR) {
+                fixed_offsets[i] = -1;
+            } else {
+                fixed_offsets[i] = offset;
+                offset += fixed_width(types[i]);
+            }
+        }
+        bitmap_offset = offset;
+    }
+
+    static int fixed_width(StorageManager.ColumnType type) {
+        switch (type) {
+            case INTEGER:
+            case FLOAT:
+                return 4;
+            case DOUBLE:
+                return 8;
+            case BOOLEAN:
+                return 1;
+            default:
+                throw new IllegalArgumentException("Not a fixed length type: " + type);
+        }
+    }
+
+    public int get_num_columns() {
+        return num_columns;
+    }
+
+    // position of the column in a decoded row, -1 if there is no such column
+    public int get_column_index(String column_name) {
+        Integer i = column_index.get(column_name);
+        return i == null ? -1 : i;
+    }
+
+    public String get_column_name(int column) {
+        return names[column];
+    }
+
+    StorageManager.ColumnType get_column_type(int column) {
+        return types[column];
+    }
+
+    // decodes every column of the record that starts at data[start]
+    public Object[] decode(byte[] data, int start) {
+        Object[] row = new Object[num_columns];
+        for (int i = 0; i < num_columns; i++) {
+            row[i] = decode_column(data, start, i);
+        }
+        return row;
+    }
+
+    // decodes a single column of the record that starts at data[start], null if the column is null
+    public Object decode_column(byte[] data, int start, int column) {
+        if (is_null(data, start, column)) {
+            return null;
+        }
+        switch (types[column]) {
+            case INTEGER:
+                return decode_int(data, start, column);
+            case FLOAT:
+                return decode_float(data, start, column);
+            case DOUBLE:
+                return decode_double(data, start, column);
+            case BOOLEAN:
+                return decode_boolean(data, start, column);
+            case VARCHAR:
+                return decode_string(data, start, column);
+            default:
+                throw new IllegalArgumentException("Unsupported column type: " + types[column]);
+        }
+    }
+
+    // primitive readers for the fixed length columns, no boxing - the caller checks is_null first
+    public int decode_int(byte[] data, int start, int column) {
+        return read_int(data, start + fixed_offsets[column]);
+    }
+
+    public float decode_float(byte[] data, int start, int column) {
+        return Float.intBitsToFloat(read_int(data, start + fixed_offsets[column]));
+    }
+
+    public double decode_double(byte[] data, int start, int column) {
+        int off = start + fixed_offsets[column];
+        return Double.longBitsToDouble((read_int(data, off) & 0xFFFFFFFFL) | ((long) read_int(data, off + 4) << 32));
+    }
+
+    public boolean decode_boolean(byte[] data, int start, int column) {
+        return data[start + fixed_offsets[column]] != 0;
+    }
+
+    public String decode_string(byte[] data, int start, int column) {
+        // VARCHAR columns follow the fixed ones, in the same order as their (offset, len) pairs
+        int dir = start + 4 * (column - num_fixed_columns);
+        return new String(data, start + read_short(data, dir), read_short(data, dir + 2), StandardCharsets.UTF_8);
+    }
+
+    public boolean is_null(byte[] data, int start, int column) {
+        return (data[start + bitmap_offset + column / 8] & (1 << (7 - column % 8))) != 0;
+    }
+
+    static int read_short(byte[] data, int off) {
+        return (data[off] & 0xFF) | ((data[off + 1] & 0xFF) << 8);
+    }
+
+    static int read_int(byte[] data, int off) {
+        return (data[off] & 0xFF) | ((data[off + 1] & 0xFF) << 8)
+                | ((data[off + 2] & 0xFF) << 16) | ((data[off + 3] & 0xFF) << 24);
+    }
+}
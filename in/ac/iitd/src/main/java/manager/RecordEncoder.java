@@ -0,0 +1,179 @@
+package manager;
+
+import org.apache.calcite.rel.type.RelDataType;
+import storage.RecordWriter;
+
+import java.util.List;
+
+/*
+ * Encoder for the rows of a table being loaded, the other half of RecordCodec (the record layout is described there).
+ * Rows come in in CSV order, the fixed length columns are packed first in that order, then the VARCHAR ones.
+ *
+ * prepare works out the length of a row from the schema and the lengths of its strings, write then puts the
+ * record straight into the block it goes to - one encoder per load, nothing is allocated per row.
+ */
+class RecordEncoder implements RecordWriter {
+
+    private final StorageManager.ColumnType[] types;
+    // offset of each fixed length field in the record, and for a VARCHAR column its slot in the (offset, len) directory
+    private final int[] positions;
+    // bit of each column in the null bitmap
+    private final int[] null_bits;
+    private final int num_var_columns;
+    private final int bitmap_offset;
+    private final int bitmap_length;
+
+    // the row being written and the encoded length of its VARCHAR fields
+    private Object[] row;
+    private final int[] var_lengths;
+    private int length;
+
+    RecordEncoder(List<RelDataType> typeList) {
+        int n = typeList.size();
+        types = new StorageManager.ColumnType[n];
+        positions = new int[n];
+        null_bits = new int[n];
+        int num_var = 0;
+        int fixed_length = 0;
+        for (int i = 0; i < n; i++) {
+            types[i] = StorageManager.ColumnType.valueOf(typeList.get(i).getSqlTypeName().getName());
+            if (types[i] == StorageManager.ColumnType.VARCHAR) {
+                num_var++;
+            } else {
+                fixed_length += RecordCodec.fixed_width(types[i]);
+            }
+        }
+        num_var_columns = num_var;
+        var_lengths = new int[num_var];
+
+        int offset = 4 * num_var;
+        int fixed_bit = 0, var_slot = 0;
+        for (int i = 0; i < n; i++) {
+            if (types[i] == StorageManager.ColumnType.VARCHAR) {
+                null_bits[i] = n - num_var + var_slot;
+                positions[i] = var_slot++;
+            } else {
+                null_bits[i] = fixed_bit++;
+                positions[i] = offset;
+                offset += RecordCodec.fixed_width(types[i]);
+            }
+        }
+        bitmap_offset = 4 * num_var + fixed_length;
+        bitmap_length = (n + 7) / 8;
+    }
+
+    // length in bytes of the record for row, which write puts in next
+    int prepare(Object[] row) {
+        this.row = row;
+        length = bitmap_offset + bitmap_length;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == StorageManager.ColumnType.VARCHAR) {
+                int len = row[i] == null ? 0 : utf8_length((String) row[i]);
+                var_lengths[positions[i]] = len;
+                length += len;
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public void write(byte[] data, int offset) {
+        int bitmap = offset + bitmap_offset;
+        for (int b = 0; b < bitmap_length; b++) {
+            data[bitmap + b] = 0;
+        }
+
+        int var_offset = bitmap_offset + bitmap_length;
+        for (int i = 0; i < types.length; i++) {
+            Object value = row[i];
+            if (value == null) {
+                data[bitmap + null_bits[i] / 8] |= (byte) (1 << (7 - null_bits[i] % 8));
+            }
+            if (types[i] == StorageManager.ColumnType.VARCHAR) {
+                int len = var_lengths[positions[i]];
+                int slot = offset + 4 * positions[i];
+                data[slot] = (byte) var_offset;
+                data[slot + 1] = (byte) (var_offset >> 8);
+                data[slot + 2] = (byte) len;
+                data[slot + 3] = (byte) (len >> 8);
+                if (value != null) {
+                    write_utf8((String) value, data, offset + var_offset);
+                }
+                var_offset += len;
+                continue;
+            }
+            int at = offset + positions[i];
+            switch (types[i]) {
+                case INTEGER:
+                    write_int(data, at, value == null ? 0 : (int) value);
+                    break;
+                case FLOAT:
+                    write_int(data, at, value == null ? 0 : Float.floatToIntBits((float) value));
+                    break;
+                case DOUBLE:
+                    long bits = value == null ? 0 : Double.doubleToLongBits((double) value);
+                    write_int(data, at, (int) bits);
+                    write_int(data, at + 4, (int) (bits >>> 32));
+                    break;
+                case BOOLEAN:
+                    data[at] = (byte) (value != null && (boolean) value ? 1 : 0);
+                    break;
+                default:
+                    System.out.println("Unsupported type");
+                    throw new RuntimeException("Unsupported type");
+            }
+        }
+    }
+
+    private static void write_int(byte[] data, int at, int value) {
+        data[at] = (byte) value;
+        data[at + 1] = (byte) (value >> 8);
+        data[at + 2] = (byte) (value >> 16);
+        data[at + 3] = (byte) (value >> 24);
+    }
+
+    // the same bytes String.getBytes(UTF_8) gives, a lone surrogate becomes '?'
+    static int utf8_length(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                len += 1;
+            } else if (c < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                len += 1;
+            } else {
+                len += 3;
+            }
+        }
+        return len;
+    }
+
+    private static void write_utf8(String s, byte[] data, int at) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                data[at++] = (byte) c;
+            } else if (c < 0x800) {
+                data[at++] = (byte) (0xC0 | (c >> 6));
+                data[at++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                data[at++] = (byte) (0xF0 | (cp >> 18));
+                data[at++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                data[at++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                data[at++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                data[at++] = '?';
+            } else {
+                data[at++] = (byte) (0xE0 | (c >> 12));
+                data[at++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                data[at++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package manager;
+
+/*
+ * A record read in place - points at a record inside a block's backing array and decodes
+ * fields on demand, without copying the record or building an Object[].
+ *
+ * A scan reuses one RowView for every row, so a view is only valid until the scan moves on -
+ * call to_array() to keep a row.
+ */
+public class RowView {
+
+    private final RecordCodec codec;
+    private byte[] block;
+    private int start;
+    private int block_id;
+    private int slot_id;
+
+    RowView(RecordCodec codec) {
+        this.codec = codec;
+    }
+
+    // points the view at the record of slot_id in block
+    void position(byte[] block, int block_id, int slot_id) {
+        this.block = block;
+        this.block_id = block_id;
+        this.slot_id = slot_id;
+        this.start = ((block[2 + 2 * slot_id] & 0xFF) << 8) | (block[3 + 2 * slot_id] & 0xFF);
+    }
+
+    public int get_block_id() {
+        return block_id;
+    }
+
+    public int get_slot_id() {
+        return slot_id;
+    }
+
+    public int get_num_columns() {
+        return codec.get_num_columns();
+    }
+
+    public boolean is_null(int column) {
+        return codec.is_null(block, start, column);
+    }
+
+    // boxed value of the column, null if the column is null
+    public Object get(int column) {
+        return codec.decode_column(block, start, column);
+    }
+
+    public int get_int(int column) {
+        return codec.decode_int(block, start, column);
+    }
+
+    public float get_float(int column) {
+        return codec.decode_float(block, start, column);
+    }
+
+    public double get_double(int column) {
+        return codec.decode_double(block, start, column);
+    }
+
+    public boolean get_boolean(int column) {
+        return codec.decode_boolean(block, start, column);
+    }
+
+    public String get_string(int column) {
+        return codec.decode_string(block, start, column);
+    }
+
+    // copies the row out, in the same column order as get_records_from_block
+    public Object[] to_array() {
+        return codec.decode(block, start);
+    }
+}
@@ -3,14 +3,41 @@ package manager;
 import storage.DB;
 import storage.File;
 import storage.Block;
+import storage.BufferPool;
+import storage.MappedFile;
+import storage.OffHeapArena;
+import storage.OffHeapPageStore;
+import storage.PageFile;
+import storage.PageStore;
+import storage.RecordIdSet;
+import storage.WriteAheadLog;
 import Utils.CsvRowConverter;
+import Utils.CsvRowStream;
+import Utils.CsvTokenizer;
 import index.bplusTree.BPlusTreeIndexFile;
-import java.io.BufferedReader;
+import index.bplusTree.CompositeKey;
+import index.bplusTree.IndexCursor;
+import index.bplusTree.IndexEntry;
+import index.bplusTree.IndexStatistics;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import javafx.util.Pair;
 
@@ -25,252 +52,380 @@ import org.json.simple.parser.ParseException;
 
 public class StorageManager {
 
-    private HashMap<String, Integer> file_to_fileid;
+    // tables are loaded on several threads at once, see loadFiles
+    private ConcurrentHashMap<String, Integer> file_to_fileid;
     private DB db;
+    // record decoders, compiled from the schema block the first time a table is read
+    private ConcurrentHashMap<String, RecordCodec> codecs;
 
     enum ColumnType {
         VARCHAR, INTEGER, BOOLEAN, FLOAT, DOUBLE
     };
 
+    // system property naming a directory to keep tables and indexes in across runs - unset keeps everything in memory
+    public static final String STORAGE_DIR_PROPERTY = "db362.storage.dir";
+
+    // number of pages the buffer pool keeps in memory when tables and indexes are persisted
+    public static final String BUFFER_FRAMES_PROPERTY = "db362.buffer.frames";
+    public static final int DEFAULT_BUFFER_FRAMES = 1024;
+
+    // comma separated tables that are only ever read - with a storage directory they are served from a memory map
+    public static final String MAPPED_TABLES_PROPERTY = "db362.mapped.tables";
+
+    // system property - without a storage directory, keep the blocks outside the heap, with only the buffer pool's frames on it
+    public static final String OFF_HEAP_PROPERTY = "db362.offheap";
+
+    // block size in bytes of the tables loaded from now on, an index takes the block size of its table
+    public static final String BLOCK_SIZE_PROPERTY = "db362.block.size";
+
+    // false loads every table when the connection opens, rather than each one the first time it is used
+    public static final String LAZY_LOAD_PROPERTY = "db362.lazy.load";
+
+    // number of tables loadFiles loads at the same time, the number of cores by default
+    public static final String LOAD_THREADS_PROPERTY = "db362.load.threads";
+
+    // with a storage directory, changes to tables and indexes are made durable through a write-ahead log
+    // instead of writing their pages right away - set to false to flush every file when it is loaded instead
+    public static final String WAL_PROPERTY = "db362.wal";
+    // once the log is this long the pages are written back and the log starts over
+    private static final long CHECKPOINT_BYTES = 64L << 20;
+
+    // null when nothing is persisted
+    private Path storage_dir;
+    // loads hold the read lock while they append records, a checkpoint the write lock - it would otherwise write back
+    // pages they are filling, and drop log records of pages that aren't written back yet
+    private final ReentrantReadWriteLock checkpoint_lock = new ReentrantReadWriteLock();
+    // tables registered but not loaded yet (name -> column types), loaded the first time they are used
+    private final ConcurrentHashMap<String, List<RelDataType>> unloaded_tables = new ConcurrentHashMap<>();
+    // name -> kind and key type of every persisted file, written out as the catalog
+    private LinkedHashMap<String, String> catalog;
+    private Set<String> mapped_tables;
+    // block size -> where blocks of that size go when off heap, null when blocks aren't off heap
+    private ConcurrentHashMap<Integer, OffHeapArena> arenas;
+    // index file name -> statistics of the index, taken the first time the optimizer asks - an index does not
+    // change once built
+    private final ConcurrentHashMap<String, IndexStatistics<?>> index_statistics = new ConcurrentHashMap<>();
+
     public StorageManager() {
-        file_to_fileid = new HashMap<>();
+        file_to_fileid = new ConcurrentHashMap<>();
         db = new DB();
+        codecs = new ConcurrentHashMap<>();
+        catalog = new LinkedHashMap<>();
+        mapped_tables = new HashSet<>();
+        if (Boolean.getBoolean(OFF_HEAP_PROPERTY)) {
+            arenas = new ConcurrentHashMap<>();
+            db = new DB(new BufferPool(Integer.getInteger(BUFFER_FRAMES_PROPERTY, DEFAULT_BUFFER_FRAMES)));
+        }
     }
 
-    // loads CSV files into DB362
-    public void loadFile(String csvFile, List<RelDataType> typeList) {
+    // keeps every table and index as a page file in storage_dir, and reopens what an earlier run left there
+    // only the pages the buffer pool holds stay in memory (see BUFFER_FRAMES_PROPERTY)
+    public StorageManager(String storage_dir) {
+        this();
+        arenas = null;
+        db = new DB(new BufferPool(Integer.getInteger(BUFFER_FRAMES_PROPERTY, DEFAULT_BUFFER_FRAMES)));
+        this.storage_dir = Paths.get(storage_dir);
+        for (String table : System.getProperty(MAPPED_TABLES_PROPERTY, "").split(",")) {
+            if (!table.trim().isEmpty()) {
+                mapped_tables.add(table.trim());
+            }
+        }
+        try {
+            Files.createDirectories(this.storage_dir);
+            if (Boolean.parseBoolean(System.getProperty(WAL_PROPERTY, "true"))) {
+                open_log();
+            }
+            if (Files.exists(this.storage_dir.resolve("catalog"))) {
+                open_catalog();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open storage directory " + storage_dir, e);
+        }
+    }
 
-        System.out.println("Loading file: " + csvFile);
+    // replays what the log has over the page files (a crash leaves pages older than the log), then starts a new log
+    private void open_log() {
+        Path path = storage_dir.resolve("wal");
+        HashMap<Integer, PageFile> page_files = new HashMap<>();
+        WriteAheadLog.recover(path, new WriteAheadLog.Redo() {
+            @Override
+            public void write(int file_id, int page_id, int block_size, int offset, byte[] data) {
+                PageFile pages = page_files.computeIfAbsent(file_id, id -> new PageFile(page_file_path(id), block_size));
+                byte[] page = page_id < pages.num_pages() ? pages.read_page(page_id) : new byte[block_size];
+                System.arraycopy(data, 0, page, offset, data.length);
+                pages.write_page(page_id, page);
+            }
 
-        String table_name = csvFile;
+            @Override
+            public void truncate(int file_id, int num_pages, int block_size) {
+                page_files.computeIfAbsent(file_id, id -> new PageFile(page_file_path(id), block_size)).truncate(num_pages);
+            }
+        });
+        for (PageFile pages : page_files.values()) {
+            pages.force();
+            pages.close();
+        }
+        db.get_buffer_pool().set_log(new WriteAheadLog(path));
+    }
 
-        if(csvFile.endsWith(".csv")) {
-            table_name = table_name.substring(0, table_name.length() - 4);
+    // catalog - one line per file, in file id order: file id | name | TABLE or INDEX | key type of an index | block size
+    private void open_catalog() throws IOException {
+        int next_id = 0;
+        for (String line : Files.readAllLines(storage_dir.resolve("catalog"), StandardCharsets.UTF_8)) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] parts = line.split("\t");
+            if (parts.length < 5) {
+                throw new RuntimeException("Storage directory " + storage_dir + " was written in an older format - remove it to reload the tables");
+            }
+            int file_id = Integer.parseInt(parts[0]);
+            int block_size = Integer.parseInt(parts[4]);
+            // tables are loaded in parallel, one that never finished leaves a gap in the ids
+            for (; next_id < file_id; next_id++) {
+                db.addFile(new File());
+            }
+            next_id++;
+            // the page file stays open - its pages are read in as they are used
+            PageFile pages = new PageFile(page_file_path(file_id), block_size);
+            int counter;
+            if (parts[2].equals("TABLE") && mapped_tables.contains(parts[1])) {
+                pages.close();
+                counter = db.addFile(MappedFile.open(page_file_path(file_id), block_size));
+            } else if (parts[2].equals("TABLE")) {
+                counter = db.addFile(File.open(db.get_buffer_pool(), pages));
+            } else {
+                counter = db.addFile(BPlusTreeIndexFile.open(db.get_buffer_pool(), pages, key_class(parts[3])));
+            }
+            if (counter != file_id) {
+                throw new RuntimeException("Catalog is out of order at " + parts[1]);
+            }
+            file_to_fileid.put(parts[1], counter);
+            catalog.put(parts[1], parts[2] + "\t" + parts[3] + "\t" + parts[4]);
         }
+    }
 
-        // check if file already exists
-        assert(file_to_fileid.get(table_name) == null);
+    private static Class<?> key_class(String name) {
+        switch (name) {
+            case "Integer": return Integer.class;
+            case "Float": return Float.class;
+            case "Double": return Double.class;
+            case "String": return String.class;
+            case "Boolean": return Boolean.class;
+            // a CompositeKey
+            case "byte[]": return byte[].class;
+            default: throw new IllegalArgumentException("Unsupported key type: " + name);
+        }
+    }
 
-        File f = new File();
-        try{
-            csvFile = getFsPath() + "/" + csvFile;
-            BufferedReader br = new BufferedReader(new FileReader(csvFile));
-            String line = "";
-            int lineNum = 0;
+    private Path page_file_path(int file_id) {
+        return storage_dir.resolve(file_id + ".pages");
+    }
 
-            while ((line = br.readLine()) != null) {
+    // where a file's pages go - on disk with a storage directory, else off heap if asked for, else nowhere (null)
+    private PageStore new_page_store(int file_id, int block_size) {
+        if (storage_dir != null) {
+            return new PageFile(page_file_path(file_id), block_size);
+        }
+        if (arenas == null) {
+            return null;
+        }
+        return new OffHeapPageStore(arenas.computeIfAbsent(block_size, OffHeapArena::new));
+    }
 
-                // csv header line
-                if(lineNum == 0){
+    // pages the file out (see new_page_store) and, with a storage directory, records it in the catalog
+    private void persist(String name, String kind, String key_type) {
+        int file_id = file_to_fileid.get(name);
+        int block_size = db.get_block_size(file_id);
+        PageStore pages = db.is_paged(file_id) ? null : new_page_store(file_id, block_size);
+        if (pages != null) {
+            db.page_out(file_id, pages);
+        }
+        if (storage_dir == null) {
+            return;
+        }
+        // once written, a read only table is served from the map instead of the buffer pool
+        if (kind.equals("TABLE") && mapped_tables.contains(name)) {
+            db.flush_file(file_id);
+            db.replace_file(file_id, MappedFile.open(page_file_path(file_id), block_size));
+        } else {
+            db.commit_file(file_id);
+            checkpoint_if_needed();
+        }
+        // loads finishing on other threads write the catalog too
+        synchronized (catalog) {
+            catalog.put(name, kind + "\t" + key_type + "\t" + block_size);
 
-                    String[] columnNames = CsvRowConverter.parseLine(line);
-                    List<String> columnNamesList = new ArrayList<>();
+            List<String> lines = new ArrayList<>();
+            for (Map.Entry<String, String> entry : catalog.entrySet()) {
+                lines.add(file_to_fileid.get(entry.getKey()) + "\t" + entry.getKey() + "\t" + entry.getValue());
+            }
+            lines.sort(Comparator.comparingInt(line -> Integer.parseInt(line.substring(0, line.indexOf('\t')))));
+            // write the new catalog next to the old one and swap, so a crash leaves one or the other
+            try {
+                Path tmp = storage_dir.resolve("catalog.tmp");
+                Files.write(tmp, lines, StandardCharsets.UTF_8);
+                Files.move(tmp, storage_dir.resolve("catalog"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write the catalog", e);
+            }
+        }
+    }
 
-                    for(String columnName : columnNames) {
-                        // if columnName contains ":", then take part before ":"
-                        String c = columnName;
-                        if(c.contains(":")) {
-                            c = c.split(":")[0];
-                        }
-                        columnNamesList.add(c);
-                    }
+    private void checkpoint_if_needed() {
+        WriteAheadLog log = db.get_buffer_pool().get_log();
+        if (log == null || log.size() <= CHECKPOINT_BYTES) {
+            return;
+        }
+        // with loads in flight this waits for the next time rather than holding up the loads that follow
+        if (checkpoint_lock.writeLock().tryLock()) {
+            try {
+                db.checkpoint();
+            } finally {
+                checkpoint_lock.writeLock().unlock();
+            }
+        }
+    }
 
-                    Block schemaBlock = createSchemaBlock(columnNamesList, typeList);
-                    f.add_block(schemaBlock);
-                    lineNum++;
-                    continue;
-                }
+    // hit / miss counters of the pages, null when blocks simply stay on the heap
+    public BufferPool get_buffer_pool() {
+        return db.get_buffer_pool();
+    }
 
-                String[] parsedLine = CsvRowConverter.parseLine(line);
-                Object[] row = new Object[parsedLine.length];
+    // writes back whatever the buffer pool still holds and closes the page files
+    public void close() {
+        db.close();
+    }
 
-                for(int i = 0; i < parsedLine.length; i++) {
-                    row[i] = CsvRowConverter.convert(typeList.get(i), parsedLine[i]);
-                }
+    // loads the tables that aren't there yet (name -> column types), several at a time on a bounded pool of threads -
+    // tables are independent, so loading them all takes about as long as loading the largest one
+    public void loadFiles(Map<String, List<RelDataType>> tables) {
+        int threads = Math.max(1, Integer.getInteger(LOAD_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, tables.size())));
+        List<Future<?>> loads = new ArrayList<>();
+        try {
+            // through the registry, so a table someone asks for meanwhile isn't loaded twice
+            register_tables(tables);
+            for (String table : tables.keySet()) {
+                loads.add(executor.submit(() -> load_if_registered(table)));
+            }
+            for (Future<?> load : loads) {
+                load.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while loading tables", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not load a table", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        if (storage_dir != null) {
+            checkpoint_if_needed();
+        }
+    }
 
-                // convert row to byte array
-                byte[] record = convertToByteArray(row, typeList);
+    // registers the tables that aren't there yet (name -> column types) without reading them -
+    // each one is loaded the first time something asks for it
+    public void register_tables(Map<String, List<RelDataType>> tables) {
+        for (Map.Entry<String, List<RelDataType>> table : tables.entrySet()) {
+            if (!file_to_fileid.containsKey(table.getKey())) {
+                unloaded_tables.putIfAbsent(table.getKey(), table.getValue());
+            }
+        }
+    }
 
-                boolean added = f.add_record_to_last_block(record);
-                if(!added) {
-                    f.add_record_to_new_block(record);
-                }
-                lineNum++;
+    // loads table_name if it was registered and not loaded yet - threads asking for it at the same time wait for one load
+    private void load_if_registered(String table_name) {
+        if (unloaded_tables.isEmpty()) {
+            return;
+        }
+        List<RelDataType> types = unloaded_tables.get(table_name);
+        if (types == null) {
+            return;
+        }
+        synchronized (types) {
+            if (unloaded_tables.containsKey(table_name)) {
+                loadFile(table_name + ".csv", types);
+                unloaded_tables.remove(table_name);
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (ParseException e) {
-            e.printStackTrace();
         }
+    }
 
-        System.out.println("Done writing file\n");
-        int counter = db.addFile(f);
-        file_to_fileid.put(table_name, counter);
-        return;
+    // loads CSV files into DB362
+    public void loadFile(String csvFile, List<RelDataType> typeList) {
+        loadFile(csvFile, typeList, Integer.getInteger(BLOCK_SIZE_PROPERTY, PageFile.PAGE_SIZE));
     }
 
-    // converts a row to byte array to write to relational file
-    private byte[] convertToByteArray(Object[] row, List<RelDataType> typeList) {
+    // block_size is the size of every block of the table and of the indexes built on it - 4KB to 64KB
+    public void loadFile(String csvFile, List<RelDataType> typeList, int block_size) {
 
-        List<Byte> fixed_length_Bytes = new ArrayList<>();
-        List<Byte> variable_length_Bytes = new ArrayList<>();
-        List<Integer> variable_length = new ArrayList<>();
-        List<Boolean> fixed_length_nullBitmap = new ArrayList<>();
-        List<Boolean> variable_length_nullBitmap = new ArrayList<>();
+        System.out.println("Loading file: " + csvFile);
 
-        for(int i = 0; i < row.length; i++) {
+        String table_name = csvFile;
 
-            if(typeList.get(i).getSqlTypeName().getName().equals("INTEGER")) {
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    int val = (int) row[i];
-                    byte[] intBytes = new byte[4];
-                    intBytes[0] = (byte) (val & 0xFF);
-                    intBytes[1] = (byte) ((val >> 8) & 0xFF);
-                    intBytes[2] = (byte) ((val >> 16) & 0xFF);
-                    intBytes[3] = (byte) ((val >> 24) & 0xFF);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add(intBytes[j]);
-                    }
-                }
-            } else if(typeList.get(i).getSqlTypeName().getName().equals("VARCHAR")) {
-                if(row[i] == null){
-                    variable_length_nullBitmap.add(true);
-                    for(int j = 0; j < 1; j++) {
-                        variable_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    variable_length_nullBitmap.add(false);
-                    String val = (String) row[i];
-                    byte[] strBytes = val.getBytes();
-                    for(int j = 0; j < strBytes.length; j++) {
-                        variable_length_Bytes.add(strBytes[j]);
+        if(csvFile.endsWith(".csv")) {
+            table_name = table_name.substring(0, table_name.length() - 4);
+        }
+
+        // check if file already exists
+        assert(file_to_fileid.get(table_name) == null);
+
+        File f = new File(block_size);
+        int counter = db.addFile(f);
+        // one per load, so tables loading in parallel don't share it
+        RecordEncoder encoder = new RecordEncoder(typeList);
+        try (CsvTokenizer csv = new CsvTokenizer(Paths.get(getFsPath(), csvFile))) {
+
+            // csv header line
+            if (csv.next_row()) {
+
+                List<String> columnNamesList = new ArrayList<>();
+                for(int i = 0; i < csv.num_fields(); i++) {
+                    // if columnName contains ":", then take part before ":"
+                    String c = csv.get_string(i);
+                    if(c.contains(":")) {
+                        c = c.split(":")[0];
                     }
-                    variable_length.add(strBytes.length);
+                    columnNamesList.add(c);
                 }
-            } else if (typeList.get(i).getSqlTypeName().getName().equals("BOOLEAN")) {
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    fixed_length_Bytes.add((byte) 0);
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    boolean val = (boolean) row[i];
-                    fixed_length_Bytes.add((byte) (val ? 1 : 0));
-                }
-            } else if (typeList.get(i).getSqlTypeName().getName().equals("FLOAT")) {
 
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    float val = (float) row[i];
-                    byte[] floatBytes = new byte[4];
-                    int intBits = Float.floatToIntBits(val);
-                    floatBytes[0] = (byte) (intBits & 0xFF);
-                    floatBytes[1] = (byte) ((intBits >> 8) & 0xFF);
-                    floatBytes[2] = (byte) ((intBits >> 16) & 0xFF);
-                    floatBytes[3] = (byte) ((intBits >> 24) & 0xFF);
-                    for(int j = 0; j < 4; j++) {
-                        fixed_length_Bytes.add(floatBytes[j]);
-                    }
+                Block schemaBlock = createSchemaBlock(columnNamesList, typeList, block_size);
+                f.add_block(schemaBlock);
+                // records go straight to pages (on disk or off heap), the table is never on the heap as a whole
+                PageStore pages = new_page_store(counter, block_size);
+                if (pages != null) {
+                    db.page_out(counter, pages);
                 }
-            } else if (typeList.get(i).getSqlTypeName().getName().equals("DOUBLE")) {
 
-                if(row[i] == null){
-                    fixed_length_nullBitmap.add(true);
-                    for(int j = 0; j < 8; j++) {
-                        fixed_length_Bytes.add((byte) 0);
-                    }
-                } else {
-                    fixed_length_nullBitmap.add(false);
-                    double val = (double) row[i];
-                    byte[] doubleBytes = new byte[8];
-                    long longBits = Double.doubleToLongBits(val);
-                    doubleBytes[0] = (byte) (longBits & 0xFF);
-                    doubleBytes[1] = (byte) ((longBits >> 8) & 0xFF);
-                    doubleBytes[2] = (byte) ((longBits >> 16) & 0xFF);
-                    doubleBytes[3] = (byte) ((longBits >> 24) & 0xFF);
-                    doubleBytes[4] = (byte) ((longBits >> 32) & 0xFF);
-                    doubleBytes[5] = (byte) ((longBits >> 40) & 0xFF);
-                    doubleBytes[6] = (byte) ((longBits >> 48) & 0xFF);
-                    doubleBytes[7] = (byte) ((longBits >> 56) & 0xFF);
-                    for(int j = 0; j < 8; j++) {
-                        fixed_length_Bytes.add(doubleBytes[j]);
+                // rows are parsed on another thread while this one appends them
+                checkpoint_lock.readLock().lock();
+                try (CsvRowStream rows = new CsvRowStream(csv, typeList, table_name)) {
+                    Object[][] batch;
+                    while ((batch = rows.next_batch()) != null) {
+                        for (Object[] row : batch) {
+                            // encode the row straight into the block it goes to
+                            int length = encoder.prepare(row);
+                            boolean added = f.add_record_to_last_block(length, encoder);
+                            if(!added) {
+                                f.add_record_to_new_block(length, encoder);
+                            }
+                        }
                     }
+                } finally {
+                    checkpoint_lock.readLock().unlock();
                 }
-            } else {
-                System.out.println("Unsupported type");
-                throw new RuntimeException("Unsupported type");
-            }
-        }
-
-        short num_bytes_for_bitmap = (short) ((fixed_length_nullBitmap.size() + variable_length_nullBitmap.size() + 7) / 8); // should be in multiples of bytes
-
-        //                       bytes for fixed length and variable length fields          offset & length of var fields
-        byte[] result = new byte[fixed_length_Bytes.size() + variable_length_Bytes.size() + 4 * variable_length.size() + num_bytes_for_bitmap];
-        int variable_length_offset = 4 * variable_length.size() + fixed_length_Bytes.size() + num_bytes_for_bitmap;
-
-        int idx = 0;
-        for(; idx < variable_length.size() ; idx ++){
-            // first 2 bytes should be offset
-            result[idx * 4] = (byte) (variable_length_offset & 0xFF);
-            result[idx * 4 + 1] = (byte) ((variable_length_offset >> 8) & 0xFF);
-
-            // next 2 bytes should be length
-            result[idx * 4 + 2] = (byte) (variable_length.get(idx) & 0xFF);
-            result[idx * 4 + 3] = (byte) ((variable_length.get(idx) >> 8) & 0xFF);
-
-            variable_length_offset += variable_length.get(idx);
-        }
-
-        idx = idx * 4;
-
-        // write fixed length fields
-        for(int i = 0; i < fixed_length_Bytes.size(); i++, idx++) {
-            result[idx] = fixed_length_Bytes.get(i);
-        }
-
-        // write null bitmap
-        int bitmap_idx = 0;
-        for(int i = 0; i < fixed_length_nullBitmap.size(); i++) {
-            if(fixed_length_nullBitmap.get(i)) {
-                result[idx] |= (1 << (7 - bitmap_idx));
-            }
-            bitmap_idx++;
-            if(bitmap_idx == 8) {
-                bitmap_idx = 0;
-                idx++;
-            }
-        }
-        for(int i = 0; i < variable_length_nullBitmap.size(); i++) {
-            if(variable_length_nullBitmap.get(i)) {
-                result[idx] |= (1 << (7 - bitmap_idx));
             }
-            bitmap_idx++;
-            if(bitmap_idx == 8) {
-                bitmap_idx = 0;
-                idx++;
-            }
-        }
-
-        if(bitmap_idx != 0) {
-            idx++;
-        }
-
-        // write variable length fields
-        for(int i = 0; i < variable_length_Bytes.size(); i++, idx++) {
-            result[idx] = variable_length_Bytes.get(i);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (ParseException e) {
+            e.printStackTrace();
         }
 
-        return result;
+        System.out.println("Done writing file\n");
+        file_to_fileid.put(table_name, counter);
+        persist(table_name, "TABLE", "-");
+        return;
     }
 
     // helper function for loadFile
@@ -294,9 +449,9 @@ public class StorageManager {
     }
 
     // write schema block for a relational file
-    private Block createSchemaBlock(List<String> columnNames, List<RelDataType> typeList) {
+    private Block createSchemaBlock(List<String> columnNames, List<RelDataType> typeList, int block_size) {
 
-        Block schema = new Block();
+        Block schema = new Block(block_size);
 
         // write number of columns
         byte[] num_columns = new byte[2];
@@ -368,80 +523,74 @@ public class StorageManager {
 
     // should only read one block at a time
     public byte[] get_data_block(String table_name, int block_id){
+        load_if_registered(table_name);
         int file_id = file_to_fileid.get(table_name);
         return db.get_data(file_id, block_id);
     }
 
 
 
+    // a table that is registered but not loaded yet is loaded here
     public boolean check_file_exists(String table_name) {
+        load_if_registered(table_name);
         return file_to_fileid.get(table_name) != null;
     }
 
     public boolean check_index_exists(String table_name, String column_name) {
-        String index_file_name = table_name + "_" + column_name + "_index";
-        return file_to_fileid.get(index_file_name) != null;
+        return check_index_exists(table_name, Collections.singletonList(column_name));
     }
 
     public int return_file_id(String table_name){
+        load_if_registered(table_name);
         return  file_to_fileid.get(table_name);
     }
-    // number of records, offset  - LE    //
-    public Object[] get_col(byte[] record_s, String table_name, int block_id, int rec_offs){
-        int file_id = file_to_fileid.get(table_name);
-        byte[] schema = db.get_data(file_id,0);
-        int num_var_cols = 0;
-        int num_col = (schema[1]<<8) | (schema[0] & 0xFF);
 
-        for(int i = 0; i < num_col;i++){
-            byte[] col_off = db.get_data(file_id,0,2+2*i,2);
-            int off = (col_off[1]<<8) | (col_off[0] & 0xFF);
-            byte[] col = db.get_data(file_id,0,off,2);
-            if (ColumnType.values()[col[0]] == ColumnType.VARCHAR){
-                num_var_cols++;
-            }
-        }
-        int off_fixed = 4*num_var_cols;
+    // table statistics - kept up to date by the File as records are added, so these are O(1)
+    public int get_num_records(String table_name){
+        load_if_registered(table_name);
+        return db.get_num_records(file_to_fileid.get(table_name));
+    }
 
-        int num_fixed_cols = num_col - num_var_cols;
-        Object[] req = new Object[num_col];
-        for(int i = 0;i  < num_fixed_cols;i++){
-            byte[] offset = db.get_data(file_id,0,2+2*i,2);
-            int off = offset[1]<<8 | (offset[0] & 0xFF);
-            byte[] colinfo = db.get_data(file_id,0,off,1);
-            int datatypeByte = colinfo[0];
-            if (ColumnType.values()[datatypeByte] == ColumnType.INTEGER){
-                byte[] fx_col = Arrays.copyOfRange(record_s, off_fixed, off_fixed + 4);
-                int temp = (fx_col[3]<<24) | (fx_col[2]<<16) | (fx_col[1]<<8) | (fx_col[0] & 0xFF);
-                req[i] = temp;
-                off_fixed += 4;
-            }
-            if (ColumnType.values()[datatypeByte] == ColumnType.FLOAT){
-                byte[] fx_col = Arrays.copyOfRange(record_s, off_fixed, off_fixed + 4);
-                req[i] = ByteBuffer.wrap(fx_col).getFloat();
-                off_fixed += 4;
-            }
-            if (ColumnType.values()[datatypeByte] == ColumnType.DOUBLE){
-                byte[] fx_col = Arrays.copyOfRange(record_s, off_fixed, off_fixed + 8);
-                req[i] = ByteBuffer.wrap(fx_col).getDouble();
-                off_fixed += 8;
-            }
-        }
-        int offset=rec_offs;
-        for(int i = 0; i < num_var_cols;i++){
-            byte[] offs = db.get_data(file_id,block_id,offset,2);
-            int offs_int = (offs[1]<<8) | (offs[0] & 0xFF);
+    public int get_num_data_blocks(String table_name){
+        load_if_registered(table_name);
+        return db.get_num_data_blocks(file_to_fileid.get(table_name));
+    }
 
-            offset+=2;
-            byte[] len = db.get_data(file_id,block_id,offset,2);
-            offset+=2;
+    public long get_bytes_used(String table_name){
+        load_if_registered(table_name);
+        return db.get_bytes_used(file_to_fileid.get(table_name));
+    }
 
-            int len_int = (len[1]<<8) | (len[0] & 0xFF);
+    public double get_avg_record_size(String table_name){
+        load_if_registered(table_name);
+        return db.get_avg_record_size(file_to_fileid.get(table_name));
+    }
 
-            byte[] col = Arrays.copyOfRange(record_s, offs_int, offs_int + len_int);
-            req[i+num_fixed_cols] = new String(col);
+    // returns (position of the column in a decoded record, ColumnType ordinal), or (-1, -1) if absent
+    private Pair<Integer, Integer> get_column_info(String table_name, String column_name){
+        RecordCodec codec = get_codec(table_name);
+        int i = codec.get_column_index(column_name);
+        if (i < 0) {
+            return new Pair<>(-1, -1);
         }
-        return req;
+        return new Pair<>(i, codec.get_column_type(i).ordinal());
+    }
+
+    // the decoder for the records of table_name, built from its schema block once and then cached
+    public RecordCodec get_codec(String table_name){
+        // not inside computeIfAbsent - a load takes a while
+        load_if_registered(table_name);
+        return codecs.computeIfAbsent(table_name, t -> new RecordCodec(get_data_block(t, 0)));
+    }
+
+    // records returned by get_records_from_block keep the schema block order (fixed length columns first),
+    // which is not the order of the CSV header - use this to find a column by name
+    public int get_column_index(String table_name, String column_name){
+        return get_column_info(table_name, column_name).getKey();
+    }
+    // decodes a record copied out of its block, record_s[0] being the first byte of the record
+    public Object[] get_col(byte[] record_s, String table_name, int block_id, int rec_offs){
+        return get_codec(table_name).decode(record_s, 0);
     }
     public static String array_to_string(byte[] byteArray) {
         ByteBuffer buffer = ByteBuffer.wrap(byteArray);
@@ -455,22 +604,83 @@ public class StorageManager {
         if (!check_file_exists(table_name)) {
             return null;
         }
-        List<Object[]> records = new ArrayList<>();
-        byte[] num_rec = db.get_data(file_to_fileid.get(table_name), block_id,0,2);
-        int num_recs = (num_rec[0]<<8)|(num_rec[1] & 0xFF);
-        int end = 4096;
+        RecordCodec codec = get_codec(table_name);
+        // decode straight out of the block, no per record copies
+        byte[] block = db.get_data(file_to_fileid.get(table_name), block_id);
+        // how many blocks a table takes depends on its block size
+        if (block == null) {
+            return null;
+        }
+        int num_recs = ((block[0] & 0xFF) << 8) | (block[1] & 0xFF);
+        List<Object[]> records = new ArrayList<>(num_recs);
         for(int i = 0; i < num_recs;i++){
-            byte[] b = db.get_data(file_to_fileid.get(table_name),block_id,2+2*i,2);
-            int offset = (b[0] << 8)  | (b[1] & 0xFF);
-            byte[] rec = db.get_data(file_to_fileid.get(table_name),block_id,offset,end-offset);
-            records.add(get_col(rec, table_name, block_id,offset));
-            end = offset;
+            int offset = ((block[2+2*i] & 0xFF) << 8) | (block[3+2*i] & 0xFF);
+            records.add(codec.decode(block, offset));
         }
         return records;
     }
 
-    public boolean create_index(String table_name, String column_name, int order) {
+    // calls visitor for every record of the table, in heap order, with one RowView moved from row to row
+    // nothing is decoded unless the visitor asks for it
+    public void scan(String table_name, Consumer<RowView> visitor){
+        if (!check_file_exists(table_name)) {
+            return;
+        }
+        int file_id = file_to_fileid.get(table_name);
+        RowView view = new RowView(get_codec(table_name));
+        int num_blocks = db.get_num_data_blocks(file_id);
+        for(int block_id = 1; block_id <= num_blocks; block_id++){
+            byte[] block = db.get_data(file_id, block_id);
+            int num_recs = ((block[0] & 0xFF) << 8) | (block[1] & 0xFF);
+            for(int i = 0; i < num_recs; i++){
+                view.position(block, block_id, i);
+                visitor.accept(view);
+            }
+        }
+    }
+
+    // calls visitor for each of the records in record_ids (from search_range_ids), in file order, with one
+    // RowView moved from record to record - like scan, the visitor decodes only what it reads
+    public void fetch(String table_name, RecordIdSet record_ids, Consumer<RowView> visitor){
+        if (!check_file_exists(table_name)) {
+            return;
+        }
         int file_id = file_to_fileid.get(table_name);
+        RowView view = new RowView(get_codec(table_name));
+        // blocks come in file order, so a block is looked up once for all its records
+        for (int block_id : record_ids.block_ids()) {
+            byte[] block = db.get_data(file_id, block_id);
+            BitSet slots = record_ids.slots(block_id);
+            for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+                view.position(block, block_id, slot);
+                visitor.accept(view);
+            }
+        }
+    }
+
+    // decodes the single record stored at slot_id of block_id
+    public Object[] get_record(String table_name, int block_id, int slot_id){
+        if (!check_file_exists(table_name)) {
+            return null;
+        }
+        byte[] block = db.get_data(file_to_fileid.get(table_name), block_id);
+        int offset = ((block[2+2*slot_id] & 0xFF) << 8) | (block[3+2*slot_id] & 0xFF);
+        return get_codec(table_name).decode(block, offset);
+    }
+
+    // workers for create_index - the common pool, sized to the number of cores
+    private static final ForkJoinPool index_build_pool = ForkJoinPool.commonPool();
+
+    // fraction of each index node filled by create_index - the index is built once over a loaded table
+    public static final double DEFAULT_FILL_FACTOR = 1.0;
+
+    public boolean create_index(String table_name, String column_name, int order) {
+        return create_index(table_name, column_name, order, DEFAULT_FILL_FACTOR);
+    }
+
+    // builds the index with a sort + bulk load instead of inserting one row at a time
+    public boolean create_index(String table_name, String column_name, int order, double fill_factor) {
+        load_if_registered(table_name);
         if (check_index_exists(table_name,column_name)){
             System.out.println("Index already exists for column: " + column_name);
             return false;
@@ -478,117 +688,32 @@ public class StorageManager {
         if (file_to_fileid.get(table_name) != null){
             String index_file_name = table_name + "_" + column_name + "_index";
 
-            byte[] schema = get_data_block(table_name,0);
-            int num_col = (schema[1]<<8) | (schema[0] & 0xFF);
-            int index_1 = 0;
-            Pair<Integer, Integer> result = new Pair<>(-1, -1);
-            for(int i = 0; i < num_col;i++){
-                byte[] col_off = db.get_data(file_id,0,2+2*i,2);
-                int off = (col_off[1]<<8) | (col_off[0] & 0xFF);
-                byte[] col_dtype = db.get_data(file_id,0,off,2);
-                int len_col_name = col_dtype[1];
-                byte[] colname = db.get_data(file_id,0,off+2,len_col_name);
-                String req_col_name = array_to_string(colname);
-                if (req_col_name.compareTo(column_name) == 0){
-                    int columnTypeValue = col_dtype[0];
-                    result = new Pair<>(index_1, columnTypeValue);}
-                index_1++;
-            }
+            Pair<Integer, Integer> result = get_column_info(table_name, column_name);
             Integer idx = result.getKey();
             ColumnType dataType = ColumnType.values()[result.getValue()];
-            int counter,num_records,i;
+            BPlusTreeIndexFile<?> bPlusTree;
             switch (dataType) {
                 case INTEGER:
-                    BPlusTreeIndexFile<Integer> bPlusTree = new BPlusTreeIndexFile<>(order, Integer.class);
-                    num_records = 0;
-                    i = 1;
-                    while (num_records < db.get_num_records(file_id)){
-                        List<Object[]> required = get_records_from_block(table_name, i);
-                        for(int j = 0; j < required.size(); j++){
-                            Object[] row = required.get(j);
-                            Integer key = (Integer) row[idx];
-                            bPlusTree.insert(key, i);
-                        }
-                        i++;
-                        num_records += required.size();
-                    }
-                    counter = db.addFile(bPlusTree);
-                    file_to_fileid.put(index_file_name, counter);
-
+                    bPlusTree = build_index(table_name, idx, order, fill_factor, Integer.class);
                     break;
-
                 case FLOAT:
-                    BPlusTreeIndexFile<Float> bPlusTree2 = new BPlusTreeIndexFile<>(order, Float.class);
-                    counter = db.addFile(bPlusTree2);
-                    file_to_fileid.put(index_file_name, counter);
-                    num_records = 0;
-                    i = 1;
-                    while (num_records < db.get_num_records(file_id)){
-                        List<Object[]> required = get_records_from_block(table_name, i);
-                        for(int j = 0; j < required.size(); j++){
-                            Object[] row = required.get(j);
-                            Float key = (Float) row[idx];
-                            bPlusTree2.insert(key, i);
-                        }
-                        i++;
-                        num_records += required.size();
-                    }
+                    bPlusTree = build_index(table_name, idx, order, fill_factor, Float.class);
                     break;
-
                 case DOUBLE:
-                    BPlusTreeIndexFile<Double> bPlusTree3 = new BPlusTreeIndexFile<>(order, Double.class);
-                    counter = db.addFile(bPlusTree3);
-                    file_to_fileid.put(index_file_name, counter);
-                    num_records = 0;
-                    i = 1;
-                    while (num_records < db.get_num_records(file_id)){
-                        List<Object[]> required = get_records_from_block(table_name, i);
-                        for(int j = 0; j < required.size(); j++){
-                            Object[] row = required.get(j);
-                            Double key = (Double) row[idx];
-                            bPlusTree3.insert(key, i);
-                        }
-                        i++;
-                        num_records += required.size();
-                    }
+                    bPlusTree = build_index(table_name, idx, order, fill_factor, Double.class);
                     break;
                 case VARCHAR:
-                    BPlusTreeIndexFile<String> bPlusTree1 = new BPlusTreeIndexFile<>(order, String.class);
-                    counter = db.addFile(bPlusTree1);
-                    file_to_fileid.put(index_file_name, counter);
-                    num_records = 0;
-                    i = 1;
-                    while (num_records < db.get_num_records(file_id)){
-                        List<Object[]> required = get_records_from_block(table_name, i);
-                        for(int j = 0; j < required.size(); j++){
-                            Object[] row = required.get(j);
-                            String key = (String) row[idx];
-                            bPlusTree1.insert(key, i);
-                        }
-                        i++;
-                        num_records += required.size();
-                    }
+                    bPlusTree = build_index(table_name, idx, order, fill_factor, String.class);
                     break;
                 case BOOLEAN:
-                    BPlusTreeIndexFile<Boolean> bPlusTree4 = new BPlusTreeIndexFile<>(order, Boolean.class);
-                    counter = db.addFile(bPlusTree4);
-                    file_to_fileid.put(index_file_name, counter);
-                    num_records = 0;
-                    i = 1;
-                    while (num_records < db.get_num_records(file_id)){
-                        List<Object[]> required = get_records_from_block(table_name, i);
-                        for(int j = 0; j < required.size(); j++){
-                            Object[] row = required.get(j);
-                            Boolean key = (Boolean) row[idx];
-                            bPlusTree4.insert(key, i);
-                        }
-                        i++;
-                        num_records += required.size();
-                    }
+                    bPlusTree = build_index(table_name, idx, order, fill_factor, Boolean.class);
                     break;
                 default:
                     throw new IllegalArgumentException("Unsupported column type: " + dataType);
             }
+            int counter = db.addFile(bPlusTree);
+            file_to_fileid.put(index_file_name, counter);
+            persist(index_file_name, "INDEX", bPlusTree.get_key_class().getSimpleName());
 
             return true;
         }
@@ -598,6 +723,278 @@ public class StorageManager {
         }
     }
 
+    // index on a single column, keyed by the values of the column
+    private <T> BPlusTreeIndexFile<T> build_index(String table_name, int idx, int order, double fill_factor, Class<T> typeClass) {
+        // the natural order of the boxed keys is the order the nodes compare in
+        Comparator<T> key_order = (a, b) -> ((Comparable<T>) a).compareTo(b);
+        return build_index(table_name, record -> typeClass.cast(record[idx]), key_order, order, fill_factor, typeClass);
+    }
+
+    // extracts (key, record id) of every row on the fork join pool - each range of blocks is sorted
+    // on its own and the runs are merged - then bulk loads the tree from the merged entries.
+    // with payload_of, the tree keeps the payload of every record in its leaves
+    private <T> BPlusTreeIndexFile<T> build_index(String table_name, Function<Object[], T> key_of, Comparator<T> key_order,
+                                                  int order, double fill_factor, Class<T> typeClass) {
+        return build_index(table_name, key_of, null, key_order, order, fill_factor, typeClass);
+    }
+
+    private <T> BPlusTreeIndexFile<T> build_index(String table_name, Function<Object[], T> key_of, Function<Object[], byte[]> payload_of,
+                                                  Comparator<T> key_order, int order, double fill_factor, Class<T> typeClass) {
+        int file_id = file_to_fileid.get(table_name);
+        int num_blocks = db.get_num_data_blocks(file_id) + 1;
+
+        Comparator<IndexEntry<T>> entry_order = (a, b) -> key_order.compare(a.getKey(), b.getKey());
+        List<IndexEntry<T>> entries = index_build_pool.invoke(
+                new KeyExtractionTask<>(this, table_name, key_of, payload_of, entry_order, 1, num_blocks));
+
+        BPlusTreeIndexFile<T> bPlusTree = new BPlusTreeIndexFile<>(order, typeClass, db.get_block_size(file_id), payload_of != null);
+        bPlusTree.bulk_load(entries, fill_factor);
+        return bPlusTree;
+    }
+
+    public boolean create_index(String table_name, List<String> column_names, int order) {
+        return create_index(table_name, column_names, order, DEFAULT_FILL_FACTOR);
+    }
+
+    // index over several columns, keyed by the CompositeKey of their values in the given order - the entries
+    // for equal leading columns are next to each other, sorted on the following ones.
+    // a list of one column is the same as create_index on that column
+    public boolean create_index(String table_name, List<String> column_names, int order, double fill_factor) {
+        return create_index(table_name, column_names, Collections.emptyList(), order, fill_factor);
+    }
+
+    public boolean create_index(String table_name, List<String> column_names, List<String> included_columns, int order) {
+        return create_index(table_name, column_names, included_columns, order, DEFAULT_FILL_FACTOR);
+    }
+
+    // covering index - keyed like the composite index on column_names, and the values of included_columns are
+    // kept in the leaf entries (a CompositeKey as payload) so queries reading only these columns never go to the table.
+    // keyed by a CompositeKey even on a single column, unless nothing is included
+    public boolean create_index(String table_name, List<String> column_names, List<String> included_columns, int order, double fill_factor) {
+        if (column_names.size() == 1 && included_columns.isEmpty()) {
+            return create_index(table_name, column_names.get(0), order, fill_factor);
+        }
+        load_if_registered(table_name);
+        if (check_index_exists(table_name, column_names, included_columns)){
+            System.out.println("Index already exists for columns: " + column_names + " including " + included_columns);
+            return false;
+        }
+        if (file_to_fileid.get(table_name) == null){
+            System.out.println("Table not found: " + table_name);
+            return false;
+        }
+        int[] idxs = column_indexes(table_name, column_names);
+        int[] included_idxs = column_indexes(table_name, included_columns);
+        if (idxs == null || included_idxs == null) {
+            return false;
+        }
+        // a null column is part of the key, so every record is in the index
+        BPlusTreeIndexFile<byte[]> bPlusTree;
+        try {
+            bPlusTree = build_index(table_name, record -> CompositeKey.encode(record, idxs),
+                    included_idxs.length == 0 ? null : record -> CompositeKey.encode(record, included_idxs),
+                    CompositeKey::compare, order, fill_factor, byte[].class);
+        } catch (IllegalArgumentException e) {
+            // e.g. included columns too wide for the leaves of the table's block size
+            System.out.println("Could not create index on " + table_name + " " + column_names + ": " + e.getMessage());
+            return false;
+        }
+        String index_file_name = index_file_name(table_name, column_names, included_columns);
+        int counter = db.addFile(bPlusTree);
+        file_to_fileid.put(index_file_name, counter);
+        persist(index_file_name, "INDEX", bPlusTree.get_key_class().getSimpleName());
+        return true;
+    }
+
+    // positions of the columns in a decoded record, null if one of them is not in the table
+    private int[] column_indexes(String table_name, List<String> column_names) {
+        int[] idxs = new int[column_names.size()];
+        for (int i = 0; i < idxs.length; i++) {
+            idxs[i] = get_column_index(table_name, column_names.get(i));
+            if (idxs[i] < 0) {
+                System.out.println("Column not found: " + column_names.get(i));
+                return null;
+            }
+        }
+        return idxs;
+    }
+
+    // table_column_index, table_column1,column2_index for an index over several columns and
+    // table_column1,column2+included1,included2_index for a covering index
+    private static String index_file_name(String table_name, List<String> column_names, List<String> included_columns) {
+        String included = included_columns.isEmpty() ? "" : "+" + String.join(",", included_columns);
+        return table_name + "_" + String.join(",", column_names) + included + "_index";
+    }
+
+    public boolean check_index_exists(String table_name, List<String> column_names) {
+        return check_index_exists(table_name, column_names, Collections.emptyList());
+    }
+
+    public boolean check_index_exists(String table_name, List<String> column_names, List<String> included_columns) {
+        return file_to_fileid.get(index_file_name(table_name, column_names, included_columns)) != null;
+    }
+
+    public IndexStatistics<?> get_index_statistics(String table_name, String column_name) {
+        return get_index_statistics(table_name, Collections.singletonList(column_name), Collections.emptyList());
+    }
+
+    // statistics of the index for the optimizer's cost model, null if there is no such index
+    public IndexStatistics<?> get_index_statistics(String table_name, List<String> column_names, List<String> included_columns) {
+        if (!check_index_exists(table_name, column_names, included_columns)) {
+            return null;
+        }
+        String index_file_name = index_file_name(table_name, column_names, included_columns);
+        return index_statistics.computeIfAbsent(index_file_name, name -> db.get_index_statistics(file_to_fileid.get(name)));
+    }
+
+    // (key columns, included columns) of every index of table_name keyed by a CompositeKey - the ones over
+    // several columns and the covering ones - read off the index file names
+    public List<Pair<List<String>, List<String>>> get_composite_indexes(String table_name) {
+        List<Pair<List<String>, List<String>>> indexes = new ArrayList<>();
+        String prefix = table_name + "_";
+        for (String name : file_to_fileid.keySet()) {
+            if (!name.startsWith(prefix) || !name.endsWith("_index") || (name.indexOf(',') < 0 && name.indexOf('+') < 0)) {
+                continue;
+            }
+            String[] parts = name.substring(prefix.length(), name.length() - "_index".length()).split("\\+", -1);
+            List<String> columns = Arrays.asList(parts[0].split(","));
+            List<String> included = parts.length > 1 ? Arrays.asList(parts[1].split(",")) : Collections.emptyList();
+            // table_name could be a prefix of another table's name, the columns tell them apart
+            boolean all_present = true;
+            for (String column : columns) {
+                all_present &= get_column_index(table_name, column) >= 0;
+            }
+            for (String column : included) {
+                all_present &= get_column_index(table_name, column) >= 0;
+            }
+            if (all_present && name.equals(index_file_name(table_name, columns, included))) {
+                indexes.add(new Pair<>(columns, included));
+            }
+        }
+        return indexes;
+    }
+
+    // record ids (as in search_range_ids) from the composite index on column_names, of the records whose first
+    // values.size() columns equal values and, unless operator is null, whose next column satisfies
+    // (column operator value). either way the matches are one contiguous range of the leaf level
+    public RecordIdSet search_prefix_ids(String table_name, List<String> column_names, List<String> included_columns,
+                                         List<Object> values, String operator, Object value) {
+        IndexCursor<byte[]> cursor = scan_prefix(table_name, column_names, included_columns, values, operator, value);
+        if (cursor == null) {
+            return null;
+        }
+        RecordIdSet record_ids = new RecordIdSet();
+        while (cursor.next()) {
+            record_ids.add(cursor.getBlockId(), cursor.getSlotId());
+        }
+        return record_ids;
+    }
+
+    // index only scan - same range as search_prefix_ids, but the table is not read: visitor gets the values of the
+    // key and included columns of each entry, at their positions in a decoded record (the other columns are null)
+    public void scan_covering(String table_name, List<String> column_names, List<String> included_columns,
+                              List<Object> values, String operator, Object value, Consumer<Object[]> visitor) {
+        IndexCursor<byte[]> cursor = scan_prefix(table_name, column_names, included_columns, values, operator, value);
+        if (cursor == null) {
+            return;
+        }
+        int[] idxs = column_indexes(table_name, column_names);
+        int[] included_idxs = column_indexes(table_name, included_columns);
+        Class<?>[] types = column_classes(table_name, idxs);
+        Class<?>[] included_types = column_classes(table_name, included_idxs);
+        int num_columns = get_codec(table_name).get_num_columns();
+        while (cursor.next()) {
+            Object[] row = new Object[num_columns];
+            Object[] keys = CompositeKey.decode(cursor.getKey(), types);
+            for (int i = 0; i < idxs.length; i++) {
+                row[idxs[i]] = keys[i];
+            }
+            if (included_idxs.length > 0) {
+                Object[] included = CompositeKey.decode(cursor.getPayload(), included_types);
+                for (int i = 0; i < included_idxs.length; i++) {
+                    row[included_idxs[i]] = included[i];
+                }
+            }
+            visitor.accept(row);
+        }
+    }
+
+    // java types of the values of the columns at idxs
+    private Class<?>[] column_classes(String table_name, int[] idxs) {
+        RecordCodec codec = get_codec(table_name);
+        Class<?>[] types = new Class<?>[idxs.length];
+        for (int i = 0; i < idxs.length; i++) {
+            types[i] = key_class(codec.get_column_type(idxs[i]));
+        }
+        return types;
+    }
+
+    private static Class<?> key_class(ColumnType type) {
+        switch (type) {
+            case INTEGER: return Integer.class;
+            case FLOAT: return Float.class;
+            case DOUBLE: return Double.class;
+            case VARCHAR: return String.class;
+            case BOOLEAN: return Boolean.class;
+            default: throw new IllegalArgumentException("Unsupported column type: " + type);
+        }
+    }
+
+    // cursor over the entries of search_prefix_ids, null if there is no such index
+    private IndexCursor<byte[]> scan_prefix(String table_name, List<String> column_names, List<String> included_columns,
+                                            List<Object> values, String operator, Object value) {
+        if (!check_index_exists(table_name, column_names, included_columns)) {
+            System.out.println("Index does not exist for columns: " + column_names + " including " + included_columns);
+            return null;
+        }
+        int index_file_id = file_to_fileid.get(index_file_name(table_name, column_names, included_columns));
+        List<Object> keys = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            ColumnType dataType = ColumnType.values()[get_column_info(table_name, column_names.get(i)).getValue()];
+            Pair<String, Object> comparison = integral_comparison(dataType, "=", values.get(i));
+            if (comparison == null) {
+                return empty_scan(index_file_id);
+            }
+            keys.add(coerce(comparison.getValue(), dataType));
+        }
+        byte[] prefix = CompositeKey.encode(keys);
+        byte[] lower = prefix, upper = CompositeKey.prefix_end(prefix);
+        if (operator != null) {
+            ColumnType dataType = ColumnType.values()[get_column_info(table_name, column_names.get(values.size())).getValue()];
+            Pair<String, Object> comparison = integral_comparison(dataType, operator, value);
+            if (comparison == null) {
+                return empty_scan(index_file_id);
+            }
+            operator = comparison.getKey();
+            keys.add(coerce(comparison.getValue(), dataType));
+            // a value starts with its tag byte (0 or 1), so prefix_end of bound is never null
+            byte[] bound = CompositeKey.encode(keys);
+            switch (operator) {
+                case "=":  lower = bound; upper = CompositeKey.prefix_end(bound); break;
+                case ">":  lower = CompositeKey.prefix_end(bound); break;
+                case ">=": lower = bound; break;
+                // a null next column sorts first, the range starts at the first non null one
+                case "<":  lower = non_null(prefix); upper = bound; break;
+                case "<=": lower = non_null(prefix); upper = CompositeKey.prefix_end(bound); break;
+                default:
+                    throw new IllegalArgumentException("Unsupported operator: " + operator);
+            }
+        }
+        return db.scan_index(index_file_id, lower.length == 0 ? null : lower, true, upper, false);
+    }
+
+    // cursor over nothing, for a comparison no record can satisfy
+    private IndexCursor<byte[]> empty_scan(int index_file_id) {
+        byte[] key = new byte[0];
+        return db.scan_index(index_file_id, key, false, key, false);
+    }
+
+    // prefix followed by the tag of a non null value
+    private static byte[] non_null(byte[] prefix) {
+        byte[] key = Arrays.copyOf(prefix, prefix.length + 1);
+        key[prefix.length] = 1;
+        return key;
+    }
 
     // returns the block_id of the leaf node where the key is present
     public int search(String table_name, String column_name, RexLiteral value) {
@@ -633,6 +1030,98 @@ public class StorageManager {
 
 
 
+    // returns the record ids (block_id, slot_id) of the records whose column satisfies (column operator value),
+    // a bitmap of slots per block (see RecordIdSet). operator is one of =, >, >=, <, <= ; the answer is read off
+    // the leaf level of the index. sets from different indexes of a table can be intersected (and) or merged (or)
+    // before reading any record
+    public RecordIdSet search_range_ids(String table_name, String column_name, String operator, Object value) {
+        IndexCursor<Object> cursor = scan_range(table_name, column_name, operator, value);
+        if (cursor == null) {
+            return null;
+        }
+        RecordIdSet record_ids = new RecordIdSet();
+        while (cursor.next()) {
+            record_ids.add(cursor.getBlockId(), cursor.getSlotId());
+        }
+        return record_ids;
+    }
+
+    // cursor over the index entries of the records satisfying (column operator value), null if there is no index
+    private IndexCursor<Object> scan_range(String table_name, String column_name, String operator, Object value) {
+        if (!check_index_exists(table_name, column_name)) {
+            System.out.println("Index does not exist for column: " + column_name);
+            return null;
+        }
+        int index_file_id = file_to_fileid.get(table_name + "_" + column_name + "_index");
+        ColumnType dataType = ColumnType.values()[get_column_info(table_name, column_name).getValue()];
+        Pair<String, Object> comparison = integral_comparison(dataType, operator, value);
+        if (comparison == null) {
+            // an empty range - nothing is strictly between key and key
+            Object key = coerce(0, dataType);
+            return db.scan_index(index_file_id, key, false, key, false);
+        }
+        operator = comparison.getKey();
+        Object key = coerce(comparison.getValue(), dataType);
+
+        Object lower = null, upper = null;
+        boolean lowerInclusive = false, upperInclusive = false;
+        switch (operator) {
+            case "=":  lower = key; lowerInclusive = true; upper = key; upperInclusive = true; break;
+            case ">":  lower = key; break;
+            case ">=": lower = key; lowerInclusive = true; break;
+            case "<":  upper = key; break;
+            case "<=": upper = key; upperInclusive = true; break;
+            default:
+                throw new IllegalArgumentException("Unsupported operator: " + operator);
+        }
+        return db.scan_index(index_file_id, lower, lowerInclusive, upper, upperInclusive);
+    }
+
+    // (column operator value) on an INTEGER column as the same comparison with an int, so that the index range is
+    // exact - a fractional bound is rounded inwards, e.g. > 2.5 is >= 3 and <= 2.5 is <= 2, instead of being
+    // truncated. null if no int satisfies it, e.g. = 2.5. other columns and values are left as they are
+    private static Pair<String, Object> integral_comparison(ColumnType dataType, String operator, Object value) {
+        if (dataType != ColumnType.INTEGER || !(value instanceof Number) || value instanceof Integer) {
+            return new Pair<>(operator, value);
+        }
+        double bound = ((Number) value).doubleValue();
+        switch (operator) {
+            case "=":
+                if (bound != Math.rint(bound) || bound < Integer.MIN_VALUE || bound > Integer.MAX_VALUE) {
+                    return null;
+                }
+                return new Pair<>("=", (int) bound);
+            case ">":  bound = Math.floor(bound) + 1; break;
+            case ">=": bound = Math.ceil(bound); break;
+            case "<":  bound = Math.ceil(bound) - 1; break;
+            case "<=": bound = Math.floor(bound); break;
+            default:
+                throw new IllegalArgumentException("Unsupported operator: " + operator);
+        }
+        if (operator.startsWith(">")) {
+            return bound > Integer.MAX_VALUE ? null : new Pair<>(">=", (int) Math.max(bound, Integer.MIN_VALUE));
+        }
+        return bound < Integer.MIN_VALUE ? null : new Pair<>("<=", (int) Math.min(bound, Integer.MAX_VALUE));
+    }
+
+    // converts a literal to the java type stored for the column, e.g. 5 for a DOUBLE column becomes 5.0
+    private static Object coerce(Object value, ColumnType dataType) {
+        if (!(value instanceof Number)) {
+            return value;
+        }
+        Number number = (Number) value;
+        switch (dataType) {
+            case INTEGER:
+                return number.intValue();
+            case FLOAT:
+                return number.floatValue();
+            case DOUBLE:
+                return number.doubleValue();
+            default:
+                return value;
+        }
+    }
+
     public boolean delete(String table_name, String column_name, RexLiteral value) {
         /* Write your code here */
         // Hint: You need to delete from both - the file and the index
@@ -0,0 +1,453 @@
+package optimizer.rel;
+
+import index.bplusTree.IndexStatistics;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.core.TableScan;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
+
+import manager.RowView;
+import manager.StorageManager;
+import org.apache.calcite.sql.SqlKind;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// What PIndexScan and PSeqScan share - a scan of one table with a filter and a select list.
+// Turns the filter into a Predicate over the records, projects the matching rows, and estimates how many match.
+// How the records are found, and what that costs, is up to the subclass
+public abstract class PFilterScan extends TableScan implements PRel {
+
+    // costs are in block reads - testing one row costs a fraction of a block read
+    protected static final double ROW_COST = 0.01;
+    // selectivity guesses for a column without an index to take statistics from, as in System R
+    private static final double EQUALS_SELECTIVITY = 0.1;
+    private static final double RANGE_SELECTIVITY = 1.0 / 3;
+
+    private final List<RexNode> projects;
+    private final RelDataType rowType;
+    private final RelOptTable table;
+    private final RexNode filter;
+
+    protected PFilterScan(RelOptCluster cluster, RelTraitSet traitSet, RelOptTable table, RexNode filter, List<RexNode> projects) {
+        super(cluster, traitSet, table);
+        this.table = table;
+        this.filter = filter;
+        this.projects = projects;
+        this.rowType = deriveRowType();
+    }
+
+    // the scan hands out the projected columns only, in the order of the select list
+    @Override
+    public RelDataType deriveRowType() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < projects.size(); i++) {
+            RexNode project = projects.get(i);
+            if (project instanceof RexInputRef) {
+                names.add(table.getRowType().getFieldList().get(((RexInputRef) project).getIndex()).getName());
+            } else {
+                names.add("$f" + i);
+            }
+        }
+        return RexUtil.createStructType(getCluster().getTypeFactory(), projects, names, null);
+    }
+
+    @Override
+    public RelOptTable getTable() {
+        return table;
+    }
+
+    public RexNode getFilter() {
+        return filter;
+    }
+
+    public List<RexNode> getProjects() {
+        return projects;
+    }
+
+    public String getTableName() {
+        return table.getQualifiedName().get(1);
+    }
+
+    // the filter as a predicate over the records of the table - SEARCH (e.g. from an IN list) is spelled out as
+    // comparisons, so every leaf is (column operator literal)
+    protected Predicate filterPredicate(StorageManager storage_manager, String tableName) {
+        RexNode condition = RexUtil.expandSearch(getCluster().getRexBuilder(), null, filter);
+        return toPredicate(condition, false, storage_manager, tableName);
+    }
+
+    // full scan over row views - only the filter columns are decoded for every row,
+    // the projected columns only for the rows that match
+    protected void scanTable(Predicate predicate, int[] outputCols, StorageManager storage_manager, String tableName, List<Object[]> result) {
+        storage_manager.scan(tableName, row -> {
+            if (predicate.test(row)) {
+                result.add(project(row, outputCols));
+            }
+        });
+    }
+
+    // block reads of scanTable - every data block, and every record tested
+    protected double fullScanCost(StorageManager storage_manager, String tableName) {
+        double records = Math.max(storage_manager.get_num_records(tableName), 0);
+        return storage_manager.get_num_data_blocks(tableName) + records * ROW_COST;
+    }
+
+    @Override
+    public double estimateRowCount(RelMetadataQuery mq) {
+        StorageManager storage_manager = getCluster().getPlanner().getContext().unwrap(StorageManager.class);
+        Predicate predicate = costedPredicate(storage_manager);
+        if (predicate == null) {
+            return super.estimateRowCount(mq);
+        }
+        String tableName = getTableName();
+        double records = Math.max(storage_manager.get_num_records(tableName), 0);
+        return records * selectivity(predicate, storage_manager, tableName, records);
+    }
+
+    // the filter as a predicate, to cost the plan - null without a storage manager to get statistics from,
+    // or if evaluate would reject the filter or the select list anyway
+    protected Predicate costedPredicate(StorageManager storage_manager) {
+        if (storage_manager == null || !storage_manager.check_file_exists(getTableName())) {
+            return null;
+        }
+        try {
+            getOutputColumns(storage_manager, getTableName());
+            return filterPredicate(storage_manager, getTableName());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // estimated fraction of the records of the table satisfying the predicate, conjuncts and disjuncts
+    // taken as independent
+    protected double selectivity(Predicate predicate, StorageManager storage_manager, String tableName, double records) {
+        if (predicate instanceof And) {
+            double fraction = 1;
+            for (Predicate child : ((And) predicate).children) {
+                fraction *= selectivity(child, storage_manager, tableName, records);
+            }
+            return fraction;
+        }
+        if (predicate instanceof Or) {
+            double missed = 1;
+            for (Predicate child : ((Or) predicate).children) {
+                missed *= 1 - selectivity(child, storage_manager, tableName, records);
+            }
+            return 1 - missed;
+        }
+
+        Comparison comparison = (Comparison) predicate;
+        IndexStatistics<?> stats = storage_manager.get_index_statistics(tableName, comparison.columnName);
+        if (stats == null || stats.get_num_entries() == 0 || records == 0) {
+            switch (comparison.operator) {
+                case "=": return EQUALS_SELECTIVITY;
+                case "<>": return 1 - EQUALS_SELECTIVITY;
+                default: return RANGE_SELECTIVITY;
+            }
+        }
+        // the index has the records where the column is not null, one key per distinct value
+        double nonNull = Math.min(1, stats.get_num_entries() / records);
+        double equal = 1.0 / stats.get_num_distinct_keys();
+        switch (comparison.operator) {
+            case "=": return nonNull * equal;
+            case "<>": return nonNull * (1 - equal);
+            default: break;
+        }
+        if (!(stats.get_min_key() instanceof Number) || !(comparison.value instanceof Number)) {
+            return nonNull * RANGE_SELECTIVITY;
+        }
+        // values taken as spread evenly between the smallest and the largest key
+        double min = ((Number) stats.get_min_key()).doubleValue();
+        double max = ((Number) stats.get_max_key()).doubleValue();
+        double value = ((Number) comparison.value).doubleValue();
+        double below;
+        if (value < min) {
+            below = 0;
+        } else if (value > max) {
+            below = 1;
+        } else {
+            below = max == min ? 0 : (value - min) / (max - min) * (1 - equal);
+        }
+        double fraction;
+        switch (comparison.operator) {
+            case "<": fraction = below; break;
+            case "<=": fraction = below + equal; break;
+            case ">": fraction = 1 - below - equal; break;
+            default: fraction = 1 - below; break;
+        }
+        return nonNull * Math.max(0, Math.min(1, fraction));
+    }
+
+    // a condition on one row of the table, decoding only the columns it looks at - or on a row already decoded,
+    // at least the columns it looks at, into an array indexed like a decoded record
+    protected interface Predicate {
+        boolean test(RowView row);
+
+        boolean test(Object[] row);
+    }
+
+    // (column operator value) - false when the column is null, as in SQL
+    protected class Comparison implements Predicate {
+        final String columnName;
+        final int colIdx;
+        final String operator;
+        final Object value;
+
+        Comparison(String columnName, int colIdx, String operator, Object value) {
+            this.columnName = columnName;
+            this.colIdx = colIdx;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(RowView row) {
+            Object req = row.get(colIdx);
+            return req != null && matches(req, operator, value);
+        }
+
+        @Override
+        public boolean test(Object[] row) {
+            Object req = row[colIdx];
+            return req != null && matches(req, operator, value);
+        }
+    }
+
+    protected static class And implements Predicate {
+        final List<Predicate> children;
+
+        And(List<Predicate> children) {
+            this.children = children;
+        }
+
+        @Override
+        public boolean test(RowView row) {
+            for (Predicate child : children) {
+                if (!child.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean test(Object[] row) {
+            for (Predicate child : children) {
+                if (!child.test(row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    protected static class Or implements Predicate {
+        final List<Predicate> children;
+
+        Or(List<Predicate> children) {
+            this.children = children;
+        }
+
+        @Override
+        public boolean test(RowView row) {
+            for (Predicate child : children) {
+                if (child.test(row)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean test(Object[] row) {
+            for (Predicate child : children) {
+                if (child.test(row)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // builds the predicate for the filter, negated if negate is set - a NOT is pushed down to the comparisons
+    // (NOT a < 3 is a >= 3) so that it can still use an index
+    private Predicate toPredicate(RexNode node, boolean negate, StorageManager storage_manager, String tableName) {
+        if (!(node instanceof RexCall)) {
+            throw new IllegalArgumentException("Invalid filter type");
+        }
+        RexCall call = (RexCall) node;
+        switch (call.getKind()) {
+            case NOT:
+                return toPredicate(call.getOperands().get(0), !negate, storage_manager, tableName);
+            case AND:
+            case OR: {
+                List<Predicate> children = new ArrayList<>();
+                for (RexNode operand : call.getOperands()) {
+                    children.add(toPredicate(operand, negate, storage_manager, tableName));
+                }
+                // De Morgan - NOT (a AND b) is (NOT a) OR (NOT b)
+                return (call.getKind() == SqlKind.AND) != negate ? new And(children) : new Or(children);
+            }
+            default:
+                break;
+        }
+
+        String operator = call.getOperator().getName(); // Get operator name
+        if (call.getOperands().size() != 2 || flip(operator) == null) {
+            throw new IllegalArgumentException("Unsupported filter: " + call);
+        }
+        RexNode leftOperand = call.getOperands().get(0);
+        RexNode rightOperand = call.getOperands().get(1);
+        if (leftOperand instanceof RexLiteral && rightOperand instanceof RexInputRef) {
+            // 5 < length is length > 5
+            operator = flip(operator);
+            RexNode tmp = leftOperand;
+            leftOperand = rightOperand;
+            rightOperand = tmp;
+        }
+        if (negate) {
+            operator = negate(operator);
+        }
+        int pos = (int) extractValue(leftOperand); // Extract column reference
+        Object value = extractValue(rightOperand);
+
+        // the filter refers to the columns of the table, not to the projected ones
+        String columnName = table.getRowType().getFieldList().get(pos).getName();
+        // position of the column in the records handed out by the storage manager
+        int colIdx = storage_manager.get_column_index(tableName, columnName);
+        return new Comparison(columnName, colIdx, operator, value);
+    }
+
+    // operator with its operands swapped, null if not a comparison
+    private static String flip(String operator) {
+        switch (operator) {
+            case "=": return "=";
+            case "<>": return "<>";
+            case ">": return "<";
+            case ">=": return "<=";
+            case "<": return ">";
+            case "<=": return ">=";
+            default: return null;
+        }
+    }
+
+    // operator holding exactly when the given one does not - fine for non null values, nulls fail both
+    private static String negate(String operator) {
+        switch (operator) {
+            case "=": return "<>";
+            case "<>": return "=";
+            case ">": return "<=";
+            case ">=": return "<";
+            case "<": return ">=";
+            default: return ">";
+        }
+    }
+
+    // storage position of every column of the select list
+    protected int[] getOutputColumns(StorageManager storage_manager, String tableName) {
+        List<String> fieldNames = table.getRowType().getFieldNames();
+        int[] outputCols = new int[projects.size()];
+        for (int i = 0; i < projects.size(); i++) {
+            RexNode project = projects.get(i);
+            if (!(project instanceof RexInputRef)) {
+                throw new IllegalArgumentException("Unsupported projection: " + project);
+            }
+            outputCols[i] = storage_manager.get_column_index(tableName, fieldNames.get(((RexInputRef) project).getIndex()));
+        }
+        return outputCols;
+    }
+
+    // decodes the projected columns of the row, nothing else
+    protected static Object[] project(RowView row, int[] outputCols) {
+        Object[] out = new Object[outputCols.length];
+        for (int i = 0; i < outputCols.length; i++) {
+            out[i] = row.get(outputCols[i]);
+        }
+        return out;
+    }
+
+    protected static Object[] project(Object[] row, int[] outputCols) {
+        Object[] out = new Object[outputCols.length];
+        for (int i = 0; i < outputCols.length; i++) {
+            out[i] = row[outputCols[i]];
+        }
+        return out;
+    }
+
+    // true if (req operator value) holds
+    private boolean matches(Object req, String operator, Object value) {
+        if(operator.equals("=")){
+            return compareKeys(req,value)==0;
+        }else if(operator.equals("<>")){
+            return compareKeys(req,value)!=0;
+        }else if(operator.equals(">")){
+            return compareKeys(req,value)>0;
+        }else if(operator.equals(">=")){
+            return compareKeys(req,value)>=0;
+        }else if(operator.equals("<")){
+            return compareKeys(req,value)<0;
+        }else{
+            return compareKeys(req,value)<=0;
+        }
+    }
+
+    private Object extractValue(RexNode node) {
+        if (node instanceof RexLiteral) {
+            RexLiteral literal = (RexLiteral) node;
+            RelDataType typeName = literal.getType();
+            switch (typeName.getSqlTypeName()) {
+                case CHAR:
+                case VARCHAR:
+                    return literal.getValueAs(String.class);
+                case INTEGER:
+                    return literal.getValueAs(Integer.class);
+                case DECIMAL:
+                    if(typeName.getPrecision() == 0) {
+                        return literal.getValueAs(Integer.class);
+                    }else{
+                        return literal.getValueAs(Double.class);
+                    }
+                case BOOLEAN:
+                    return literal.getValueAs(Boolean.class);
+                case FLOAT:
+                    return literal.getValueAs(Float.class);
+                case DOUBLE:
+                    return literal.getValueAs(Double.class);
+                default:
+                    throw new IllegalArgumentException("Unsupported data type: " + typeName.getSqlTypeName());
+            }
+        }else if(node instanceof RexInputRef) {
+            RexInputRef inputRef = (RexInputRef) node;
+            return Integer.valueOf(inputRef.getIndex());
+        }else{
+            throw new IllegalArgumentException("Invalid operand type");
+        }
+
+    }
+
+    int compareKeys(Object k1, Object k2) {
+        if (k1 instanceof String && k2 instanceof String) {
+            return ((String) k1).compareTo((String) k2);
+        } else if (k1 instanceof Integer && k2 instanceof Integer) {
+            return Integer.compare((Integer) k1, (Integer) k2);
+        } else if (k1 instanceof Boolean && k2 instanceof Boolean) {
+            return Boolean.compare((Boolean) k1, (Boolean) k2);
+        } else if (k1 instanceof Float && k2 instanceof Float) {
+            return Float.compare((Float) k1, (Float) k2);
+        } else if (k1 instanceof Double && k2 instanceof Double) {
+            return Double.compare((Double) k1, (Double) k2);
+        } else if (k1 instanceof Number && k2 instanceof Number) {
+            // e.g. a DOUBLE column compared with an integer literal
+            return Double.compare(((Number) k1).doubleValue(), ((Number) k2).doubleValue());
+        } else {
+            throw new IllegalArgumentException("Unsupported data types for comparison: " + k1.getClass().getSimpleName() + " and " + k2.getClass().getSimpleName());
+        }
+    }
+}
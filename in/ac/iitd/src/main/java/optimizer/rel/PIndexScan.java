@@ -1,50 +1,40 @@
 package optimizer.rel;
 
+import index.bplusTree.IndexStatistics;
 import javafx.util.Pair;
 import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelNode;
-import org.apache.calcite.rel.core.TableScan;
-import org.apache.calcite.rel.type.RelDataType;
-import org.apache.calcite.rex.RexCall;
-import org.apache.calcite.rex.RexInputRef;
-import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rex.RexNode;
 
 import manager.StorageManager;
-import org.apache.calcite.sql.type.SqlTypeName;
-import storage.DB;
+import storage.RecordIdSet;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 // Operator trigged when doing indexed scan
 // Matches SFW queries with indexed columns in the WHERE clause
-public class PIndexScan extends TableScan implements PRel {
+public class PIndexScan extends PFilterScan {
 
-    private final List<RexNode> projects;
-    private final RelDataType rowType;
-    private final RelOptTable table;
-    private final RexNode filter;
+    // block reads of the plan, worked out on the first computeSelfCost - the indexes matching the filter and their
+    // statistics stay the same while the node is planned, and the planner asks for its cost over and over
+    private Double cost;
 
     public PIndexScan(RelOptCluster cluster, RelTraitSet traitSet, RelOptTable table, RexNode filter, List<RexNode> projects) {
-        super(cluster, traitSet, table);
-        this.table = table;
-        this.rowType = deriveRowType();
-        this.filter = filter;
-        this.projects = projects;
+        super(cluster, traitSet, table, filter, projects);
     }
 
     @Override
     public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
-        return new PIndexScan(getCluster(), traitSet, table, filter, projects);
-    }
-
-    @Override
-    public RelOptTable getTable() {
-        return table;
+        return new PIndexScan(getCluster(), traitSet, getTable(), getFilter(), getProjects());
     }
 
     @Override
@@ -52,122 +42,388 @@ public class PIndexScan extends TableScan implements PRel {
         return "PIndexScan";
     }
 
-    public String getTableName() {
-        return table.getQualifiedName().get(1);
-    }
-
     @Override
     public List<Object[]> evaluate(StorageManager storage_manager) {
         String tableName = getTableName();
-        System.out.println("Evaluating PIndexScan for table: " + tableName);
-        int fileId = storage_manager.return_file_id(tableName);
+        System.out.println("Evaluating " + this + " for table: " + tableName);
         if (!storage_manager.check_file_exists(tableName)) {
             System.out.println("Table not found: " + tableName);
             return Collections.emptyList();
         }
 
-        String operator;
-        Object value,columnPos;
-        if (filter instanceof RexCall) {
-            RexCall call = (RexCall) filter;
-            operator = call.getOperator().getName(); // Get operator name
-            RexNode leftOperand = call.getOperands().get(0);
-            RexNode rightOperand = call.getOperands().get(1);
-            columnPos = extractValue(leftOperand); // Extract column reference
-            value = extractValue(rightOperand); // Extract integer value
+        Predicate predicate = filterPredicate(storage_manager, tableName);
+        int[] outputCols = getOutputColumns(storage_manager, tableName);
 
-        }else{
-            throw new IllegalArgumentException("Invalid filter type");
+        List<Object[]> result = new ArrayList<>();
+        if (scanCovering(predicate, outputCols, storage_manager, tableName, result)) {
+            return result;
         }
 
-        List<Object[]> result = new ArrayList<>();
-        DB database = storage_manager.getDb();
-        int num_records = database.get_num_records(fileId);
-        int j=1;
-        for (int i = 0; i < num_records; ) {
-            List<Object[]> temp = storage_manager.get_records_from_block(tableName,j);
-            j++;
-            i+=temp.size();
-            for (int k = 0; k < temp.size(); k++) {
-                Object[] row = temp.get(k);
-                Object req = row[(int)columnPos];
-                if(req!=null){
-                    if(operator.equals("=")){
-                        if(compareKeys(req,value)==0){
-                            result.add(row);
-                        }
-                    }else if(operator.equals(">")){
-                        if(compareKeys(req,value)>0){
-                            result.add(row);
-                        }
-                    }else if(operator.equals(">=")){
-                        if(compareKeys(req,value)>=0){
-                            result.add(row);
-                        }
-                    }else if(operator.equals("<")){
-                        if(compareKeys(req,value)<0){
-                            result.add(row);
-                        }
-                    }else{
-                        if(compareKeys(req,value)<=0){
-                            result.add(row);
-                        }
-                    }
+        Candidates candidates = probe(predicate, storage_manager, tableName);
+        if (candidates == null) {
+            // no index answers the filter - the planner picks PSeqScan then, but the answer is the same
+            scanTable(predicate, outputCols, storage_manager, tableName, result);
+            return result;
+        }
+        // only the records the indexes point at are visited, and only what the indexes could not check is tested
+        Predicate residual = candidates.residual;
+        storage_manager.fetch(tableName, candidates.ids, row -> {
+            if (residual == null || residual.test(row)) {
+                result.add(project(row, outputCols));
+            }
+        });
+        return result;
+    }
+
+    // the plan doing the fewest block reads wins - Volcano keeps the cheaper of PIndexScan and PSeqScan.
+    // the planner's cost factory (RelOptCostImpl) compares the first component only, so that is the whole cost,
+    // with the rows tested folded in at ROW_COST each
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+        if (cost == null) {
+            StorageManager storage_manager = planner.getContext().unwrap(StorageManager.class);
+            Predicate predicate = costedPredicate(storage_manager);
+            if (predicate == null) {
+                return super.computeSelfCost(planner, mq);
+            }
+            String tableName = getTableName();
+            double records = Math.max(storage_manager.get_num_records(tableName), 0);
+            double blocks = storage_manager.get_num_data_blocks(tableName);
+            double indexed = indexCost(predicate, storage_manager, tableName, records, blocks);
+            // no index to use - the same full scan as PSeqScan, after looking for one
+            cost = indexed >= 0 ? indexed : fullScanCost(storage_manager, tableName) + 1;
+        }
+        return planner.getCostFactory().makeCost(cost, 0, cost);
+    }
+
+    // block reads of evaluate with the indexes - a descent and a run of leaves per index used, then every
+    // data block holding a candidate record. -1 if no index can be used
+    private double indexCost(Predicate predicate, StorageManager storage_manager, String tableName, double records, double blocks) {
+        IndexMatch covering = matchCovering(predicate, getOutputColumns(storage_manager, tableName), storage_manager, tableName);
+        if (covering != null) {
+            // the leaves hold every column needed, the table is never read
+            double fraction = selectivity(new And(new ArrayList<>(covering.used)), storage_manager, tableName, records);
+            return leafCost(storage_manager.get_index_statistics(tableName, covering.columns, covering.included), fraction)
+                    + fraction * records * ROW_COST;
+        }
+        double[] access = probeCost(predicate, storage_manager, tableName, records);
+        if (access == null) {
+            return -1;
+        }
+        double fetched = access[1] * records;
+        return access[0] + blocksTouched(blocks, fetched) + fetched * ROW_COST;
+    }
+
+    // {block reads, fraction of the records} of probe on the predicate, null where probe gives up
+    private double[] probeCost(Predicate predicate, StorageManager storage_manager, String tableName, double records) {
+        if (predicate instanceof Comparison) {
+            Comparison comparison = (Comparison) predicate;
+            if (!isRangeOperator(comparison.operator)) {
+                return null;
+            }
+            if (storage_manager.check_index_exists(tableName, comparison.columnName)) {
+                double fraction = selectivity(comparison, storage_manager, tableName, records);
+                return new double[]{leafCost(storage_manager.get_index_statistics(tableName, comparison.columnName), fraction), fraction};
+            }
+            return compositeCost(new ArrayList<>(Collections.singletonList(predicate)), storage_manager, tableName, records);
+        }
+
+        if (predicate instanceof And) {
+            List<Predicate> conjuncts = new ArrayList<>(((And) predicate).children);
+            double[] access = compositeCost(conjuncts, storage_manager, tableName, records);
+            for (Predicate child : conjuncts) {
+                double[] childAccess = probeCost(child, storage_manager, tableName, records);
+                if (childAccess == null) {
+                    continue;
                 }
+                // the sets are intersected, conjuncts taken as independent
+                access = access == null ? childAccess : new double[]{access[0] + childAccess[0], access[1] * childAccess[1]};
             }
+            return access;
         }
 
-        return result;
+        double cost = 0, missed = 1;
+        for (Predicate child : ((Or) predicate).children) {
+            double[] childAccess = probeCost(child, storage_manager, tableName, records);
+            if (childAccess == null) {
+                return null;
+            }
+            cost += childAccess[0];
+            missed *= 1 - childAccess[1];
+        }
+        return new double[]{cost, 1 - missed};
+    }
+
+    // probeCost of probeComposite, taking the comparisons it answers out of conjuncts the same way
+    private double[] compositeCost(List<Predicate> conjuncts, StorageManager storage_manager, String tableName, double records) {
+        IndexMatch match = matchComposite(conjuncts, storage_manager, tableName);
+        if (match == null) {
+            return null;
+        }
+        conjuncts.removeAll(match.used);
+        double fraction = selectivity(new And(new ArrayList<>(match.used)), storage_manager, tableName, records);
+        return new double[]{leafCost(storage_manager.get_index_statistics(tableName, match.columns, match.included), fraction), fraction};
     }
 
-    private Object extractValue(RexNode node) {
-        if (node instanceof RexLiteral) {
-            RexLiteral literal = (RexLiteral) node;
-            RelDataType typeName = literal.getType();
-            switch (typeName.getSqlTypeName()) {
-                case VARCHAR:
-                    return literal.getValueAs(String.class);
-                case INTEGER:
-                    return literal.getValueAs(Integer.class);
-                case DECIMAL:
-                    if(typeName.getPrecision() == 0) {
-                        return literal.getValueAs(Integer.class);
-                    }else{
-                        return literal.getValueAs(Double.class);
+    // down the tree, then along the leaves holding the given fraction of the entries
+    private static double leafCost(IndexStatistics<?> stats, double fraction) {
+        return stats.get_height() + Math.ceil(stats.get_num_leaves() * fraction);
+    }
+
+    // expected number of distinct blocks among the blocks of the table holding the given number of records
+    // picked at random (Cardenas) - fetch reads each of them once
+    private static double blocksTouched(double blocks, double records) {
+        if (blocks <= 0) {
+            return 0;
+        }
+        return blocks * (1 - Math.pow(1 - 1 / blocks, records));
+    }
+
+    // record ids the indexes give for a predicate, and what is left to test on those records (null if nothing)
+    private static class Candidates {
+        final RecordIdSet ids;
+        final Predicate residual;
+
+        Candidates(RecordIdSet ids, Predicate residual) {
+            this.ids = ids;
+            this.residual = residual;
+        }
+    }
+
+    // a composite index and the comparisons it answers at once, see matchPrefix
+    private static class IndexMatch {
+        final List<String> columns;
+        final List<String> included;
+        final List<Comparison> used;
+
+        IndexMatch(List<String> columns, List<String> included, List<Comparison> used) {
+            this.columns = columns;
+            this.included = included;
+            this.used = used;
+        }
+    }
+
+    // the record ids satisfying the predicate, read off the indexes of the table - or null if some part of it
+    // has no index, then only a full scan can answer it. a conjunction needs one indexed conjunct, the other
+    // conjuncts are left as residual; a disjunction needs an index for every branch
+    private Candidates probe(Predicate predicate, StorageManager storage_manager, String tableName) {
+        if (predicate instanceof Comparison) {
+            Comparison comparison = (Comparison) predicate;
+            if (!isRangeOperator(comparison.operator)) {
+                return null;
+            }
+            if (storage_manager.check_index_exists(tableName, comparison.columnName)) {
+                return new Candidates(storage_manager.search_range_ids(tableName, comparison.columnName, comparison.operator, comparison.value), null);
+            }
+            // a composite index led by the column works too
+            RecordIdSet ids = probeComposite(new ArrayList<>(Collections.singletonList(predicate)), storage_manager, tableName);
+            return ids == null ? null : new Candidates(ids, null);
+        }
+
+        if (predicate instanceof And) {
+            // a composite index answers several conjuncts with one range, the rest are probed one by one
+            List<Predicate> conjuncts = new ArrayList<>(((And) predicate).children);
+            RecordIdSet ids = probeComposite(conjuncts, storage_manager, tableName);
+            List<Predicate> residuals = new ArrayList<>();
+            for (Predicate child : conjuncts) {
+                Candidates candidates = ids != null && ids.is_empty() ? null : probe(child, storage_manager, tableName);
+                if (candidates == null) {
+                    // no index, or nothing left to intersect with
+                    residuals.add(child);
+                    continue;
+                }
+                if (ids == null) {
+                    ids = candidates.ids;
+                } else {
+                    ids.and(candidates.ids);
+                }
+                if (candidates.residual != null) {
+                    residuals.add(candidates.residual);
+                }
+            }
+            if (ids == null) {
+                return null;
+            }
+            if (residuals.isEmpty()) {
+                return new Candidates(ids, null);
+            }
+            return new Candidates(ids, residuals.size() == 1 ? residuals.get(0) : new And(residuals));
+        }
+
+        RecordIdSet ids = new RecordIdSet();
+        boolean exact = true;
+        for (Predicate child : ((Or) predicate).children) {
+            Candidates candidates = probe(child, storage_manager, tableName);
+            if (candidates == null) {
+                return null;
+            }
+            ids.or(candidates.ids);
+            exact &= candidates.residual == null;
+        }
+        // a branch that is only a superset has to be tested again, and so does the whole disjunction
+        return new Candidates(ids, exact ? null : predicate);
+    }
+
+    // probes the composite index matchComposite picks and takes the comparisons it answers out of conjuncts.
+    // null if there is none
+    private RecordIdSet probeComposite(List<Predicate> conjuncts, StorageManager storage_manager, String tableName) {
+        IndexMatch match = matchComposite(conjuncts, storage_manager, tableName);
+        if (match == null) {
+            return null;
+        }
+        conjuncts.removeAll(match.used);
+        Comparison range = rangeOf(match.used);
+        return storage_manager.search_prefix_ids(tableName, match.columns, match.included, prefixValues(match.used),
+                range == null ? null : range.operator, range == null ? null : range.value);
+    }
+
+    // the composite index answering the most of the comparisons in conjuncts - equalities on its leading
+    // columns and at most one range on the column after them. null if there is none doing better than
+    // the index of a single column
+    private IndexMatch matchComposite(List<Predicate> conjuncts, StorageManager storage_manager, String tableName) {
+        IndexMatch best = null;
+        for (Pair<List<String>, List<String>> index : storage_manager.get_composite_indexes(tableName)) {
+            List<Comparison> used = matchPrefix(index.getKey(), conjuncts);
+            if (!used.isEmpty() && (best == null || used.size() > best.used.size())) {
+                best = new IndexMatch(index.getKey(), index.getValue(), used);
+            }
+        }
+        if (best == null || (best.used.size() == 1 && storage_manager.check_index_exists(tableName, best.used.get(0).columnName))) {
+            return null;
+        }
+        return best;
+    }
+
+    // answers the query from the leaves of a covering index alone, if one holds every column the filter and the
+    // select list read and its key answers some of the conjuncts - the rest are tested on the decoded entries.
+    // false if there is no such index
+    private boolean scanCovering(Predicate predicate, int[] outputCols, StorageManager storage_manager, String tableName, List<Object[]> result) {
+        IndexMatch match = matchCovering(predicate, outputCols, storage_manager, tableName);
+        if (match == null) {
+            return false;
+        }
+
+        List<Predicate> conjuncts = conjunctsOf(predicate);
+        conjuncts.removeAll(match.used);
+        Predicate residual = conjuncts.isEmpty() ? null : conjuncts.size() == 1 ? conjuncts.get(0) : new And(conjuncts);
+        Comparison range = rangeOf(match.used);
+        storage_manager.scan_covering(tableName, match.columns, match.included, prefixValues(match.used),
+                range == null ? null : range.operator, range == null ? null : range.value, row -> {
+                    if (residual == null || residual.test(row)) {
+                        result.add(project(row, outputCols));
                     }
-                case BOOLEAN:
-                    return literal.getValueAs(Boolean.class);
-                case FLOAT:
-                    return literal.getValueAs(Float.class);
-                case DOUBLE:
-                    return literal.getValueAs(Double.class);
-                default:
-                    throw new IllegalArgumentException("Unsupported data type: " + typeName.getSqlTypeName());
+                });
+        return true;
+    }
+
+    // the covering index scanCovering would use, null if there is none
+    private IndexMatch matchCovering(Predicate predicate, int[] outputCols, StorageManager storage_manager, String tableName) {
+        List<Predicate> conjuncts = conjunctsOf(predicate);
+        if (conjuncts == null) {
+            return null;
+        }
+        Set<Integer> needed = new HashSet<>();
+        collectColumns(predicate, needed);
+        for (int col : outputCols) {
+            needed.add(col);
+        }
+
+        IndexMatch best = null;
+        for (Pair<List<String>, List<String>> index : storage_manager.get_composite_indexes(tableName)) {
+            Set<Integer> covered = new HashSet<>();
+            for (String column : index.getKey()) {
+                covered.add(storage_manager.get_column_index(tableName, column));
+            }
+            for (String column : index.getValue()) {
+                covered.add(storage_manager.get_column_index(tableName, column));
+            }
+            if (!covered.containsAll(needed)) {
+                continue;
             }
-        }else if(node instanceof RexInputRef) {
-            RexInputRef inputRef = (RexInputRef) node;
-            return Integer.valueOf(inputRef.getIndex());
-        }else{
-            throw new IllegalArgumentException("Invalid operand type");
+            List<Comparison> used = matchPrefix(index.getKey(), conjuncts);
+            if (!used.isEmpty() && (best == null || used.size() > best.used.size())) {
+                best = new IndexMatch(index.getKey(), index.getValue(), used);
+            }
+        }
+        return best;
+    }
+
+    // the conjuncts of a conjunction, or the comparison alone - null for a disjunction
+    private static List<Predicate> conjunctsOf(Predicate predicate) {
+        if (predicate instanceof And) {
+            return new ArrayList<>(((And) predicate).children);
+        }
+        if (predicate instanceof Comparison) {
+            return new ArrayList<>(Collections.singletonList(predicate));
         }
+        return null;
+    }
 
+    // storage positions of the columns the predicate reads
+    private static void collectColumns(Predicate predicate, Set<Integer> columns) {
+        if (predicate instanceof Comparison) {
+            columns.add(((Comparison) predicate).colIdx);
+            return;
+        }
+        for (Predicate child : predicate instanceof And ? ((And) predicate).children : ((Or) predicate).children) {
+            collectColumns(child, columns);
+        }
     }
 
-    int compareKeys(Object k1, Object k2) {
-        if (k1 instanceof String && k2 instanceof String) {
-            return ((String) k1).compareTo((String) k2);
-        } else if (k1 instanceof Integer && k2 instanceof Integer) {
-            return Integer.compare((Integer) k1, (Integer) k2);
-        } else if (k1 instanceof Boolean && k2 instanceof Boolean) {
-            return Boolean.compare((Boolean) k1, (Boolean) k2);
-        } else if (k1 instanceof Float && k2 instanceof Float) {
-            return Float.compare((Float) k1, (Float) k2);
-        } else if (k1 instanceof Double && k2 instanceof Double) {
-            return Double.compare((Double) k1, (Double) k2);
-        } else {
-            throw new IllegalArgumentException("Unsupported data types for comparison: " + k1.getClass().getSimpleName() + " and " + k2.getClass().getSimpleName());
+    // values of the equalities of a matchPrefix result, the leading columns of the index range
+    private static List<Object> prefixValues(List<Comparison> used) {
+        List<Object> values = new ArrayList<>();
+        for (Comparison comparison : used) {
+            if (comparison.operator.equals("=")) {
+                values.add(comparison.value);
+            }
         }
+        return values;
     }
 
+    // the range comparison ending a matchPrefix result, null if there is none
+    private static Comparison rangeOf(List<Comparison> used) {
+        Comparison last = used.get(used.size() - 1);
+        return last.operator.equals("=") ? null : last;
+    }
+
+    // comparisons of conjuncts an index on columns can answer at once, in the order of its columns
+    private static List<Comparison> matchPrefix(List<String> columns, List<Predicate> conjuncts) {
+        List<Comparison> used = new ArrayList<>();
+        for (String column : columns) {
+            Comparison equal = null;
+            Comparison range = null;
+            for (Predicate conjunct : conjuncts) {
+                if (!(conjunct instanceof Comparison)) {
+                    continue;
+                }
+                Comparison comparison = (Comparison) conjunct;
+                if (!comparison.columnName.equals(column) || !isRangeOperator(comparison.operator)) {
+                    continue;
+                }
+                if (comparison.operator.equals("=")) {
+                    equal = comparison;
+                    break;
+                }
+                if (range == null) {
+                    range = comparison;
+                }
+            }
+            if (equal != null) {
+                used.add(equal);
+                continue;
+            }
+            // a range ends the prefix
+            if (range != null) {
+                used.add(range);
+            }
+            break;
+        }
+        return used;
+    }
 
-}
\ No newline at end of file
+    private static boolean isRangeOperator(String operator) {
+        return operator.equals("=") || operator.equals(">") || operator.equals(">=")
+                || operator.equals("<") || operator.equals("<=");
+    }
+}
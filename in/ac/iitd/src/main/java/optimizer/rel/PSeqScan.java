@@ -0,0 +1,63 @@
+package optimizer.rel;
+
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexNode;
+
+import manager.StorageManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Operator trigged when doing a sequential scan
+// Same filter and select list as PIndexScan, but every record of the table is read - the planner picks
+// it over PIndexScan when the filter keeps most of the table
+public class PSeqScan extends PFilterScan {
+
+    public PSeqScan(RelOptCluster cluster, RelTraitSet traitSet, RelOptTable table, RexNode filter, List<RexNode> projects) {
+        super(cluster, traitSet, table, filter, projects);
+    }
+
+    @Override
+    public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+        return new PSeqScan(getCluster(), traitSet, getTable(), getFilter(), getProjects());
+    }
+
+    @Override
+    public String toString() {
+        return "PSeqScan";
+    }
+
+    @Override
+    public List<Object[]> evaluate(StorageManager storage_manager) {
+        String tableName = getTableName();
+        System.out.println("Evaluating " + this + " for table: " + tableName);
+        if (!storage_manager.check_file_exists(tableName)) {
+            System.out.println("Table not found: " + tableName);
+            return Collections.emptyList();
+        }
+
+        Predicate predicate = filterPredicate(storage_manager, tableName);
+        int[] outputCols = getOutputColumns(storage_manager, tableName);
+        List<Object[]> result = new ArrayList<>();
+        scanTable(predicate, outputCols, storage_manager, tableName, result);
+        return result;
+    }
+
+    // every data block is read and every record tested, see PIndexScan.computeSelfCost for the units
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+        StorageManager storage_manager = planner.getContext().unwrap(StorageManager.class);
+        if (costedPredicate(storage_manager) == null) {
+            return super.computeSelfCost(planner, mq);
+        }
+        double cost = fullScanCost(storage_manager, getTableName());
+        return planner.getCostFactory().makeCost(cost, 0, cost);
+    }
+}
@@ -3,11 +3,13 @@ package optimizer.rules;
 import org.apache.calcite.adapter.file.CsvTableScan;
 import org.apache.calcite.plan.RelOptRule;
 import org.apache.calcite.plan.RelOptRuleCall;
+import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.logical.LogicalFilter;
 import org.apache.calcite.rel.logical.LogicalProject;
 
 import optimizer.convention.PConvention;
 import optimizer.rel.PIndexScan;
+import optimizer.rel.PSeqScan;
 
 public class PRules {
 
@@ -15,6 +17,7 @@ public class PRules {
     }
 
     // Matches Project over Filter over TableScan, extends RelOptRule
+    // offers both an index scan and a sequential scan, the planner keeps the cheaper one
     public static class PCustomRule extends RelOptRule {
 
         public static final PCustomRule INSTANCE = new PCustomRule();
@@ -28,7 +31,9 @@ public class PRules {
             final LogicalProject project = call.rel(0);
             final LogicalFilter filter = call.rel(1);
             final CsvTableScan scan = call.rel(2);
-            call.transformTo(new PIndexScan(scan.getCluster(), scan.getTraitSet().replace(PConvention.INSTANCE), scan.getTable(), filter.getCondition(), project.getProjects()));
+            RelTraitSet traitSet = scan.getTraitSet().replace(PConvention.INSTANCE);
+            call.transformTo(new PIndexScan(scan.getCluster(), traitSet, scan.getTable(), filter.getCondition(), project.getProjects()));
+            call.transformTo(new PSeqScan(scan.getCluster(), traitSet, scan.getTable(), filter.getCondition(), project.getProjects()));
         }
 
     }
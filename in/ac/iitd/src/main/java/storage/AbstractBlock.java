@@ -1,18 +1,24 @@
 package storage;
 
-// Abstract Block class - 4kB fixed size blocks
+// Abstract Block class - 4kB blocks by default, a file can pick a bigger size when it is created
 // will be extended by LLD block and TreeNode
 
 public abstract class AbstractBlock {
     
-    protected static final int block_capacity = 4096; // 4KB fixed size blocks
+    protected static final int block_capacity = 4096; // 4KB default block size
+    // offsets within a block are 2 bytes, so a block can't be bigger than 64KB
+    public static final int MAX_BLOCK_SIZE = 1 << 16;
     protected byte[] data;
 
     protected AbstractBlock(byte[] data) {
-        this.data = new byte[block_capacity];
+        this(data, block_capacity);
+    }
+
+    protected AbstractBlock(byte[] data, int size) {
+        this.data = new byte[check_block_size(size)];
         
-        // if data is larger than block_capacity, only copy block_capacity bytes
-        int bytes_to_copy = Math.min(data.length, block_capacity);
+        // if data is larger than the block, only copy the size of the block
+        int bytes_to_copy = Math.min(data.length, size);
         System.arraycopy(data, 0, this.data, 0, bytes_to_copy);
         return;
     }
@@ -21,8 +27,20 @@ public abstract class AbstractBlock {
         this.data = new byte[block_capacity];
     }
 
+    protected AbstractBlock(int size){
+        this.data = new byte[check_block_size(size)];
+    }
+
+    // block sizes are powers of 2 from 4KB to 64KB
+    public static int check_block_size(int size) {
+        if (size < block_capacity || size > MAX_BLOCK_SIZE || Integer.bitCount(size) != 1) {
+            throw new IllegalArgumentException("Block size must be a power of 2 between 4KB and 64KB: " + size);
+        }
+        return size;
+    }
+
     public int get_block_capacity() {
-        return block_capacity;
+        return data.length;
     }
 
     public byte[] get_data() {
@@ -39,7 +57,7 @@ public abstract class AbstractBlock {
     }
 
     public void write_data(int offset, byte[] data_to_write){
-        if(offset + data_to_write.length > block_capacity){
+        if(offset + data_to_write.length > data.length){
             return;
         }
         System.arraycopy(data_to_write, 0, data, offset, data_to_write.length);
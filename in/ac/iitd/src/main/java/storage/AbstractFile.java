@@ -16,6 +16,11 @@ public abstract class AbstractFile <T extends AbstractBlock> {
         blocks = new ArrayList<>();
     }
 
+    // number of blocks, including the metadata block
+    public int get_num_blocks() {
+        return blocks.size();
+    }
+
     public void add_block(T block) {
         blocks.add(block);
     }
@@ -24,20 +29,115 @@ public abstract class AbstractFile <T extends AbstractBlock> {
         if(block_id >= blocks.size()){
             return null;
         }
-        return blocks.get(block_id).get_data();
+        return read_block(block_id).get_data();
     }
 
     public byte[] get_data(int block_id, int offset, int length){
         if(block_id >= blocks.size()){
             return null;
         }
-        return blocks.get(block_id).get_data(offset, length);
+        if(blocks instanceof PagedBlockList){
+            return ((PagedBlockList<T>) blocks).read_data(block_id, offset, length);
+        }
+        return read_block(block_id).get_data(offset, length);
+    }
+
+    // the block for looking at only - a paged file hands out a copy, so changing it does nothing
+    protected T read_block(int block_id){
+        if(blocks instanceof PagedBlockList){
+            return ((PagedBlockList<T>) blocks).read(block_id);
+        }
+        return blocks.get(block_id);
+    }
+
+    // the block for changing - a paged file keeps it pinned in its frame until release_block,
+    // so it can't be evicted (and the change lost) halfway through
+    protected T write_block(int block_id){
+        if(blocks instanceof PagedBlockList){
+            return ((PagedBlockList<T>) blocks).pin(block_id);
+        }
+        return blocks.get(block_id);
+    }
+
+    // done with the block from write_block, changed says whether it was written to
+    protected void release_block(int block_id, boolean changed){
+        if(blocks instanceof PagedBlockList){
+            ((PagedBlockList<T>) blocks).unpin(block_id, changed);
+        }
+    }
+
+    protected void release_block(int block_id){
+        release_block(block_id, true);
+    }
+
+    // how blocks of this file are rebuilt from pages, null if the file can't be paged
+    protected BlockFactory<T> block_factory() {
+        return null;
+    }
+
+    public boolean is_paged() {
+        return blocks instanceof PagedBlockList;
+    }
+
+    // writes the blocks out to pages and from then on keeps only what the pool holds in memory
+    public void page_out(BufferPool pool, PageStore pages) {
+        BlockFactory<T> factory = block_factory();
+        if (factory == null) {
+            throw new UnsupportedOperationException(getClass().getSimpleName() + " can't be paged");
+        }
+        write_to(pages);
+        byte[] kinds = new byte[blocks.size()];
+        for (int i = 0; i < blocks.size(); i++) {
+            kinds[i] = factory.kind(blocks.get(i));
+        }
+        blocks = new PagedBlockList<>(pool, pages, factory, kinds, blocks.size());
+    }
+
+    // writes back the dirty pages of a paged file, nothing to do for one in memory
+    public void flush() {
+        if (is_paged()) {
+            ((PagedBlockList<T>) blocks).flush();
+        }
+    }
+
+    // changes to a paged file are logged under file_id from now on, when its pool has a WriteAheadLog
+    public void log_as(int file_id) {
+        if (is_paged()) {
+            ((PagedBlockList<T>) blocks).log_as(file_id);
+        }
+    }
+
+    // logs the changes made so far, returns the lsn to commit up to (0 for a file that doesn't log)
+    public long log_changes() {
+        if (is_paged()) {
+            return ((PagedBlockList<T>) blocks).log_changes();
+        }
+        return 0;
+    }
+
+    public void close() {
+        if (is_paged()) {
+            ((PagedBlockList<T>) blocks).close();
+        }
+    }
+
+    // writes every block to pages, block i to page i, and drops any pages left over from before
+    public void write_to(PageStore pages) {
+        for (int i = 0; i < blocks.size(); i++) {
+            pages.write_page(i, blocks.get(i).get_data());
+        }
+        pages.truncate(blocks.size());
+        pages.force();
     }
 
     public void write_data(int block_id, int offset, byte[] data){
         if(block_id >= blocks.size()){
             return;
         }
-        blocks.get(block_id).write_data(offset, data);
+        try {
+            write_block(block_id).write_data(offset, data);
+        } finally {
+            release_block(block_id);
+        }
     }
 }
@@ -7,8 +7,16 @@ public class Block extends AbstractBlock{
         super(data);
     }
 
+    public Block(byte[] data, int size) {
+        super(data, size);
+    }
+
     public Block(){
         super();
     }
+
+    public Block(int size){
+        super(size);
+    }
     
-}
\ No newline at end of file
+}
@@ -0,0 +1,13 @@
+package storage;
+
+/*
+ * Rebuilds the blocks of a file from their pages, for files whose blocks are paged in and out by a BufferPool.
+ * A file can hold more than one class of block (e.g. leaf and internal nodes of a tree), the kind is a small
+ * tag per page telling create which one a page holds.
+ */
+public interface BlockFactory<T extends AbstractBlock> {
+
+    public byte kind(T block);
+
+    public T create(byte kind, byte[] data);
+}
@@ -0,0 +1,518 @@
+package storage;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/*
+ * A fixed number of frames shared by every paged file (see PagedBlockList).
+ * A page is read into a frame on its first use and stays there until CLOCK picks its frame -
+ * pinned frames are never picked, and a frame used since the hand last passed gets a second chance.
+ * Dirty frames are written back to their page file when they are evicted or flushed.
+ * A page that has to be read in while every frame is pinned waits for an unpin - e.g. more tables loading at once
+ * than there are frames. A thread only ever holds one pin at a time, so some other thread is bound to let go.
+ *
+ * A block is only changed while its frame is pinned (PagedBlockList.pin / unpin), so every change is in the
+ * frame when it is written back. The writer holds the latch of the frame meanwhile. Readers never get the block
+ * of a frame - read hands the reader what it takes out of the block (a copy of it, or some of its bytes) under a
+ * pin and the shared latch, so it is neither half written nor changed after, and nothing outlives its frame.
+ *
+ * With a WriteAheadLog set, the changes to the pages of files that log (PagedBlockList.log_as) are logged
+ * before the pages are written: a page handed out for writing keeps an image of its content as of its last record,
+ * log_changes logs the byte ranges that differ from it (the whole page for one put in), and a page is only
+ * written back once the log is durable up to the lsn of its last record (its page lsn).
+ *
+ * Page I/O happens outside the monitor, so a slow page file or a log force doesn't hold up everyone else.
+ * A page being read in has its frame marked reading - whoever else asks for the page meanwhile waits for it.
+ * A page pinned for writing is never written back - flush waits for its unpin. A write back logs the page and
+ * marks its frame as being written under the monitor, then commits the log and writes the page outside it.
+ * Readers can still pin the page meanwhile, writers wait.
+ */
+public class BufferPool {
+
+    private final int num_frames;
+    private final AbstractBlock[] frames;
+    private final PagedBlockList<?>[] frame_owner;
+    private final int[] frame_page;
+    private final int[] pin_count;
+    // pins for writing, a page with any can't be written back
+    private final int[] write_pins;
+    // the page is being written back outside the monitor (see WriteBack), until then it can't be pinned for writing
+    private final boolean[] writing;
+    // the page is being read in outside the monitor, it can't be pinned until it is there
+    private final boolean[] reading;
+    // held by the writer of a page from pin to unpin, and shared by readers while they copy out of it
+    private final ReentrantReadWriteLock[] latches;
+    private final boolean[] dirty;
+    private final boolean[] referenced;
+    // content of the page as of its last log record, null when it hasn't changed since (or isn't logged)
+    private final byte[][] logged_image;
+    // lsn of the last record of the page, it can't be written back before the log is durable up to there
+    private final long[] page_lsn;
+    private final ArrayDeque<Integer> free_frames;
+    private int clock_hand = 0;
+
+    // (owner, page) -> frame
+    private final HashMap<Long, Integer> page_table = new HashMap<>();
+    private int next_owner_id = 0;
+    private WriteAheadLog log;
+    // logged image of a page put in whole - the whole page is logged
+    private static final byte[] WHOLE_PAGE = new byte[0];
+    // equal bytes between two changed ranges up to this many are logged with them rather than splitting the record
+    private static final int RANGE_GAP = 16;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long write_backs = 0;
+
+    public BufferPool(int num_frames) {
+        if (num_frames < 1) {
+            throw new IllegalArgumentException("A buffer pool needs at least one frame");
+        }
+        this.num_frames = num_frames;
+        frames = new AbstractBlock[num_frames];
+        frame_owner = new PagedBlockList<?>[num_frames];
+        frame_page = new int[num_frames];
+        pin_count = new int[num_frames];
+        write_pins = new int[num_frames];
+        writing = new boolean[num_frames];
+        reading = new boolean[num_frames];
+        latches = new ReentrantReadWriteLock[num_frames];
+        dirty = new boolean[num_frames];
+        referenced = new boolean[num_frames];
+        logged_image = new byte[num_frames][];
+        page_lsn = new long[num_frames];
+        free_frames = new ArrayDeque<>();
+        for (int i = 0; i < num_frames; i++) {
+            free_frames.add(i);
+            latches[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    // logs the changes of owners that log from now on
+    public synchronized void set_log(WriteAheadLog log) {
+        this.log = log;
+    }
+
+    public synchronized WriteAheadLog get_log() {
+        return log;
+    }
+
+    private boolean logs(PagedBlockList<?> owner) {
+        return log != null && owner.log_id() >= 0;
+    }
+
+    synchronized int register() {
+        return next_owner_id++;
+    }
+
+    private static long key(PagedBlockList<?> owner, int page_id) {
+        return ((long) owner.id() << 32) | (page_id & 0xFFFFFFFFL);
+    }
+
+    // the block of the page for changing, read in if it isn't in a frame - the frame stays pinned and latched
+    // until unpin. it keeps what the page looks like now, so the caller's changes can be logged
+    public <T extends AbstractBlock> T pin(PagedBlockList<T> owner, int page_id) {
+        int frame = fetch(owner, page_id, null, true);
+        // the latch is waited for outside the monitor, the pin keeps the frame on this page meanwhile
+        latches[frame].writeLock().lock();
+        synchronized (this) {
+            return (T) frames[frame];
+        }
+    }
+
+    // done with the block from pin, is_dirty says whether it was changed
+    public synchronized void unpin(PagedBlockList<?> owner, int page_id, boolean is_dirty) {
+        Integer frame = page_table.get(key(owner, page_id));
+        if (frame == null || write_pins[frame] == 0 || !latches[frame].isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException("Page " + page_id + " is not pinned");
+        }
+        latches[frame].writeLock().unlock();
+        unpin_frame(frame, true, is_dirty);
+    }
+
+    // what reader takes out of the block of the page - it runs under a pin and the shared latch of the frame,
+    // so no writer changes the block meanwhile. reader must not keep the block itself
+    public <T extends AbstractBlock, R> R read(PagedBlockList<T> owner, int page_id, Function<T, R> reader) {
+        int frame = fetch(owner, page_id, null, false);
+        ReentrantReadWriteLock.ReadLock latch = latches[frame].readLock();
+        latch.lock();
+        try {
+            T block;
+            synchronized (this) {
+                block = (T) frames[frame];
+            }
+            return reader.apply(block);
+        } finally {
+            latch.unlock();
+            synchronized (this) {
+                unpin_frame(frame, false, false);
+            }
+        }
+    }
+
+    private void unpin_frame(int frame, boolean for_write, boolean is_dirty) {
+        dirty[frame] |= is_dirty;
+        boolean freed = --pin_count[frame] == 0;
+        if (for_write) {
+            freed |= --write_pins[frame] == 0;
+        }
+        if (freed) {
+            // threads waiting for a frame (or for the writers of a page to flush it) can go on
+            notifyAll();
+        }
+    }
+
+    // installs block as the content of the page, replacing whatever was there - the page is dirty from now on
+    public void put(PagedBlockList<?> owner, int page_id, AbstractBlock block) {
+        int frame = fetch(owner, page_id, block, false);
+        synchronized (this) {
+            unpin_frame(frame, false, false);
+        }
+    }
+
+    // pins the frame of the page and returns it - with block given, block is put in as the content of the page.
+    // a page that isn't in a frame gets the one CLOCK picks, a dirty pick is written back first and picking starts over.
+    // the monitor is let go while waiting (every frame pinned, or the page busy) and while reading in or writing back
+    private int fetch(PagedBlockList<?> owner, int page_id, AbstractBlock block, boolean for_write) {
+        long k = key(owner, page_id);
+        int claimed;
+        while (true) {
+            WriteBack out = null;
+            synchronized (this) {
+                Integer frame = page_table.get(k);
+                if (frame != null && can_take(frame, block, for_write)) {
+                    if (block == null) {
+                        hits++;
+                    } else {
+                        frames[frame] = block;
+                        dirty[frame] = true;
+                    }
+                    return take(frame, owner, block != null, for_write);
+                }
+                if (frame == null) {
+                    int f = victim();
+                    if (f >= 0 && !dirty[f]) {
+                        evict(f);
+                        install(f, owner, page_id, block, block != null);
+                        if (block != null) {
+                            return take(f, owner, true, for_write);
+                        }
+                        misses++;
+                        reading[f] = true;
+                        claimed = f;
+                        break;
+                    }
+                    if (f >= 0) {
+                        out = write_back(f);
+                    }
+                }
+                if (out == null) {
+                    await();
+                }
+            }
+            if (out != null) {
+                finish(out);
+            }
+        }
+
+        AbstractBlock read;
+        try {
+            read = owner.read_page(page_id);
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                // the page couldn't be read, its frame goes back
+                page_table.remove(k);
+                frame_owner[claimed] = null;
+                reading[claimed] = false;
+                free_frames.add(claimed);
+                notifyAll();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            frames[claimed] = read;
+            reading[claimed] = false;
+            notifyAll();
+            return take(claimed, owner, false, for_write);
+        }
+    }
+
+    // readers can share a frame with anyone, writers wait for its write back and a put for every pin to go
+    private boolean can_take(int frame, AbstractBlock block, boolean for_write) {
+        if (reading[frame]) {
+            return false;
+        }
+        if (block != null) {
+            return !writing[frame] && pin_count[frame] == 0;
+        }
+        return !for_write || !writing[frame];
+    }
+
+    // pins frame f. a page put in whole is logged whole, one pinned for_write keeps an image of what it looks like now
+    private int take(int f, PagedBlockList<?> owner, boolean put, boolean for_write) {
+        pin_count[f]++;
+        referenced[f] = true;
+        if (put) {
+            logged_image[f] = logs(owner) ? WHOLE_PAGE : null;
+        }
+        if (for_write) {
+            write_pins[f]++;
+            if (logged_image[f] == null && logs(owner)) {
+                logged_image[f] = frames[f].get_data().clone();
+            }
+        }
+        return f;
+    }
+
+    private void await() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the buffer pool", e);
+        }
+    }
+
+    // logs what changed in the pages of owner since their last records, returns the lsn to commit up to
+    public synchronized long log_changes(PagedBlockList<?> owner) {
+        if (!logs(owner)) {
+            return 0;
+        }
+        for (int f = 0; f < num_frames; f++) {
+            if (frame_owner[f] == owner) {
+                log_frame(f);
+            }
+        }
+        return log.end_lsn();
+    }
+
+    // the file of owner is cut to num_pages - logged and made durable before the page file is truncated,
+    // or redo could write the pages back
+    public void log_truncate(PagedBlockList<?> owner, int num_pages) {
+        WriteAheadLog log;
+        long lsn;
+        synchronized (this) {
+            if (!logs(owner)) {
+                return;
+            }
+            log = this.log;
+            lsn = log.log_truncate(owner.log_id(), num_pages, owner.page_size());
+        }
+        log.commit(lsn);
+    }
+
+    // writes back the dirty pages of owner - a page pinned for writing is written once its writers are done
+    public void flush(PagedBlockList<?> owner) {
+        WriteAheadLog log;
+        long lsn;
+        synchronized (this) {
+            log = this.log;
+            lsn = log_changes(owner);
+        }
+        // one commit for all the pages rather than one per page
+        if (lsn != 0) {
+            log.commit(lsn);
+        }
+        for (int f = 0; f < num_frames; f++) {
+            WriteBack out;
+            synchronized (this) {
+                while (frame_owner[f] == owner && (write_pins[f] > 0 || writing[f])) {
+                    await();
+                }
+                if (frame_owner[f] != owner || !dirty[f]) {
+                    continue;
+                }
+                out = write_back(f);
+            }
+            finish(out);
+        }
+    }
+
+    // forgets the pages of owner from from_page on, without writing them
+    // the pages are waited for until nobody has them pinned and they aren't being read in or written back -
+    // whoever still holds one of them would otherwise unpin a frame that has moved on to another page
+    public synchronized void discard(PagedBlockList<?> owner, int from_page) {
+        for (int f = 0; f < num_frames; f++) {
+            while (frame_owner[f] == owner && frame_page[f] >= from_page && busy(f)) {
+                await();
+            }
+            if (frame_owner[f] == owner && frame_page[f] >= from_page) {
+                page_table.remove(key(owner, frame_page[f]));
+                frames[f] = null;
+                frame_owner[f] = null;
+                dirty[f] = false;
+                logged_image[f] = null;
+                free_frames.add(f);
+            }
+        }
+        notifyAll();
+    }
+
+    private boolean busy(int f) {
+        return pin_count[f] > 0 || writing[f] || reading[f];
+    }
+
+    // a frame nobody has pinned or is reading in or writing back, -1 if there is none
+    private int victim() {
+        if (!free_frames.isEmpty()) {
+            return free_frames.poll();
+        }
+        // two full turns clear every reference bit, after that only busy frames are left
+        for (int i = 0; i < 2 * num_frames; i++) {
+            int f = clock_hand;
+            clock_hand = (clock_hand + 1) % num_frames;
+            if (busy(f)) {
+                continue;
+            }
+            if (referenced[f]) {
+                referenced[f] = false;
+                continue;
+            }
+            return f;
+        }
+        return -1;
+    }
+
+    // drops the page of a clean frame
+    private void evict(int f) {
+        if (frame_owner[f] == null) {
+            return;
+        }
+        evictions++;
+        page_table.remove(key(frame_owner[f], frame_page[f]));
+        frames[f] = null;
+        frame_owner[f] = null;
+    }
+
+    // a page on its way to its page file, with the lsn the log has to be durable up to first
+    private static class WriteBack {
+        final int frame;
+        final PagedBlockList<?> owner;
+        final int page_id;
+        final AbstractBlock block;
+        final WriteAheadLog log;
+        final long lsn;
+
+        WriteBack(int frame, PagedBlockList<?> owner, int page_id, AbstractBlock block, WriteAheadLog log, long lsn) {
+            this.frame = frame;
+            this.owner = owner;
+            this.page_id = page_id;
+            this.block = block;
+            this.log = log;
+            this.lsn = lsn;
+        }
+    }
+
+    // the part of a write back under the monitor - logs what changed and marks the frame as being written
+    private WriteBack write_back(int f) {
+        long lsn = 0;
+        if (logs(frame_owner[f])) {
+            log_frame(f);
+            lsn = page_lsn[f];
+        }
+        writing[f] = true;
+        dirty[f] = false;
+        return new WriteBack(f, frame_owner[f], frame_page[f], frames[f], log, lsn);
+    }
+
+    // the rest, outside the monitor - commits the log up to the page lsn, then writes the page
+    private void finish(WriteBack out) {
+        boolean written = false;
+        try {
+            if (out.lsn != 0) {
+                out.log.commit(out.lsn);
+            }
+            out.owner.write_page(out.page_id, out.block);
+            written = true;
+        } finally {
+            synchronized (this) {
+                writing[out.frame] = false;
+                if (written) {
+                    write_backs++;
+                } else {
+                    dirty[out.frame] = true;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private void install(int f, PagedBlockList<?> owner, int page_id, AbstractBlock block, boolean is_dirty) {
+        frames[f] = block;
+        frame_owner[f] = owner;
+        frame_page[f] = page_id;
+        pin_count[f] = 0;
+        write_pins[f] = 0;
+        dirty[f] = is_dirty;
+        referenced[f] = true;
+        logged_image[f] = null;
+        page_lsn[f] = 0;
+        page_table.put(key(owner, page_id), f);
+    }
+
+    // logs what changed since the logged image. a frame still pinned for writing gets what was just logged as
+    // its new image, so whatever its writer changes from here on is logged the next time
+    private void log_frame(int f) {
+        if (logged_image[f] != null) {
+            byte[] data = frames[f].get_data();
+            if (write_pins[f] > 0) {
+                data = data.clone();
+            }
+            long lsn = log_page(frame_owner[f], frame_page[f], logged_image[f], data);
+            if (lsn != 0) {
+                page_lsn[f] = lsn;
+            }
+            logged_image[f] = write_pins[f] > 0 ? data : null;
+        }
+    }
+
+    // logs the ranges where data differs from image, returns the lsn of the last record or 0 if nothing changed
+    private long log_page(PagedBlockList<?> owner, int page_id, byte[] image, byte[] data) {
+        if (image == WHOLE_PAGE || image.length != data.length) {
+            return log.log_range(owner.log_id(), page_id, data.length, 0, data, 0, data.length);
+        }
+        long lsn = 0;
+        int i = 0;
+        while (i < data.length) {
+            if (image[i] == data[i]) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int end = i + 1;
+            for (int j = end; j < data.length && j - end <= RANGE_GAP; j++) {
+                if (image[j] != data[j]) {
+                    end = j + 1;
+                }
+            }
+            lsn = log.log_range(owner.log_id(), page_id, data.length, start, data, start, end - start);
+            i = end;
+        }
+        return lsn;
+    }
+
+    public int get_num_frames() {
+        return num_frames;
+    }
+
+    // page requests served from memory
+    public synchronized long get_hits() {
+        return hits;
+    }
+
+    // page requests that had to read the page file
+    public synchronized long get_misses() {
+        return misses;
+    }
+
+    public synchronized long get_evictions() {
+        return evictions;
+    }
+
+    public synchronized long get_write_backs() {
+        return write_backs;
+    }
+}
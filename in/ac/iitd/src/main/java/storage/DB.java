@@ -1,9 +1,12 @@
 package storage;
 
 import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.IndexCursor;
+import index.bplusTree.IndexStatistics;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /*
     * A DB is simply a collection of files.
@@ -12,19 +15,121 @@ import java.util.List;
 public class DB {
     
     // This is private :)
+    // files are only added (or swapped) once in a while and read all the time, possibly from several loading threads
     private List<AbstractFile<? extends AbstractBlock>> files;
+    // frames for the files that have been paged out, null when everything stays in memory
+    private BufferPool buffer_pool;
 
     public DB() {
-        files = new ArrayList<>();
+        files = new CopyOnWriteArrayList<>();
     }
 
-    public int addFile(AbstractFile<? extends AbstractBlock> file) {
+    public DB(BufferPool buffer_pool) {
+        this();
+        this.buffer_pool = buffer_pool;
+    }
+
+    public BufferPool get_buffer_pool() {
+        return buffer_pool;
+    }
+
+    // synchronized so the id returned is the one the file was added at
+    public synchronized int addFile(AbstractFile<? extends AbstractBlock> file) {
 
         files.add(file);
-        return files.size() - 1;
+        int file_id = files.size() - 1;
+        // a file opened paged logs its changes like one paged out here
+        file.log_as(file_id);
+        return file_id;
 
     }
     
+    // writes the blocks of the file out to pages
+    public void write_file(int file_id, PageStore pages){
+        if(file_id >= files.size()){
+            return;
+        }
+        files.get(file_id).write_to(pages);
+    }
+
+    // writes the file out to pages and from then on serves its blocks through the buffer pool
+    public void page_out(int file_id, PageStore pages){
+        if(file_id >= files.size()){
+            return;
+        }
+        if(buffer_pool == null){
+            throw new IllegalStateException("DB has no buffer pool to page files through");
+        }
+        files.get(file_id).page_out(buffer_pool, pages);
+        files.get(file_id).log_as(file_id);
+    }
+
+    // makes the changes to a paged file durable through the log, without writing its pages -
+    // falls back to flushing the file when there is no log
+    public void commit_file(int file_id){
+        if(file_id >= files.size()){
+            return;
+        }
+        WriteAheadLog log = buffer_pool == null ? null : buffer_pool.get_log();
+        if(log == null){
+            files.get(file_id).flush();
+            return;
+        }
+        log.commit(files.get(file_id).log_changes());
+    }
+
+    // writes back every paged file so the log can start over. nothing may be changed meanwhile - a record logged
+    // after its file was flushed would be dropped with the rest - so the caller keeps writers out, as
+    // StorageManager does with its checkpoint lock. the pool itself lets go of its lock while writing pages back
+    public void checkpoint(){
+        if(buffer_pool == null){
+            return;
+        }
+        for (AbstractFile<? extends AbstractBlock> file : files) {
+            file.flush();
+        }
+        if(buffer_pool.get_log() != null){
+            buffer_pool.get_log().checkpoint();
+        }
+    }
+
+    // swaps in another view of the same file, e.g. a MappedFile once a table has been written out - the old one is closed
+    public void replace_file(int file_id, AbstractFile<? extends AbstractBlock> file){
+        if(file_id >= files.size()){
+            return;
+        }
+        files.get(file_id).close();
+        files.set(file_id, file);
+    }
+
+    public boolean is_paged(int file_id){
+        if(file_id >= files.size()){
+            return false;
+        }
+        return files.get(file_id).is_paged();
+    }
+
+    // writes back the dirty pages of a paged file
+    public void flush_file(int file_id){
+        if(file_id >= files.size()){
+            return;
+        }
+        files.get(file_id).flush();
+    }
+
+    // flushes and closes every paged file, and the log
+    public void close(){
+        for (AbstractFile<? extends AbstractBlock> file : files) {
+            file.close();
+        }
+        // every page is durable now, nothing left to redo
+        WriteAheadLog log = buffer_pool == null ? null : buffer_pool.get_log();
+        if(log != null){
+            log.checkpoint();
+            log.close();
+        }
+    }
+
     public byte[] get_data(int file_id, int block_id, int offset, int length){
         if(file_id >= files.size()){
             return null;
@@ -39,6 +144,29 @@ public class DB {
         return files.get(file_id).get_data(block_id);
     }
 
+    // number of blocks in the file, including block 0
+    public int get_num_blocks(int file_id){
+        if(file_id >= files.size()){
+            return -1;
+        }
+        return files.get(file_id).get_num_blocks();
+    }
+
+    // size of every block of the file, -1 if there is no such file
+    public int get_block_size(int file_id){
+        if(file_id >= files.size()){
+            return -1;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof File){
+            return ((File) file).get_block_size();
+        }
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<?>) file).get_block_size();
+        }
+        return -1;
+    }
+
     // only applicable for relational files
     public int get_num_records(int file_id){
         if(file_id >= files.size()){
@@ -51,6 +179,42 @@ public class DB {
         return -1;
     }
 
+    // only applicable for relational files
+    public int get_num_data_blocks(int file_id){
+        if(file_id >= files.size()){
+            return -1;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof File){
+            return ((File) file).get_num_data_blocks();
+        }
+        return -1;
+    }
+
+    // only applicable for relational files
+    public long get_bytes_used(int file_id){
+        if(file_id >= files.size()){
+            return -1;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof File){
+            return ((File) file).get_bytes_used();
+        }
+        return -1;
+    }
+
+    // only applicable for relational files
+    public double get_avg_record_size(int file_id){
+        if(file_id >= files.size()){
+            return -1;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof File){
+            return ((File) file).get_avg_record_size();
+        }
+        return -1;
+    }
+
     // only applicable for index tree file
     // returns the block id of leaf node where the key is present
     public <T> int search_index(int file_id, T key){
@@ -64,6 +228,32 @@ public class DB {
         return -1;
     }
 
+    // only applicable for index tree file
+    // returns a cursor over the index entries between lower and upper (null bounds are open)
+    public <T> IndexCursor<T> scan_index(int file_id, T lower, boolean lowerInclusive, T upper, boolean upperInclusive){
+        if(file_id >= files.size()){
+            return null;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).scan(lower, lowerInclusive, upper, upperInclusive);
+        }
+        return null;
+    }
+
+    // only applicable for index tree file
+    // returns the statistics of the tree - this walks its leaf level, better cache them
+    public <T> IndexStatistics<T> get_index_statistics(int file_id){
+        if(file_id >= files.size()){
+            return null;
+        }
+        AbstractFile<? extends AbstractBlock> file = files.get(file_id);
+        if(file instanceof BPlusTreeIndexFile){
+            return ((BPlusTreeIndexFile<T>) file).compute_statistics();
+        }
+        return null;
+    }
+
     public void write_data(int file_id, int block_id, int offset, byte[] data){
         if(file_id >= files.size()){
             return;
@@ -8,91 +8,210 @@ package storage;
 
 public class File extends AbstractFile<Block> {
 
+    // size of every block of the file, fixed when the file is created
+    private final int block_size;
+
+    // statistics over the data blocks, kept up to date on every add so reading them is O(1)
+    private int num_records = 0;
+    private int num_data_blocks = 0;
+    // record bytes only, without block headers and slot offsets
+    private long record_bytes = 0;
+    // bytes taken in the data blocks - record count, slot offsets and records
+    private long bytes_used = 0;
+
+    public File() {
+        this(PageFile.PAGE_SIZE);
+    }
+
+    // bigger blocks mean fewer of them to go through on a scan
+    public File(int block_size) {
+        this.block_size = AbstractBlock.check_block_size(block_size);
+    }
+
+    public int get_block_size() {
+        return block_size;
+    }
+
+    // reads back a file written with write_to, the statistics are recounted block by block
+    public static File open(PageStore pages) {
+        File f = new File(pages.page_size());
+        for (int i = 0; i < pages.num_pages(); i++) {
+            f.add_block(new Block(pages.read_page(i), f.block_size));
+        }
+        return f;
+    }
+
+    // opens a file written with write_to without reading it into memory, its pages fault in through the pool.
+    // the statistics are still recounted, one page at a time
+    public static File open(BufferPool pool, PageStore pages) {
+        File f = new File(pages.page_size());
+        int numPages = pages.num_pages();
+        f.blocks = new PagedBlockList<>(pool, pages, f.block_factory(), new byte[numPages], numPages);
+        for (int i = 1; i < numPages; i++) {
+            f.count_block(f.read_block(i));
+        }
+        return f;
+    }
+
+    // every block of a file is a plain Block
+    @Override
+    protected BlockFactory<Block> block_factory() {
+        return new BlockFactory<Block>() {
+            @Override
+            public byte kind(Block block) {
+                return 0;
+            }
+
+            @Override
+            public Block create(byte kind, byte[] data) {
+                return new Block(data, block_size);
+            }
+        };
+    }
+
+    // a block added directly (not through add_record_*) is counted as is, block 0 is the schema
+    @Override
+    public void add_block(Block block) {
+        super.add_block(block);
+        if (blocks.size() > 1) {
+            count_block(block);
+        }
+    }
+
+    private void count_block(Block block) {
+        byte[] numRecordsBytes = block.get_data(0, 2);
+        int numRecords = ((numRecordsBytes[0] & 0xFF) << 8) | (numRecordsBytes[1] & 0xFF);
+        int recordBytes = 0;
+        if (numRecords > 0) {
+            byte[] offsetBytes = block.get_data(2 + (numRecords - 1) * 2, 2);
+            recordBytes = block.get_block_capacity() - (((offsetBytes[0] & 0xFF) << 8) | (offsetBytes[1] & 0xFF));
+        }
+        count_data_block(numRecords, recordBytes);
+    }
+
+    // a data block holding numRecords records of recordBytes bytes in all
+    protected void count_data_block(int numRecords, int recordBytes) {
+        num_data_blocks++;
+        count_records(numRecords, recordBytes);
+        bytes_used += 2;
+    }
+
+    private void count_records(int numRecords, int recordBytes) {
+        num_records += numRecords;
+        record_bytes += recordBytes;
+        bytes_used += 2L * numRecords + recordBytes;
+    }
+
     public boolean add_record_to_last_block(byte[] bytes){
+        return add_record_to_last_block(bytes.length, (data, offset) -> System.arraycopy(bytes, 0, data, offset, bytes.length));
+    }
+
+    public boolean add_record_to_new_block(byte[] bytes){
+        return add_record_to_new_block(bytes.length, (data, offset) -> System.arraycopy(bytes, 0, data, offset, bytes.length));
+    }
+
+    // same, but writer puts the record of length bytes straight into the block - nothing is copied on the way
+    public boolean add_record_to_last_block(int length, RecordWriter writer){
 
         // if file has only one block - the metadata block, return false
         if(blocks.size() == 1){
             return false;
         }
 
-        Block lastBlock = blocks.get(blocks.size() - 1);
+        // pinned while the record goes in
+        int block_id = blocks.size() - 1;
+        byte[] lastBlock = write_block(block_id).get_data();
+        boolean added = false;
+        try {
+            added = add_record(lastBlock, length, writer);
+        } finally {
+            release_block(block_id, added);
+        }
+        return added;
+    }
+
+    // puts the record into the block, false if it doesn't fit
+    private boolean add_record(byte[] lastBlock, int length, RecordWriter writer){
 
         // first 2 bytes in this block are the number of records in the block
-        byte[] numRecordsBytes = lastBlock.get_data(0, 2);
-        int numRecords = (numRecordsBytes[0] << 8) | (numRecordsBytes[1] & 0xFF);
+        int numRecords = ((lastBlock[0] & 0xFF) << 8) | (lastBlock[1] & 0xFF);
 
         // read the offset of the last record in the block
-        byte[] offsetBytes = lastBlock.get_data(2 + (numRecords - 1) * 2, 2);
-        int offset = (offsetBytes[0] << 8) | (offsetBytes[1] & 0xFF);
+        int offset = ((lastBlock[2 * numRecords] & 0xFF) << 8) | (lastBlock[2 * numRecords + 1] & 0xFF);
 
-        int usedBytes = 2 + 2 * numRecords + (lastBlock.get_block_capacity() - offset);
+        int usedBytes = 2 + 2 * numRecords + (lastBlock.length - offset);
         // calculate length of free bytes in the block
-        int freeBytes = lastBlock.get_block_capacity() - usedBytes;
+        int freeBytes = lastBlock.length - usedBytes;
 
         // if the record is larger than the free bytes in the block, return false
-        if(bytes.length + 2 > freeBytes){
+        if(length + 2 > freeBytes){
             return false;
         }
 
         // add the record to the block
-        int new_offset = offset - bytes.length;
-
-        // convert the new offset to 2 bytes
-        byte[] new_offset_bytes = new byte[2];
-        new_offset_bytes[0] = (byte) (new_offset >> 8);
-        new_offset_bytes[1] = (byte) new_offset;
-        lastBlock.write_data(2 + 2 * numRecords, new_offset_bytes);
-        lastBlock.write_data(new_offset, bytes);
+        int new_offset = offset - length;
+        writer.write(lastBlock, new_offset);
+        lastBlock[2 + 2 * numRecords] = (byte) (new_offset >> 8);
+        lastBlock[3 + 2 * numRecords] = (byte) new_offset;
 
         numRecords++;
-        byte[] new_num_records_bytes = new byte[2];
-        new_num_records_bytes[0] = (byte) (numRecords >> 8);
-        new_num_records_bytes[1] = (byte) numRecords;
-        lastBlock.write_data(0, new_num_records_bytes);
+        lastBlock[0] = (byte) (numRecords >> 8);
+        lastBlock[1] = (byte) numRecords;
 
+        count_records(1, length);
         return true;
     }
 
-    public boolean add_record_to_new_block(byte[] bytes){
-        
+    public boolean add_record_to_new_block(int length, RecordWriter writer){
+
         if(blocks.isEmpty()){
             return false;
         } // sanity check
 
-        if(bytes.length + 4 > blocks.get(0).get_block_capacity()){
+        if(length + 4 > block_size){
             return false;
         } // sanity check
 
-        // create a new block, 
-        Block newBlock = new Block();
-
-        // write 1 to first 2 bytes
-        byte[] numRecordsBytes = new byte[2];
-        numRecordsBytes[0] = 0;
-        numRecordsBytes[1] = 1;
-        newBlock.write_data(0, numRecordsBytes);
-
-        int offset = newBlock.get_block_capacity() - bytes.length;
-        // convert the offset to 2 bytes
-        byte[] offsetBytes = new byte[2];
-        offsetBytes[0] = (byte) (offset >> 8);
-        offsetBytes[1] = (byte) offset;
-        newBlock.write_data(2, offsetBytes);
-        newBlock.write_data(offset, bytes);
+        // create a new block, one record in it
+        Block newBlock = new Block(block_size);
+        byte[] data = newBlock.get_data();
+        data[0] = 0;
+        data[1] = 1;
+
+        int offset = data.length - length;
+        data[2] = (byte) (offset >> 8);
+        data[3] = (byte) offset;
+        writer.write(data, offset);
         blocks.add(newBlock);
+
+        num_data_blocks++;
+        bytes_used += 2;
+        count_records(1, length);
         return true;
     }
 
     public int get_num_records(){
-        if(blocks.isEmpty()){
+        if(get_num_blocks() == 0){
             return -1;
         }
-        int numRecords = 0;
-        for(int i = 1; i < blocks.size(); i++){
-            byte[] numRecordsBytes = blocks.get(i).get_data(0, 2);
-            numRecords += (numRecordsBytes[0] << 8) | (numRecordsBytes[1] & 0xFF);
+        return num_records;
+    }
+
+    // number of blocks holding records, i.e. without the schema block
+    public int get_num_data_blocks(){
+        return num_data_blocks;
+    }
+
+    public long get_bytes_used(){
+        return bytes_used;
+    }
+
+    // average size of a record in bytes, 0 for an empty file
+    public double get_avg_record_size(){
+        if(num_records == 0){
+            return 0;
         }
-        return numRecords;
+        return (double) record_bytes / num_records;
     }
-    
+
 }
@@ -0,0 +1,148 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * A table that is loaded once and then only read, served from a read-only memory map of its page file.
+ * Nothing is read into the heap up front - pages come from the OS page cache, which every process mapping
+ * the same file shares, and get_data copies out only the bytes asked for.
+ * Anything that would change the file throws.
+ */
+public class MappedFile extends File {
+
+    // a single MappedByteBuffer can't span more than 2GB, so the file is mapped in regions of this many bytes
+    private static final int REGION_SIZE = 1 << 28;
+
+    private final MappedByteBuffer[] regions;
+    private final int num_pages;
+    private final int page_size;
+    private final int pages_per_region;
+
+    private MappedFile(MappedByteBuffer[] regions, int num_pages, int page_size) {
+        super(page_size);
+        this.regions = regions;
+        this.num_pages = num_pages;
+        this.page_size = page_size;
+        this.pages_per_region = REGION_SIZE / page_size;
+    }
+
+    public static MappedFile open(Path path) {
+        return open(path, PageFile.PAGE_SIZE);
+    }
+
+    // maps a table file written with write_to (or paged out) - the statistics come from the block headers
+    public static MappedFile open(Path path, int page_size) {
+        int pages_per_region = REGION_SIZE / AbstractBlock.check_block_size(page_size);
+        // the mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int num_pages = (int) (channel.size() / page_size);
+            MappedByteBuffer[] regions = new MappedByteBuffer[(num_pages + pages_per_region - 1) / pages_per_region];
+            for (int r = 0; r < regions.length; r++) {
+                long start = (long) r * REGION_SIZE;
+                long size = (long) Math.min(pages_per_region, num_pages - r * pages_per_region) * page_size;
+                regions[r] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+
+            MappedFile f = new MappedFile(regions, num_pages, page_size);
+            for (int i = 1; i < num_pages; i++) {
+                int numRecords = f.read_short(i, 0);
+                int recordBytes = numRecords == 0 ? 0 : page_size - f.read_short(i, 2 + 2 * (numRecords - 1));
+                f.count_data_block(numRecords, recordBytes);
+            }
+            return f;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not map table file " + path, e);
+        }
+    }
+
+    // absolute reads don't move the buffer's position, so readers on several threads don't get in each other's way
+    private int read_short(int block_id, int offset) {
+        ByteBuffer region = regions[block_id / pages_per_region];
+        int position = (block_id % pages_per_region) * page_size + offset;
+        return ((region.get(position) & 0xFF) << 8) | (region.get(position + 1) & 0xFF);
+    }
+
+    private byte[] copy(int block_id, int offset, int length) {
+        ByteBuffer region = regions[block_id / pages_per_region].duplicate();
+        region.position((block_id % pages_per_region) * page_size + offset);
+        byte[] result = new byte[length];
+        region.get(result);
+        return result;
+    }
+
+    @Override
+    public int get_num_blocks() {
+        return num_pages;
+    }
+
+    // the whole page - the record decoders work on arrays, so this is the one place a full page is copied
+    @Override
+    public byte[] get_data(int block_id) {
+        if (block_id >= num_pages) {
+            return null;
+        }
+        return copy(block_id, 0, page_size);
+    }
+
+    @Override
+    public byte[] get_data(int block_id, int offset, int length) {
+        if (block_id >= num_pages || offset + length > page_size) {
+            return null;
+        }
+        return copy(block_id, offset, length);
+    }
+
+    @Override
+    protected Block read_block(int block_id) {
+        return new Block(get_data(block_id), page_size);
+    }
+
+    @Override
+    public void write_to(PageStore pages) {
+        for (int i = 0; i < num_pages; i++) {
+            pages.write_page(i, get_data(i));
+        }
+        pages.truncate(num_pages);
+        pages.force();
+    }
+
+    @Override
+    public void add_block(Block block) {
+        throw new UnsupportedOperationException("Mapped table files are read only");
+    }
+
+    @Override
+    public boolean add_record_to_last_block(byte[] bytes) {
+        throw new UnsupportedOperationException("Mapped table files are read only");
+    }
+
+    @Override
+    public boolean add_record_to_new_block(byte[] bytes) {
+        throw new UnsupportedOperationException("Mapped table files are read only");
+    }
+
+    @Override
+    public boolean add_record_to_last_block(int length, RecordWriter writer) {
+        throw new UnsupportedOperationException("Mapped table files are read only");
+    }
+
+    @Override
+    public boolean add_record_to_new_block(int length, RecordWriter writer) {
+        throw new UnsupportedOperationException("Mapped table files are read only");
+    }
+
+    @Override
+    public void write_data(int block_id, int offset, byte[] data) {
+        throw new UnsupportedOperationException("Mapped table files are read only");
+    }
+
+    @Override
+    public void page_out(BufferPool pool, PageStore pages) {
+        throw new UnsupportedOperationException("Mapped table files are read only");
+    }
+}
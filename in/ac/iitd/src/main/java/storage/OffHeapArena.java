@@ -0,0 +1,84 @@
+package storage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Pages outside the Java heap, in direct ByteBuffers allocated a chunk at a time and never given back.
+ * Pages are addressed by number, and a freed page goes on a free list to be handed out again before
+ * the arena grows - so a file that shrinks and grows again doesn't cost any more memory.
+ * Shared by every OffHeapPageStore of a DB with the same page size.
+ */
+public class OffHeapArena {
+
+    // bytes allocated at a time
+    private static final int CHUNK_SIZE = 1 << 20;
+    private final int page_size;
+    private final int pages_per_chunk;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private int[] free_pages = new int[64];
+    private int num_free = 0;
+    private int next_page = 0;
+
+    public OffHeapArena() {
+        this(AbstractBlock.block_capacity);
+    }
+
+    public OffHeapArena(int page_size) {
+        this.page_size = AbstractBlock.check_block_size(page_size);
+        this.pages_per_chunk = CHUNK_SIZE / page_size;
+    }
+
+    public int get_page_size() {
+        return page_size;
+    }
+
+    public synchronized int allocate() {
+        if (num_free > 0) {
+            return free_pages[--num_free];
+        }
+        if (next_page == chunks.size() * pages_per_chunk) {
+            chunks.add(ByteBuffer.allocateDirect(CHUNK_SIZE));
+        }
+        return next_page++;
+    }
+
+    public synchronized void free(int page) {
+        if (num_free == free_pages.length) {
+            free_pages = Arrays.copyOf(free_pages, 2 * num_free);
+        }
+        free_pages[num_free++] = page;
+    }
+
+    // a view of the page - its own position, so readers on several threads don't get in each other's way
+    private ByteBuffer page(int page) {
+        ByteBuffer chunk;
+        synchronized (this) {
+            chunk = chunks.get(page / pages_per_chunk);
+        }
+        ByteBuffer view = chunk.duplicate();
+        view.position((page % pages_per_chunk) * page_size);
+        return view;
+    }
+
+    public void read(int page, byte[] dst) {
+        page(page).get(dst, 0, page_size);
+    }
+
+    public void write(int page, byte[] src) {
+        page(page).put(src, 0, page_size);
+    }
+
+    // pages handed out and not freed
+    public synchronized int get_num_pages_used() {
+        return next_page - num_free;
+    }
+
+    // direct memory taken by the arena
+    public synchronized long get_bytes_reserved() {
+        return (long) chunks.size() * CHUNK_SIZE;
+    }
+}
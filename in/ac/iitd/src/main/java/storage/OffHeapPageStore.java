@@ -0,0 +1,67 @@
+package storage;
+
+import java.util.Arrays;
+
+/*
+ * The pages of one file, kept in an OffHeapArena instead of on disk.
+ * Page i of the file can sit on any page of the arena, the mapping is kept here.
+ * Nothing survives the process - force does nothing.
+ */
+public class OffHeapPageStore implements PageStore {
+
+    private final OffHeapArena arena;
+    // page of the file -> page of the arena
+    private int[] pages = new int[16];
+    private int num_pages = 0;
+
+    public OffHeapPageStore(OffHeapArena arena) {
+        this.arena = arena;
+    }
+
+    @Override
+    public int num_pages() {
+        return num_pages;
+    }
+
+    @Override
+    public int page_size() {
+        return arena.get_page_size();
+    }
+
+    @Override
+    public byte[] read_page(int page_id) {
+        if (page_id >= num_pages) {
+            throw new RuntimeException("Page " + page_id + " is past the end of the file");
+        }
+        byte[] page = new byte[arena.get_page_size()];
+        arena.read(pages[page_id], page);
+        return page;
+    }
+
+    @Override
+    public void write_page(int page_id, byte[] page) {
+        while (num_pages <= page_id) {
+            if (num_pages == pages.length) {
+                pages = Arrays.copyOf(pages, 2 * num_pages);
+            }
+            pages[num_pages++] = arena.allocate();
+        }
+        arena.write(pages[page_id], page);
+    }
+
+    @Override
+    public void truncate(int num_pages) {
+        while (this.num_pages > num_pages) {
+            arena.free(pages[--this.num_pages]);
+        }
+    }
+
+    @Override
+    public void force() {
+    }
+
+    @Override
+    public void close() {
+        truncate(0);
+    }
+}
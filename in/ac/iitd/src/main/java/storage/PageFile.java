@@ -0,0 +1,106 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * A file on disk seen as an array of pages, one page per block - page i is at byte i * page size.
+ * Used to write out the blocks of an AbstractFile and to read them back on the next start.
+ */
+public class PageFile implements PageStore {
+
+    // default page size, a file can use any block size (see AbstractBlock.check_block_size)
+    public static final int PAGE_SIZE = AbstractBlock.block_capacity;
+
+    private final FileChannel channel;
+    private final int page_size;
+
+    public PageFile(Path path) {
+        this(path, PAGE_SIZE);
+    }
+
+    public PageFile(Path path, int page_size) {
+        this.page_size = AbstractBlock.check_block_size(page_size);
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open page file " + path, e);
+        }
+    }
+
+    @Override
+    public int num_pages() {
+        try {
+            return (int) (channel.size() / page_size);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public int page_size() {
+        return page_size;
+    }
+
+    @Override
+    public byte[] read_page(int page_id) {
+        byte[] page = new byte[page_size];
+        ByteBuffer buffer = ByteBuffer.wrap(page);
+        long position = (long) page_id * page_size;
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new RuntimeException("Page " + page_id + " is past the end of the file");
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return page;
+    }
+
+    @Override
+    public void write_page(int page_id, byte[] page) {
+        ByteBuffer buffer = ByteBuffer.wrap(page, 0, page_size);
+        long position = (long) page_id * page_size;
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // drops the pages from num_pages on
+    @Override
+    public void truncate(int num_pages) {
+        try {
+            channel.truncate((long) num_pages * page_size);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // makes the written pages durable
+    @Override
+    public void force() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
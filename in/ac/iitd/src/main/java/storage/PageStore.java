@@ -0,0 +1,27 @@
+package storage;
+
+/*
+ * Where the pages of a paged file live when they aren't in the buffer pool -
+ * a PageFile on disk, or an OffHeapPageStore outside the Java heap.
+ * Page i holds block i of the file.
+ */
+public interface PageStore {
+
+    public int num_pages();
+
+    // every page of a store has the same size, the block size of its file
+    public int page_size();
+
+    public byte[] read_page(int page_id);
+
+    // writing one past the last page appends it
+    public void write_page(int page_id, byte[] page);
+
+    // drops the pages from num_pages on
+    public void truncate(int num_pages);
+
+    // makes the written pages durable, if the store can be
+    public void force();
+
+    public void close();
+}
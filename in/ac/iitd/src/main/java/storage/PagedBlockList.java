@@ -0,0 +1,159 @@
+package storage;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/*
+ * The blocks of a file, kept in a PageStore and faulted in through a BufferPool.
+ * Drop-in for the ArrayList an AbstractFile starts with -
+ * get (or read) hands out a copy of the block, taken while nobody is writing to it - changing the copy changes nothing.
+ * A block is changed between pin and unpin, which keep its frame from being evicted meanwhile and mark the page
+ * dirty - see AbstractFile.write_block.
+ * add appends a page and only the tail can be removed.
+ */
+public class PagedBlockList<T extends AbstractBlock> extends AbstractList<T> implements RandomAccess {
+
+    private final BufferPool pool;
+    private final PageStore pages;
+    private final BlockFactory<T> factory;
+    private final int id;
+    // file id its changes are logged under, -1 if they aren't
+    private int log_id = -1;
+    // kind of block on each page, see BlockFactory
+    private byte[] kinds;
+    private int size;
+
+    public PagedBlockList(BufferPool pool, PageStore pages, BlockFactory<T> factory, byte[] kinds, int size) {
+        this.pool = pool;
+        this.pages = pages;
+        this.factory = factory;
+        this.kinds = Arrays.copyOf(kinds, Math.max(16, size));
+        this.size = size;
+        this.id = pool.register();
+    }
+
+    int id() {
+        return id;
+    }
+
+    int log_id() {
+        return log_id;
+    }
+
+    int page_size() {
+        return pages.page_size();
+    }
+
+    // from now on changes to the pages go to the pool's WriteAheadLog under file_id
+    public void log_as(int file_id) {
+        log_id = file_id;
+    }
+
+    // logs the changes made so far, see BufferPool.log_changes
+    public long log_changes() {
+        return pool.log_changes(this);
+    }
+
+    // for callers that only look at the block - the List interface has no way to say when a change is done
+    @Override
+    public T get(int index) {
+        return read(index);
+    }
+
+    public T read(int index) {
+        check_index(index);
+        byte kind = kinds[index];
+        return pool.read(this, index, block -> factory.create(kind, block.get_data()));
+    }
+
+    // bytes [offset, offset + length) of the block, without copying the rest of it
+    public byte[] read_data(int index, int offset, int length) {
+        check_index(index);
+        return pool.read(this, index, block -> block.get_data(offset, length));
+    }
+
+    // the block for changing, it stays in its frame until unpin
+    public T pin(int index) {
+        check_index(index);
+        return pool.pin(this, index);
+    }
+
+    // done with the block from pin - if it changed, the page is written back when it leaves the pool
+    public void unpin(int index, boolean changed) {
+        pool.unpin(this, index, changed);
+    }
+
+    // doesn't return the block that was there - reading it in only to drop it would cost a page read
+    @Override
+    public T set(int index, T block) {
+        check_index(index);
+        kinds[index] = factory.kind(block);
+        pool.put(this, index, block);
+        return null;
+    }
+
+    @Override
+    public boolean add(T block) {
+        if (size == kinds.length) {
+            kinds = Arrays.copyOf(kinds, 2 * size);
+        }
+        kinds[size] = factory.kind(block);
+        pool.put(this, size, block);
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public T remove(int index) {
+        T block = read(index);
+        removeRange(index, size);
+        return block;
+    }
+
+    // only the tail can go - pages aren't shifted
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (toIndex != size) {
+            throw new UnsupportedOperationException("Only the last pages of a paged file can be removed");
+        }
+        pool.log_truncate(this, fromIndex);
+        pool.discard(this, fromIndex);
+        pages.truncate(fromIndex);
+        size = fromIndex;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // writes back every dirty page and makes the file durable
+    public void flush() {
+        pool.flush(this);
+        pages.force();
+    }
+
+    // the frames of a closed file are freed right away instead of waiting to be evicted
+    public void close() {
+        flush();
+        pool.discard(this, 0);
+        pages.close();
+    }
+
+    T read_page(int page_id) {
+        return factory.create(kinds[page_id], pages.read_page(page_id));
+    }
+
+    void write_page(int page_id, AbstractBlock block) {
+        pages.write_page(page_id, block.get_data());
+    }
+
+    private void check_index(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Page " + index + " of " + size);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package storage;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/*
+ * A set of record ids (block_id, slot_id) of one table, e.g. the records an index range gives.
+ * Kept as one BitSet of slots per block that has any, so ids stay small whatever the number of blocks,
+ * and a sparse set over a large table only costs the blocks it touches.
+ * Blocks come out in file order, so reading the records of a set reads each block once.
+ */
+public class RecordIdSet {
+
+    // block_id -> slots of that block in the set, never empty
+    private final TreeMap<Integer, BitSet> blocks = new TreeMap<>();
+
+    public void add(int block_id, int slot_id) {
+        blocks.computeIfAbsent(block_id, id -> new BitSet()).set(slot_id);
+    }
+
+    public boolean contains(int block_id, int slot_id) {
+        BitSet slots = blocks.get(block_id);
+        return slots != null && slots.get(slot_id);
+    }
+
+    public boolean is_empty() {
+        return blocks.isEmpty();
+    }
+
+    // number of records in the set
+    public long size() {
+        long size = 0;
+        for (BitSet slots : blocks.values()) {
+            size += slots.cardinality();
+        }
+        return size;
+    }
+
+    // the blocks holding records of the set, in file order
+    public Set<Integer> block_ids() {
+        return blocks.keySet();
+    }
+
+    // the slots of block_id in the set, in order - empty if there are none
+    public BitSet slots(int block_id) {
+        BitSet slots = blocks.get(block_id);
+        return slots == null ? new BitSet() : slots;
+    }
+
+    // keeps only the records also in other
+    public void and(RecordIdSet other) {
+        Iterator<Map.Entry<Integer, BitSet>> it = blocks.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, BitSet> block = it.next();
+            BitSet slots = other.blocks.get(block.getKey());
+            if (slots == null) {
+                it.remove();
+                continue;
+            }
+            block.getValue().and(slots);
+            if (block.getValue().isEmpty()) {
+                it.remove();
+            }
+        }
+    }
+
+    // adds the records of other
+    public void or(RecordIdSet other) {
+        for (Map.Entry<Integer, BitSet> block : other.blocks.entrySet()) {
+            blocks.computeIfAbsent(block.getKey(), id -> new BitSet()).or(block.getValue());
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package storage;
+
+/*
+ * Writes one record of a known length straight into the block it goes to, see File.add_record_to_last_block
+ */
+public interface RecordWriter {
+
+    // the record takes data[offset, offset + length), length as given to File
+    public void write(byte[] data, int offset);
+}
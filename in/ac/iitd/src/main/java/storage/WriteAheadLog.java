@@ -0,0 +1,257 @@
+package storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/*
+ * Redo log for the pages of paged files, so a change survives a crash once its record is durable,
+ * without forcing the page itself.
+ *
+ * log file - base lsn (8) | record | record | ...
+ * record   - length of body (4) | crc32 of body (4) | body
+ * body     - RANGE | file id | page id | block size | offset | bytes   - bytes written at offset of the page
+ *            TRUNCATE | file id | number of pages | block size        - the file was cut to that many pages
+ * The lsn of a record is base lsn + where the record ends in the file, so lsns keep growing across checkpoints.
+ *
+ * Records are appended to a buffer, commit makes them durable. Whoever commits while nobody is writing
+ * writes and forces everything buffered so far - commits that come in meanwhile wait and are usually
+ * covered by that same force (group commit).
+ * Redo only, there is no undo - the BufferPool writes a page back only after the records of its changes are durable.
+ */
+public class WriteAheadLog {
+
+    private static final int HEADER_SIZE = 8;
+    private static final byte RANGE = 1;
+    private static final byte TRUNCATE = 2;
+
+    private final FileChannel channel;
+    private long base_lsn;
+    // records appended but not written yet, they start at written_lsn
+    private byte[] pending = new byte[1 << 16];
+    private int pending_length = 0;
+    private long written_lsn;
+    private long durable_lsn;
+    private boolean flushing = false;
+
+    private long num_commits = 0;
+    private long num_forces = 0;
+
+    // opens the log for appending - run recover on it first, records already in it are dropped
+    public WriteAheadLog(Path path) {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            base_lsn = read_base_lsn(channel) + channel.size();
+            written_lsn = base_lsn;
+            durable_lsn = base_lsn;
+            write_header();
+            channel.truncate(HEADER_SIZE);
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not open the log " + path, e);
+        }
+    }
+
+    // bytes [from, from + length) of the page now sit at offset
+    public synchronized long log_range(int file_id, int page_id, int block_size, int offset, byte[] data, int from, int length) {
+        ByteBuffer body = ByteBuffer.allocate(17 + length);
+        body.put(RANGE).putInt(file_id).putInt(page_id).putInt(block_size).putInt(offset).put(data, from, length);
+        return append(body.array());
+    }
+
+    public synchronized long log_truncate(int file_id, int num_pages, int block_size) {
+        ByteBuffer body = ByteBuffer.allocate(13);
+        body.put(TRUNCATE).putInt(file_id).putInt(num_pages).putInt(block_size);
+        return append(body.array());
+    }
+
+    private long append(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        int needed = pending_length + 8 + body.length;
+        if (needed > pending.length) {
+            pending = Arrays.copyOf(pending, Math.max(needed, 2 * pending.length));
+        }
+        ByteBuffer.wrap(pending, pending_length, 8).putInt(body.length).putInt((int) crc.getValue());
+        System.arraycopy(body, 0, pending, pending_length + 8, body.length);
+        pending_length = needed;
+        return end_lsn();
+    }
+
+    // lsn of the last record appended
+    public synchronized long end_lsn() {
+        return written_lsn + pending_length;
+    }
+
+    // returns once every record up to lsn is durable
+    public void commit(long lsn) {
+        byte[] batch;
+        int length;
+        long start;
+        synchronized (this) {
+            num_commits++;
+            while (true) {
+                if (durable_lsn >= lsn) {
+                    return;
+                }
+                if (!flushing) {
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while waiting for the log", e);
+                }
+            }
+            // lead this round - take everything appended so far, not just up to lsn
+            flushing = true;
+            batch = pending;
+            length = pending_length;
+            start = written_lsn;
+            pending = new byte[batch.length];
+            pending_length = 0;
+            written_lsn += length;
+        }
+        long end = start;
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(batch, 0, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, HEADER_SIZE + start - base_lsn + buffer.position());
+            }
+            channel.force(false);
+            end = start + length;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write the log", e);
+        } finally {
+            synchronized (this) {
+                durable_lsn = Math.max(durable_lsn, end);
+                flushing = false;
+                num_forces++;
+                notifyAll();
+            }
+        }
+    }
+
+    // everything appended so far
+    public void commit() {
+        commit(end_lsn());
+    }
+
+    // drops every record - only once the pages they describe are durable
+    public void checkpoint() {
+        commit();
+        synchronized (this) {
+            try {
+                base_lsn = written_lsn;
+                write_header();
+                channel.truncate(HEADER_SIZE);
+                channel.force(false);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not checkpoint the log", e);
+            }
+        }
+    }
+
+    // bytes of records since the last checkpoint
+    public synchronized long size() {
+        return end_lsn() - base_lsn;
+    }
+
+    public synchronized long get_num_commits() {
+        return num_commits;
+    }
+
+    // how many times the log was forced - below get_num_commits when commits were grouped
+    public synchronized long get_num_forces() {
+        return num_forces;
+    }
+
+    public void close() {
+        commit();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void write_header() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putLong(0, base_lsn);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static long read_base_lsn(FileChannel channel) throws IOException {
+        if (channel.size() < HEADER_SIZE) {
+            return 0;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+        }
+        return header.getLong(0);
+    }
+
+    // what recover does with the records it reads
+    public interface Redo {
+        public void write(int file_id, int page_id, int block_size, int offset, byte[] data);
+
+        public void truncate(int file_id, int num_pages, int block_size);
+    }
+
+    // replays every complete record in order - a torn record at the end (crash while writing) ends the log
+    // returns the number of records replayed
+    public static int recover(Path path, Redo redo) {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer log = ByteBuffer.allocate((int) channel.size());
+            while (log.hasRemaining() && channel.read(log, log.position()) >= 0) {
+            }
+            log.flip();
+            log.position(Math.min(HEADER_SIZE, log.limit()));
+
+            int count = 0;
+            while (log.remaining() >= 8) {
+                int length = log.getInt();
+                int checksum = log.getInt();
+                if (length < 13 || length > log.remaining()) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                log.get(body);
+                CRC32 crc = new CRC32();
+                crc.update(body);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.wrap(body);
+                byte type = record.get();
+                int file_id = record.getInt();
+                int page_id = record.getInt();
+                int block_size = record.getInt();
+                if (type == RANGE) {
+                    int offset = record.getInt();
+                    byte[] data = new byte[record.remaining()];
+                    record.get(data);
+                    redo.write(file_id, page_id, block_size, offset, data);
+                } else if (type == TRUNCATE) {
+                    redo.truncate(file_id, page_id, block_size);
+                } else {
+                    break;
+                }
+                count++;
+            }
+            return count;
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read the log " + path, e);
+        }
+    }
+}
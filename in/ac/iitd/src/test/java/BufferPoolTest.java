@@ -0,0 +1,319 @@
+import index.bplusTree.BPlusTreeIndexFile;
+import storage.Block;
+import storage.BlockFactory;
+import storage.BufferPool;
+import storage.File;
+import storage.OffHeapArena;
+import storage.OffHeapPageStore;
+import storage.PageFile;
+import storage.PageStore;
+import storage.PagedBlockList;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    // the first num_pages pages of pages as a paged file of plain blocks
+    private static PagedBlockList<Block> blocks(BufferPool pool, PageStore pages, int num_pages) {
+        return new PagedBlockList<>(pool, pages, new BlockFactory<Block>() {
+            @Override
+            public byte kind(Block block) {
+                return 0;
+            }
+
+            @Override
+            public Block create(byte kind, byte[] data) {
+                return new Block(data, pages.page_size());
+            }
+        }, new byte[num_pages], num_pages);
+    }
+
+    @Test
+    public void testPagedFileThroughSmallPool() {
+        try {
+            Path path = Files.createTempFile("buffer_pool_test", ".pages");
+            BufferPool pool = new BufferPool(2);
+
+            File f = new File();
+            f.add_block(new Block());
+            f.page_out(pool, new PageFile(path));
+            for (int i = 0; i < 200; i++) {
+                byte[] record = new byte[100];
+                record[0] = (byte) i;
+                if (!f.add_record_to_last_block(record)) {
+                    f.add_record_to_new_block(record);
+                }
+            }
+            // far more blocks than frames, so most of them were written back on eviction
+            assertTrue(f.get_num_blocks() > 2);
+            assertTrue(pool.get_evictions() > 0);
+
+            // a block read twice in a row is served from its frame the second time
+            long hits = pool.get_hits();
+            f.get_data(1);
+            f.get_data(1);
+            assertTrue(pool.get_hits() > hits);
+
+            byte[] last = f.get_data(f.get_num_blocks() - 1).clone();
+            f.close();
+
+            File reopened = File.open(new BufferPool(2), new PageFile(path));
+            assertEquals(200, reopened.get_num_records());
+            assertEquals(f.get_bytes_used(), reopened.get_bytes_used());
+            assertArrayEquals(last, reopened.get_data(reopened.get_num_blocks() - 1));
+            reopened.close();
+            Files.delete(path);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testTreeWritesThroughSmallPool() {
+        try {
+            Path path = Files.createTempFile("buffer_pool_tree_test", ".pages");
+            BufferPool pool = new BufferPool(2);
+
+            BPlusTreeIndexFile<Integer> tree = new BPlusTreeIndexFile<>(8, Integer.class);
+            tree.page_out(pool, new PageFile(path));
+            List<Integer> keys = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                keys.add(i);
+            }
+            Collections.shuffle(keys, new Random(362));
+            // every split changes a node that has been in and out of the two frames many times
+            for (int key : keys) {
+                tree.insert(key, key);
+            }
+            assertTrue(pool.get_evictions() > 0);
+            tree.flush();
+
+            // readers leave the pages clean, so nothing is written back for them
+            long write_backs = pool.get_write_backs();
+            for (int key : keys) {
+                assertTrue(tree.search(key) > 0);
+            }
+            tree.flush();
+            assertEquals(write_backs, pool.get_write_backs());
+            tree.close();
+
+            BPlusTreeIndexFile<Integer> reopened = BPlusTreeIndexFile.open(new BufferPool(2), new PageFile(path), Integer.class);
+            assertEquals(1000, reopened.compute_statistics().get_num_entries());
+            for (int key : keys) {
+                assertTrue(reopened.search(key) > 0);
+            }
+            reopened.close();
+            Files.delete(path);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testFlushWaitsForWriters() {
+        try {
+            Path path = Files.createTempFile("buffer_pool_flush_test", ".pages");
+            PageFile pages = new PageFile(path);
+            pages.write_page(0, new byte[PageFile.PAGE_SIZE]);
+            BufferPool pool = new BufferPool(2);
+            PagedBlockList<Block> blocks = blocks(pool, pages, 1);
+
+            // the page is pinned for writing and half written - flushing it now could write out a torn page
+            Block block = blocks.pin(0);
+            block.write_data(0, new byte[]{1});
+            blocks.unpin(0, true);
+            block = blocks.pin(0);
+            block.write_data(0, new byte[]{2});
+            Thread flusher = new Thread(blocks::flush);
+            flusher.start();
+            flusher.join(200);
+            assertTrue(flusher.isAlive());
+            assertEquals(0, pool.get_write_backs());
+
+            block.write_data(1, new byte[]{3});
+            blocks.unpin(0, true);
+            flusher.join();
+            assertEquals(1, pool.get_write_backs());
+            byte[] page = pages.read_page(0);
+            assertEquals(2, page[0]);
+            assertEquals(3, page[1]);
+            pages.close();
+            Files.delete(path);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testDiscardWaitsForPins() {
+        try {
+            Path path = Files.createTempFile("buffer_pool_discard_test", ".pages");
+            PageFile pages = new PageFile(path);
+            pages.write_page(0, new byte[PageFile.PAGE_SIZE]);
+            pages.write_page(1, new byte[PageFile.PAGE_SIZE]);
+            PagedBlockList<Block> blocks = blocks(new BufferPool(2), pages, 2);
+
+            // the last page is cut off while it is pinned - its frame must not be handed out from under the pin
+            blocks.pin(1).write_data(0, new byte[]{1});
+            Thread truncate = new Thread(() -> blocks.remove(1));
+            truncate.start();
+            truncate.join(200);
+            assertTrue(truncate.isAlive());
+
+            blocks.unpin(1, true);
+            truncate.join();
+            assertEquals(1, blocks.size());
+            assertEquals(1, pages.num_pages());
+            pages.close();
+            Files.delete(path);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testReadersGetASteadyCopy() {
+        try {
+            Path path = Files.createTempFile("buffer_pool_read_test", ".pages");
+            PageFile pages = new PageFile(path);
+            pages.write_page(0, new byte[PageFile.PAGE_SIZE]);
+            PagedBlockList<Block> blocks = blocks(new BufferPool(2), pages, 1);
+
+            // a block read earlier doesn't change under its reader
+            Block before = blocks.read(0);
+            blocks.pin(0).write_data(0, new byte[]{1});
+            blocks.unpin(0, true);
+            assertEquals(0, before.get_data()[0]);
+
+            // nor does a reader see a half written block - it waits for the writer
+            Block block = blocks.pin(0);
+            block.write_data(0, new byte[]{2});
+            Block[] seen = new Block[1];
+            Thread reader = new Thread(() -> seen[0] = blocks.read(0));
+            reader.start();
+            reader.join(200);
+            assertTrue(reader.isAlive());
+            block.write_data(1, new byte[]{3});
+            blocks.unpin(0, true);
+            reader.join();
+            assertEquals(2, seen[0].get_data()[0]);
+            assertEquals(3, seen[0].get_data()[1]);
+            assertArrayEquals(new byte[]{2, 3}, blocks.read_data(0, 0, 2));
+            pages.close();
+            Files.delete(path);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testReadsDontHoldUpHits() {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Path path = Files.createTempFile("buffer_pool_io_test", ".pages");
+            // reading page 1 takes until release
+            PageFile pages = new PageFile(path) {
+                @Override
+                public byte[] read_page(int page_id) {
+                    if (page_id == 1) {
+                        entered.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    return super.read_page(page_id);
+                }
+            };
+            pages.write_page(0, new byte[PageFile.PAGE_SIZE]);
+            pages.write_page(1, new byte[PageFile.PAGE_SIZE]);
+            BufferPool pool = new BufferPool(2);
+            PagedBlockList<Block> blocks = blocks(pool, pages, 2);
+            blocks.read(0);
+
+            Thread slow = new Thread(() -> blocks.read(1));
+            slow.start();
+            entered.await();
+            // page 0 is in its frame, getting it doesn't wait for the read of page 1
+            Thread hit = new Thread(() -> blocks.read(0));
+            hit.start();
+            hit.join(2000);
+            assertFalse(hit.isAlive());
+            assertTrue(slow.isAlive());
+
+            release.countDown();
+            slow.join();
+            assertEquals(2, pool.get_misses());
+            pages.close();
+            Files.delete(path);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        } finally {
+            release.countDown();
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testOffHeapPagesAreRecycled() {
+        try {
+            OffHeapArena arena = new OffHeapArena();
+            OffHeapPageStore pages = new OffHeapPageStore(arena);
+            for (int i = 0; i < 10; i++) {
+                byte[] page = new byte[PageFile.PAGE_SIZE];
+                page[0] = (byte) i;
+                pages.write_page(i, page);
+            }
+            long reserved = arena.get_bytes_reserved();
+            pages.truncate(5);
+            assertEquals(5, arena.get_num_pages_used());
+
+            // the freed pages are handed out again before the arena grows
+            OffHeapPageStore other = new OffHeapPageStore(arena);
+            for (int i = 0; i < 5; i++) {
+                byte[] page = new byte[PageFile.PAGE_SIZE];
+                page[0] = (byte) (100 + i);
+                other.write_page(i, page);
+            }
+            assertEquals(reserved, arena.get_bytes_reserved());
+            assertEquals(10, arena.get_num_pages_used());
+            for (int i = 0; i < 5; i++) {
+                assertEquals(i, pages.read_page(i)[0]);
+                assertEquals(100 + i, other.read_page(i)[0]);
+            }
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
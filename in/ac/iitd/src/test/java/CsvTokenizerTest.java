@@ -0,0 +1,71 @@
+import Utils.CsvTokenizer;
+import au.com.bytecode.opencsv.CSVParser;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class CsvTokenizerTest {
+
+    @Test
+    public void testSameFieldsAsOpencsv() {
+        try {
+            String[] lines = {
+                "1,\"Congo, The Democratic Republic of the\",2006-02-15 09:44:00",
+                "2,\"{\"\"Behind the Scenes\"\"}\",\"\"",
+                "3,\\x89504e,caf\u00e9",
+                "4,a, \"b\" ,c\"d\"e",
+                "5,,\"a\\\"b\""
+            };
+            Path path = Files.createTempFile("csv_tokenizer_test", ".csv");
+            // every kind of line end, and a blank line that is skipped
+            Files.write(path, (lines[0] + "\r\n" + lines[1] + "\n\n" + lines[2] + "\r" + lines[3] + "\n" + lines[4]).getBytes(StandardCharsets.UTF_8));
+
+            CSVParser parser = new CSVParser();
+            try (CsvTokenizer csv = new CsvTokenizer(path)) {
+                for (String line : lines) {
+                    assertTrue(csv.next_row());
+                    String[] expected = parser.parseLine(line);
+                    assertEquals(expected.length, csv.num_fields());
+                    for (int i = 0; i < expected.length; i++) {
+                        assertEquals(expected[i], csv.get_string(i));
+                    }
+                    assertEquals(Integer.parseInt(expected[0]), csv.get_int(0));
+                }
+                assertFalse(csv.next_row());
+            }
+            Files.delete(path);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testNumbersFromBytes() {
+        try {
+            String[] values = {"7.99", "-0.0", "0.01", "123456789", "-2147483648", "1e3", ".5", "+4.25", "3.14159265358979323846", "NaN"};
+            Path path = Files.createTempFile("csv_tokenizer_test", ".csv");
+            Files.write(path, String.join(",", values).getBytes(StandardCharsets.UTF_8));
+            try (CsvTokenizer csv = new CsvTokenizer(path)) {
+                assertTrue(csv.next_row());
+                for (int i = 0; i < values.length; i++) {
+                    assertEquals(Double.doubleToLongBits(Double.parseDouble(values[i])), Double.doubleToLongBits(csv.get_double(i)));
+                    assertEquals(Float.floatToIntBits(Float.parseFloat(values[i])), Float.floatToIntBits(csv.get_float(i)));
+                }
+                assertEquals(-2147483648, csv.get_int(4));
+            }
+            Files.delete(path);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
@@ -0,0 +1,52 @@
+import storage.Block;
+import storage.File;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class FileStatsTest {
+
+    @Test
+    public void testIncrementalStatistics() {
+        try {
+            File f = new File();
+            f.add_block(new Block());
+            assertEquals(0, f.get_num_records());
+            assertEquals(0, f.get_num_data_blocks());
+            assertEquals(0.0, f.get_avg_record_size(), 0.0);
+
+            // 100 records of 50..149 bytes, the same way loadFile adds them
+            long recordBytes = 0;
+            for (int i = 0; i < 100; i++) {
+                byte[] record = new byte[50 + i];
+                recordBytes += record.length;
+                if (!f.add_record_to_last_block(record)) {
+                    f.add_record_to_new_block(record);
+                }
+            }
+
+            // recount from the blocks themselves
+            int numRecords = 0;
+            long bytesUsed = 0;
+            for (int b = 1; b < f.get_num_blocks(); b++) {
+                byte[] header = f.get_data(b, 0, 2);
+                int n = (header[0] << 8) | (header[1] & 0xFF);
+                byte[] last = f.get_data(b, 2 + 2 * (n - 1), 2);
+                int lastOffset = ((last[0] & 0xFF) << 8) | (last[1] & 0xFF);
+                numRecords += n;
+                bytesUsed += 2 + 2 * n + (4096 - lastOffset);
+            }
+
+            assertEquals(100, f.get_num_records());
+            assertEquals(numRecords, f.get_num_records());
+            assertEquals(f.get_num_blocks() - 1, f.get_num_data_blocks());
+            assertEquals(bytesUsed, f.get_bytes_used());
+            assertEquals(recordBytes / 100.0, f.get_avg_record_size(), 1e-9);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
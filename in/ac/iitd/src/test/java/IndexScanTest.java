@@ -0,0 +1,314 @@
+import optimizer.convention.PConvention;
+import optimizer.rel.PIndexScan;
+import optimizer.rel.PSeqScan;
+import optimizer.rules.PRules;
+
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.tools.RuleSet;
+import org.apache.calcite.tools.RuleSets;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class IndexScanTest {
+
+    private List<Object []> run(MyCalciteConnection calciteConnection, String sql) throws Exception {
+        return calciteConnection.evaluate(plan(calciteConnection, sql));
+    }
+
+    private RelNode plan(MyCalciteConnection calciteConnection, String sql) throws Exception {
+        SqlNode sqlNode = calciteConnection.parseSql(sql);
+        SqlNode validatedSqlNode = calciteConnection.validateSql(sqlNode);
+        RelNode relNode = calciteConnection.convertSql(validatedSqlNode);
+
+        RuleSet rules = RuleSets.ofList(
+            PRules.PCustomRule.INSTANCE
+        );
+
+        return calciteConnection.logicalToPhysical(
+                relNode,
+                relNode.getTraitSet().plus(PConvention.INSTANCE),
+                rules
+        );
+    }
+
+    @Test
+    public void testIndexedRangeScans() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            calciteConnection.create_index("actor", "actor_id", 10);
+
+            List<Object []> result = run(calciteConnection, "select * from actor where actor_id >= 100");
+            assertEquals(101, result.size());
+            for (Object [] row : result) {
+                assertTrue((Integer) row[0] >= 100);
+            }
+
+            assertEquals(6, run(calciteConnection, "select * from actor where actor_id < 7").size());
+            assertEquals(1, run(calciteConnection, "select * from actor where actor_id <= 1").size());
+            assertEquals(1, run(calciteConnection, "select * from actor where actor_id = 55").size());
+            assertEquals(0, run(calciteConnection, "select * from actor where actor_id > 200").size());
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testIndexedScanWithDuplicateKeys() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            // customer_id repeats across many data blocks, so matches span several leaves
+            calciteConnection.create_index("rental", "customer_id", 3);
+
+            List<Object []> result = run(calciteConnection, "select * from rental where customer_id = 5");
+            assertEquals(38, result.size());
+
+            assertEquals(59, run(calciteConnection, "select * from rental where customer_id < 3").size());
+            assertEquals(41, run(calciteConnection, "select * from rental where customer_id >= 598").size());
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testFractionalBoundsOnIntegerColumn() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            calciteConnection.create_index("rental", "customer_id", 50);
+            calciteConnection.create_index("payment", Arrays.asList("customer_id", "staff_id"), 10);
+
+            // the bounds are rounded inwards, not truncated - >= 597.5 is >= 598
+            assertEquals(41, run(calciteConnection, "select * from rental where customer_id >= 597.5").size());
+            assertEquals(59, run(calciteConnection, "select * from rental where customer_id < 2.5").size());
+            assertEquals(38, run(calciteConnection, "select * from rental where customer_id > 4.5 and customer_id < 5.5").size());
+            assertEquals(run(calciteConnection, "select * from payment where customer_id = 1 and staff_id >= 2").size(),
+                    run(calciteConnection, "select * from payment where customer_id = 1 and staff_id > 1.5").size());
+            assertEquals(0, run(calciteConnection, "select * from rental where customer_id > 1e12").size());
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testIndexedScanOnDoubleColumn() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            calciteConnection.create_index("payment", "amount", 50);
+
+            List<Object []> result = run(calciteConnection, "select * from payment where amount >= 9.99");
+            assertEquals(340, result.size());
+            assertEquals(2744, run(calciteConnection, "select * from payment where amount < 1").size());
+
+            // the first payment in the file, decoded as stored
+            Object[] first = calciteConnection.get_records_from_block("payment", 1).get(0);
+            assertEquals(7.99, (Double) first[4], 1e-9);
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testProjectedColumns() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+
+            // no index on length - full scan, only title and film_id come back, in select list order
+            List<Object []> scanned = run(calciteConnection, "select title, film_id from film where length > 180");
+            assertEquals(39, scanned.size());
+            for (Object [] row : scanned) {
+                assertEquals(2, row.length);
+                assertTrue(row[0] instanceof String);
+                assertTrue(row[1] instanceof Integer);
+            }
+
+            calciteConnection.create_index("film", "film_id", 10);
+            List<Object []> indexed = run(calciteConnection, "select rating, title from film where film_id = 1");
+            assertEquals(1, indexed.size());
+            assertEquals("PG", indexed.get(0)[0]);
+            assertEquals("Academy Dinosaur", indexed.get(0)[1]);
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testCompoundPredicates() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            calciteConnection.create_index("film_actor", "actor_id", 10);
+            calciteConnection.create_index("film_actor", "film_id", 10);
+
+            // both conjuncts indexed - the record id sets are intersected
+            List<Object []> result = run(calciteConnection, "select film_id from film_actor where actor_id = 107 and film_id > 500");
+            assertEquals(18, result.size());
+            for (Object [] row : result) {
+                assertTrue((Integer) row[0] > 500);
+            }
+            // both branches indexed - the sets are merged
+            assertEquals(52, run(calciteConnection, "select * from film_actor where actor_id = 107 or film_id = 1").size());
+
+            // one indexed conjunct, the other one is checked on the fetched records
+            calciteConnection.create_index("rental", "customer_id", 10);
+            assertEquals(22, run(calciteConnection, "select * from rental where customer_id = 5 and staff_id = 1").size());
+            // staff_id has no index, so this one is a full scan
+            assertEquals(69, run(calciteConnection, "select * from rental where (customer_id = 5 and inventory_id > 2000) or (customer_id > 595 and staff_id = 2)").size());
+            assertEquals(10, run(calciteConnection, "select * from actor where not (actor_id < 190) and actor_id <> 195").size());
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testCompositeIndex() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            calciteConnection.create_index("rental", Arrays.asList("customer_id", "rental_date"), 10);
+            calciteConnection.create_index("film_actor", Arrays.asList("actor_id", "film_id"), 10);
+
+            // equality on the leading column and a range on the next one
+            List<Object []> result = run(calciteConnection, "select rental_date from rental where customer_id = 5 and rental_date >= '2005-07'");
+            assertEquals(30, result.size());
+            for (Object [] row : result) {
+                assertTrue(((String) row[0]).compareTo("2005-07") >= 0);
+            }
+            assertEquals(8, run(calciteConnection, "select * from rental where customer_id = 5 and rental_date < '2005-07'").size());
+            // the leading column alone, and with an extra condition checked on the records
+            assertEquals(38, run(calciteConnection, "select * from rental where customer_id = 5").size());
+            assertEquals(42, run(calciteConnection, "select * from rental where customer_id <= 3 and staff_id = 1").size());
+
+            assertEquals(1, run(calciteConnection, "select * from film_actor where actor_id = 107 and film_id = 172").size());
+            assertEquals(8, run(calciteConnection, "select * from film_actor where actor_id = 107 and film_id > 500 and film_id < 700").size());
+            // film_id does not lead the index, so this is a full scan
+            assertEquals(10, run(calciteConnection, "select * from film_actor where film_id = 1").size());
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testCoveringIndex() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            calciteConnection.create_index("film", Arrays.asList("film_id"), Arrays.asList("title"), 10);
+            calciteConnection.create_index("payment", Arrays.asList("customer_id"), Arrays.asList("amount"), 10);
+
+            // answered from the leaves alone
+            List<Object []> result = run(calciteConnection, "select title from film where film_id > 900");
+            assertEquals(100, result.size());
+            assertEquals("Academy Dinosaur", run(calciteConnection, "select title from film where film_id = 1").get(0)[0]);
+            // the included column is tested on the index entries
+            assertEquals(190, run(calciteConnection, "select title from film where film_id < 300 and title > 'C'").size());
+            result = run(calciteConnection, "select amount from payment where customer_id = 7 and amount < 1");
+            assertEquals(4, result.size());
+            for (Object [] row : result) {
+                assertTrue((Double) row[0] < 1);
+            }
+
+            // description is not in the index, the records are read
+            result = run(calciteConnection, "select title, description from film where film_id > 990");
+            assertEquals(10, result.size());
+            assertNotNull(result.get(0)[1]);
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testCoveringIndexWithWideColumn() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            // descriptions run past 100 bytes, so far fewer than order - 1 entries fit in a leaf
+            calciteConnection.create_index("film", Arrays.asList("film_id"), Arrays.asList("description"), 200);
+
+            List<Object []> result = run(calciteConnection, "select description from film where film_id > 900");
+            assertEquals(100, result.size());
+            for (Object [] row : result) {
+                assertTrue(((String) row[0]).length() > 50);
+            }
+            assertEquals(50, run(calciteConnection, "select description from film where film_id <= 50").size());
+            assertEquals(1000, run(calciteConnection, "select description from film where film_id >= 1").size());
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testCostBasedPlanChoice() {
+        try {
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            calciteConnection.create_index("actor", "actor_id", 10);
+            calciteConnection.create_index("rental", "customer_id", 50);
+
+            // every record matches, reading the table beats going through the index
+            RelNode phyRelNode = plan(calciteConnection, "select * from actor where actor_id >= 1");
+            assertTrue(phyRelNode instanceof PSeqScan);
+            assertEquals(200, calciteConnection.evaluate(phyRelNode).size());
+            assertTrue(plan(calciteConnection, "select * from rental where customer_id >= 3") instanceof PSeqScan);
+
+            // a few records out of many blocks
+            phyRelNode = plan(calciteConnection, "select * from rental where customer_id = 5");
+            assertTrue(phyRelNode instanceof PIndexScan);
+            assertEquals(38, calciteConnection.evaluate(phyRelNode).size());
+            assertTrue(plan(calciteConnection, "select * from rental where customer_id = 5 or customer_id = 9") instanceof PIndexScan);
+
+            // no index on the column
+            assertTrue(plan(calciteConnection, "select * from rental where inventory_id = 10") instanceof PSeqScan);
+
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
@@ -0,0 +1,56 @@
+import storage.Block;
+import storage.File;
+import storage.MappedFile;
+import storage.PageFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class MappedFileTest {
+
+    @Test
+    public void testMappedTableMatchesWrittenFile() {
+        try {
+            File f = new File();
+            f.add_block(new Block());
+            for (int i = 0; i < 300; i++) {
+                byte[] record = new byte[40 + i % 20];
+                record[0] = (byte) i;
+                if (!f.add_record_to_last_block(record)) {
+                    f.add_record_to_new_block(record);
+                }
+            }
+            Path path = Files.createTempFile("mapped_file_test", ".pages");
+            PageFile pages = new PageFile(path);
+            f.write_to(pages);
+            pages.close();
+
+            MappedFile mapped = MappedFile.open(path);
+            assertEquals(f.get_num_blocks(), mapped.get_num_blocks());
+            assertEquals(f.get_num_records(), mapped.get_num_records());
+            assertEquals(f.get_bytes_used(), mapped.get_bytes_used());
+            assertEquals(f.get_avg_record_size(), mapped.get_avg_record_size(), 1e-9);
+            for (int b = 0; b < f.get_num_blocks(); b++) {
+                assertArrayEquals(f.get_data(b), mapped.get_data(b));
+            }
+            assertArrayEquals(f.get_data(1, 100, 16), mapped.get_data(1, 100, 16));
+            assertNull(mapped.get_data(mapped.get_num_blocks()));
+
+            try {
+                mapped.write_data(1, 0, new byte[2]);
+                fail("Mapped file accepted a write");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+            Files.delete(path);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
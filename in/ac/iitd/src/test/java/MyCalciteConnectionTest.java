@@ -6,12 +6,19 @@ import org.apache.calcite.tools.RuleSet;
 import org.apache.calcite.tools.RuleSets;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.type.RelDataType;
+import manager.StorageManager;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public class MyCalciteConnectionTest {
 
@@ -80,4 +87,93 @@ public class MyCalciteConnectionTest {
         System.out.println("\nTest passed :)\n");
         return;
     }
+
+    @Test
+    public void testConcurrentFirstAccessLoadsOnce() {
+        try {
+            // rental isn't loaded until it is first used - all threads ask for it at once and see the same table
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            List<List<Object []>> results = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                results.add(null);
+                final int slot = t;
+                threads.add(new Thread(() -> results.set(slot, calciteConnection.get_records_from_block("rental", 3))));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            for (List<Object []> result : results) {
+                assertNotNull(result);
+                assertEquals(results.get(0).size(), result.size());
+                for (int i = 0; i < result.size(); i++) {
+                    assertArrayEquals(results.get(0).get(i), result.get(i));
+                }
+            }
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testParallelLoadThroughSmallPool() {
+        // more tables loading at once than the pool has frames - a load waits for a frame instead of failing
+        String[] names = {StorageManager.STORAGE_DIR_PROPERTY, StorageManager.BUFFER_FRAMES_PROPERTY,
+                StorageManager.LOAD_THREADS_PROPERTY, StorageManager.LAZY_LOAD_PROPERTY};
+        Map<String, String> saved = new HashMap<>();
+        for (String name : names) {
+            saved.put(name, System.getProperty(name));
+        }
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("parallel_load_test");
+            System.setProperty(StorageManager.STORAGE_DIR_PROPERTY, dir.toString());
+            System.setProperty(StorageManager.BUFFER_FRAMES_PROPERTY, "2");
+            System.setProperty(StorageManager.LOAD_THREADS_PROPERTY, "8");
+            System.setProperty(StorageManager.LAZY_LOAD_PROPERTY, "false");
+
+            MyCalciteConnection calciteConnection = new MyCalciteConnection();
+            assertEquals(200, count(calciteConnection, "select * from actor where actor_id >= 1"));
+            assertEquals(1000, count(calciteConnection, "select * from film where film_id >= 1"));
+            assertEquals(16044, count(calciteConnection, "select * from rental where rental_id >= 1"));
+            calciteConnection.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        } finally {
+            for (String name : names) {
+                if (saved.get(name) == null) {
+                    System.clearProperty(name);
+                } else {
+                    System.setProperty(name, saved.get(name));
+                }
+            }
+            if (dir != null) {
+                try (Stream<Path> files = Files.walk(dir)) {
+                    files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+                } catch (Exception e) {
+                    System.out.println(e);
+                }
+            }
+        }
+        System.out.println("Test passed :)");
+    }
+
+    private static int count(MyCalciteConnection calciteConnection, String sql) throws Exception {
+        RelNode relNode = calciteConnection.convertSql(calciteConnection.validateSql(calciteConnection.parseSql(sql)));
+        RelNode phyRelNode = calciteConnection.logicalToPhysical(
+                relNode,
+                relNode.getTraitSet().plus(PConvention.INSTANCE),
+                RuleSets.ofList(PRules.PCustomRule.INSTANCE)
+        );
+        return calciteConnection.evaluate(phyRelNode).size();
+    }
 }
@@ -0,0 +1,53 @@
+import storage.RecordIdSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class RecordIdSetTest {
+
+    @Test
+    public void testBlocksPastIntBitIndex() {
+        try {
+            // with 2048 slots a block, block 1 << 20 used to be bit 2^31 - past the end of an int
+            int far = 1 << 20;
+            RecordIdSet a = new RecordIdSet();
+            a.add(far + 5, 2047);
+            a.add(far, 0);
+            a.add(3, 7);
+            a.add(Integer.MAX_VALUE, 1);
+            assertEquals(4, a.size());
+            assertTrue(a.contains(far + 5, 2047));
+            assertFalse(a.contains(far + 5, 2046));
+            // blocks come out in file order
+            assertEquals(Arrays.asList(3, far, far + 5, Integer.MAX_VALUE), new ArrayList<>(a.block_ids()));
+
+            RecordIdSet b = new RecordIdSet();
+            b.add(far + 5, 2047);
+            b.add(far, 1);
+            b.add(Integer.MAX_VALUE, 1);
+
+            RecordIdSet union = new RecordIdSet();
+            union.or(a);
+            union.or(b);
+            assertEquals(5, union.size());
+
+            a.and(b);
+            assertEquals(2, a.size());
+            List<Integer> blocks = new ArrayList<>(a.block_ids());
+            assertEquals(Arrays.asList(far + 5, Integer.MAX_VALUE), blocks);
+            assertTrue(a.slots(far).isEmpty());
+
+            a.and(new RecordIdSet());
+            assertTrue(a.is_empty());
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
@@ -0,0 +1,182 @@
+import index.bplusTree.BPlusTreeIndexFile;
+import storage.Block;
+import storage.BlockFactory;
+import storage.BufferPool;
+import storage.File;
+import storage.PageFile;
+import storage.PagedBlockList;
+import storage.WriteAheadLog;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class WriteAheadLogTest {
+
+    // replays the log over the page files in dir, the way StorageManager does at startup
+    private static int redo(Path dir) {
+        HashMap<Integer, PageFile> files = new HashMap<>();
+        int count = WriteAheadLog.recover(dir.resolve("wal"), new WriteAheadLog.Redo() {
+            @Override
+            public void write(int file_id, int page_id, int block_size, int offset, byte[] data) {
+                PageFile pages = files.computeIfAbsent(file_id, id -> new PageFile(dir.resolve(id + ".pages"), block_size));
+                byte[] page = page_id < pages.num_pages() ? pages.read_page(page_id) : new byte[block_size];
+                System.arraycopy(data, 0, page, offset, data.length);
+                pages.write_page(page_id, page);
+            }
+
+            @Override
+            public void truncate(int file_id, int num_pages, int block_size) {
+                files.computeIfAbsent(file_id, id -> new PageFile(dir.resolve(id + ".pages"), block_size)).truncate(num_pages);
+            }
+        });
+        for (PageFile pages : files.values()) {
+            pages.close();
+        }
+        return count;
+    }
+
+    @Test
+    public void testCommittedChangesSurviveACrash() {
+        try {
+            Path dir = Files.createTempDirectory("wal_test");
+            BufferPool pool = new BufferPool(4);
+            WriteAheadLog log = new WriteAheadLog(dir.resolve("wal"));
+            pool.set_log(log);
+
+            File table = new File();
+            table.add_block(new Block());
+            table.page_out(pool, new PageFile(dir.resolve("0.pages")));
+            table.log_as(0);
+            BPlusTreeIndexFile<Integer> index = new BPlusTreeIndexFile<>(4, Integer.class);
+            index.page_out(pool, new PageFile(dir.resolve("1.pages")));
+            index.log_as(1);
+
+            for (int i = 0; i < 300; i++) {
+                byte[] record = new byte[100];
+                record[0] = (byte) i;
+                record[99] = (byte) (i >> 8);
+                if (!table.add_record_to_last_block(record)) {
+                    table.add_record_to_new_block(record);
+                }
+                index.insert(i * 7 % 300, i + 1);
+            }
+            log.commit(Math.max(table.log_changes(), index.log_changes()));
+            byte[] last = table.get_data(table.get_num_blocks() - 1).clone();
+            ArrayList<Integer> bfs = index.return_bfs();
+            // crash - the pages still in the pool are never written
+            assertTrue(pool.get_evictions() > 0);
+
+            assertTrue(redo(dir) > 0);
+            File reopened = File.open(new BufferPool(4), new PageFile(dir.resolve("0.pages")));
+            assertEquals(300, reopened.get_num_records());
+            assertArrayEquals(last, reopened.get_data(reopened.get_num_blocks() - 1));
+            BPlusTreeIndexFile<Integer> reopened_index = BPlusTreeIndexFile.open(new BufferPool(4), new PageFile(dir.resolve("1.pages")), Integer.class);
+            assertEquals(bfs, reopened_index.return_bfs());
+            for (int key = 0; key < 300; key++) {
+                assertTrue(reopened_index.search(key) != -1);
+            }
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testChangesAfterLoggingWhilePinned() {
+        try {
+            Path dir = Files.createTempDirectory("wal_test");
+            BufferPool pool = new BufferPool(4);
+            WriteAheadLog log = new WriteAheadLog(dir.resolve("wal"));
+            pool.set_log(log);
+            PageFile pages = new PageFile(dir.resolve("0.pages"));
+            pages.write_page(0, new byte[PageFile.PAGE_SIZE]);
+            PagedBlockList<Block> blocks = new PagedBlockList<>(pool, pages, new BlockFactory<Block>() {
+                @Override
+                public byte kind(Block block) {
+                    return 0;
+                }
+
+                @Override
+                public Block create(byte kind, byte[] data) {
+                    return new Block(data, PageFile.PAGE_SIZE);
+                }
+            }, new byte[1], 1);
+            blocks.log_as(0);
+
+            // the changes made so far are logged while the page is still pinned, the rest after
+            Block block = blocks.pin(0);
+            block.write_data(0, new byte[]{1});
+            log.commit(blocks.log_changes());
+            block.write_data(10, new byte[]{2});
+            blocks.unpin(0, true);
+            log.commit(blocks.log_changes());
+            // crash - the page was never written
+
+            assertEquals(2, redo(dir));
+            byte[] page = new PageFile(dir.resolve("0.pages")).read_page(0);
+            assertEquals(1, page[0]);
+            assertEquals(2, page[10]);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void testConcurrentCommitsShareForces() {
+        try {
+            Path dir = Files.createTempDirectory("wal_test");
+            WriteAheadLog log = new WriteAheadLog(dir.resolve("wal"));
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int file_id = t;
+                writers.add(new Thread(() -> {
+                    for (int i = 0; i < 50; i++) {
+                        byte[] data = {(byte) file_id, (byte) i};
+                        log.commit(log.log_range(file_id, i, 4096, 0, data, 0, data.length));
+                    }
+                }));
+            }
+            for (Thread writer : writers) {
+                writer.start();
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            assertEquals(400, log.get_num_commits());
+            assertTrue(log.get_num_forces() <= log.get_num_commits());
+            log.close();
+
+            // every committed record is there, each writer's in its own order
+            int[] next = new int[8];
+            int count = WriteAheadLog.recover(dir.resolve("wal"), new WriteAheadLog.Redo() {
+                @Override
+                public void write(int file_id, int page_id, int block_size, int offset, byte[] data) {
+                    assertEquals(next[file_id]++, page_id);
+                    assertEquals(file_id, data[0]);
+                }
+
+                @Override
+                public void truncate(int file_id, int num_pages, int block_size) {
+                    fail("No truncate was logged");
+                }
+            });
+            assertEquals(400, count);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+}
@@ -1,7 +1,14 @@
+import index.bplusTree.BPlusTreeIndexFile;
+import index.bplusTree.CompositeKey;
+import index.bplusTree.IndexCursor;
+import index.bplusTree.IndexEntry;
+import index.bplusTree.IndexStatistics;
+import storage.PageFile;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 public class BPlusTreeTest {
 
@@ -49,4 +56,404 @@ public class BPlusTreeTest {
         }
         System.out.println("Test passed :)");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_range_cursor() {
+        BPlusTreeIndexFile<Integer> tree = new BPlusTreeIndexFile<>(3, Integer.class);
+        // every key twice, inserted out of order
+        for (int i = 0; i < 2; i++) {
+            for (int key = 50; key >= 1; key -= 2) {
+                tree.insert(key, key);
+            }
+            for (int key = 1; key <= 49; key += 2) {
+                tree.insert(key, key);
+            }
+        }
+
+        List<Integer> keys = new ArrayList<>();
+        IndexCursor<Integer> cursor = tree.scan(10, true, 20, false);
+        while (cursor.next()) {
+            assertEquals((int) cursor.getKey(), cursor.getBlockId());
+            keys.add(cursor.getKey());
+        }
+        assertEquals(20, keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(10 + i / 2, (int) keys.get(i));
+        }
+
+        int count = 0;
+        cursor = tree.scan(null, false, 5, true);
+        while (cursor.next()) {
+            count++;
+        }
+        assertEquals(10, count);
+
+        count = 0;
+        cursor = tree.scan(50, false, null, false);
+        while (cursor.next()) {
+            count++;
+        }
+        assertEquals(0, count);
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_double_and_string_keys() {
+        // double keys use the fixed width nodes, negative values must still sort before positive ones
+        BPlusTreeIndexFile<Double> doubles = new BPlusTreeIndexFile<>(4, Double.class);
+        for (int i = 20; i >= -20; i--) {
+            doubles.insert(i * 1.5, i + 100);
+        }
+        Double prev = null;
+        int count = 0;
+        IndexCursor<Double> cursor = doubles.scan(null, false, null, false);
+        while (cursor.next()) {
+            if (prev != null) {
+                assertTrue(prev < cursor.getKey());
+            }
+            assertEquals(cursor.getKey() / 1.5 + 100, cursor.getBlockId(), 1e-9);
+            prev = cursor.getKey();
+            count++;
+        }
+        assertEquals(41, count);
+        assertTrue(doubles.search(-30.0) != -1);
+        assertEquals(-1, doubles.search(-29.0));
+
+        // string keys are length prefixed by their encoded size
+        BPlusTreeIndexFile<String> strings = new BPlusTreeIndexFile<>(3, String.class);
+        String[] words = {"zo\u00eb", "apple", "caf\u00e9", "banana", "na\u00efve", "cherry"};
+        for (int i = 0; i < words.length; i++) {
+            strings.insert(words[i], i + 1);
+        }
+        for (String word : words) {
+            assertTrue(strings.search(word) != -1);
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_bulk_load() {
+        // keys 0..99, every key three times, already sorted
+        List<IndexEntry<Integer>> entries = new ArrayList<>();
+        for (int key = 0; key < 100; key++) {
+            for (int copy = 0; copy < 3; copy++) {
+                entries.add(new IndexEntry<>(key, key + 1, copy));
+            }
+        }
+        BPlusTreeIndexFile<Integer> tree = new BPlusTreeIndexFile<>(4, Integer.class);
+        tree.bulk_load(entries, 1.0);
+
+        // inserts after the bulk load split the full nodes
+        for (int key = 0; key < 100; key += 7) {
+            tree.insert(key, key + 1, 3);
+        }
+
+        int count = 0;
+        IndexCursor<Integer> cursor = tree.scan(null, false, null, false);
+        Integer prev = null;
+        while (cursor.next()) {
+            if (prev != null) {
+                assertTrue(prev <= cursor.getKey());
+            }
+            assertEquals(cursor.getKey() + 1, cursor.getBlockId());
+            prev = cursor.getKey();
+            count++;
+        }
+        assertEquals(315, count);
+
+        count = 0;
+        cursor = tree.scan(42, true, 42, true);
+        while (cursor.next()) {
+            assertEquals(count, cursor.getSlotId());
+            count++;
+        }
+        assertEquals(4, count);
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_write_and_reopen() {
+        try {
+            BPlusTreeIndexFile<String> tree = new BPlusTreeIndexFile<>(4, String.class);
+            for (int i = 0; i < 200; i++) {
+                tree.insert("key" + (i * 37 % 200), i + 1);
+            }
+
+            java.nio.file.Path path = java.nio.file.Files.createTempFile("bplustree", ".pages");
+            PageFile pages = new PageFile(path);
+            tree.write_to(pages);
+            BPlusTreeIndexFile<String> reopened = BPlusTreeIndexFile.open(pages, String.class);
+            pages.close();
+            java.nio.file.Files.delete(path);
+
+            assertEquals(tree.get_height(), reopened.get_height());
+            assertEquals(tree.return_bfs(), reopened.return_bfs());
+            for (int i = 0; i < 200; i++) {
+                assertEquals(tree.search("key" + i), reopened.search("key" + i));
+            }
+            // the reopened tree takes inserts like the original
+            reopened.insert("key200", 201);
+            assertTrue(reopened.search("key200") != -1);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_large_blocks() {
+        try {
+            // 64KB nodes, and record block ids past what 2 bytes can hold
+            BPlusTreeIndexFile<String> tree = new BPlusTreeIndexFile<>(3000, String.class, 65536);
+            for (int i = 0; i < 6000; i++) {
+                int key = i * 7919 % 6000;
+                tree.insert(String.format("key%05d", key), 70000 + key);
+            }
+            assertEquals(2, tree.get_height());
+
+            java.nio.file.Path path = java.nio.file.Files.createTempFile("bplustree", ".pages");
+            PageFile pages = new PageFile(path, 65536);
+            tree.write_to(pages);
+            BPlusTreeIndexFile<String> reopened = BPlusTreeIndexFile.open(pages, String.class);
+            pages.close();
+            java.nio.file.Files.delete(path);
+
+            int count = 0;
+            IndexCursor<String> cursor = reopened.scan(null, false, null, false);
+            while (cursor.next()) {
+                assertEquals(String.format("key%05d", count), cursor.getKey());
+                assertEquals(70000 + count, cursor.getBlockId());
+                count++;
+            }
+            assertEquals(6000, count);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_composite_keys() {
+        // (int, double, string, nullable int) tuples - the byte order of the keys must be the tuple order
+        Object[][] tuples = new Object[400][];
+        java.util.Random random = new java.util.Random(42);
+        String[] words = {"", "a", "ab", "b", "z\u00e9", "\uffff", "\ud83d\ude00", "a\u0000"};
+        for (int i = 0; i < tuples.length; i++) {
+            tuples[i] = new Object[]{random.nextInt(5) - 2, (random.nextInt(7) - 3) * 0.5,
+                    words[random.nextInt(words.length)], random.nextInt(4) == 0 ? null : random.nextInt(3)};
+        }
+        for (Object[] t1 : tuples) {
+            for (Object[] t2 : tuples) {
+                int expected = Integer.signum(compareTuples(t1, t2));
+                int actual = Integer.signum(CompositeKey.compare(CompositeKey.encode(Arrays.asList(t1)), CompositeKey.encode(Arrays.asList(t2))));
+                assertEquals(expected, actual);
+            }
+        }
+
+        // all keys with the same leading values are one range of the tree
+        BPlusTreeIndexFile<byte[]> tree = new BPlusTreeIndexFile<>(4, byte[].class);
+        for (int i = 0; i < tuples.length; i++) {
+            tree.insert(CompositeKey.encode(Arrays.asList(tuples[i])), i + 1);
+        }
+        byte[] prefix = CompositeKey.encode(Arrays.asList(1, -0.5));
+        int expected = 0;
+        for (Object[] t : tuples) {
+            if (t[0].equals(1) && t[1].equals(-0.5)) {
+                expected++;
+            }
+        }
+        int count = 0;
+        IndexCursor<byte[]> cursor = tree.scan(prefix, true, CompositeKey.prefix_end(prefix), false);
+        while (cursor.next()) {
+            Object[] t = tuples[cursor.getBlockId() - 1];
+            assertEquals(1, t[0]);
+            assertEquals(-0.5, t[1]);
+            count++;
+        }
+        assertEquals(expected, count);
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_leaf_payloads() {
+        try {
+            // inserted one by one, so the payloads have to survive the splits
+            BPlusTreeIndexFile<byte[]> tree = new BPlusTreeIndexFile<>(4, byte[].class, 4096, true);
+            for (int i = 0; i < 300; i++) {
+                int key = i * 7 % 300;
+                tree.insert(CompositeKey.encode(Arrays.asList(key)), key + 1, 0,
+                        CompositeKey.encode(Arrays.asList("row" + key, key * 0.25)));
+            }
+
+            java.nio.file.Path path = java.nio.file.Files.createTempFile("bplustree", ".pages");
+            PageFile pages = new PageFile(path);
+            tree.write_to(pages);
+            BPlusTreeIndexFile<byte[]> reopened = BPlusTreeIndexFile.open(pages, byte[].class);
+            pages.close();
+            java.nio.file.Files.delete(path);
+            assertTrue(reopened.has_payloads());
+
+            Class<?>[] types = {String.class, Double.class};
+            int count = 0;
+            IndexCursor<byte[]> cursor = reopened.scan(null, false, null, false);
+            while (cursor.next()) {
+                Object[] key = CompositeKey.decode(cursor.getKey(), new Class<?>[]{Integer.class});
+                Object[] payload = CompositeKey.decode(cursor.getPayload(), types);
+                assertEquals(count, key[0]);
+                assertEquals("row" + count, payload[0]);
+                assertEquals(count * 0.25, (Double) payload[1], 0.0);
+                count++;
+            }
+            assertEquals(300, count);
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_wide_payloads() {
+        try {
+            // order 100 counts 99 entries to a leaf, but only about 13 entries of 300 bytes fit in 4KB -
+            // the leaves have to split (and be bulk loaded) on bytes
+            char[] filler = new char[280];
+            Arrays.fill(filler, 'x');
+            String wide = new String(filler);
+            Class<?>[] types = {String.class};
+
+            BPlusTreeIndexFile<byte[]> tree = new BPlusTreeIndexFile<>(100, byte[].class, 4096, true);
+            List<IndexEntry<byte[]>> entries = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                int key = i * 7 % 500;
+                byte[] payload = CompositeKey.encode(Arrays.asList(wide + key));
+                tree.insert(CompositeKey.encode(Arrays.asList(key)), key + 1, 0, payload);
+            }
+            for (int key = 0; key < 500; key++) {
+                entries.add(new IndexEntry<>(CompositeKey.encode(Arrays.asList(key)), key + 1, 0,
+                        CompositeKey.encode(Arrays.asList(wide + key))));
+            }
+            BPlusTreeIndexFile<byte[]> loaded = new BPlusTreeIndexFile<>(100, byte[].class, 4096, true);
+            loaded.bulk_load(entries, 1.0);
+
+            for (BPlusTreeIndexFile<byte[]> t : Arrays.asList(tree, loaded)) {
+                assertTrue(t.compute_statistics().get_num_leaves() >= 500 / 13);
+                int count = 0;
+                IndexCursor<byte[]> cursor = t.scan(null, false, null, false);
+                while (cursor.next()) {
+                    assertEquals(count, CompositeKey.decode(cursor.getKey(), new Class<?>[]{Integer.class})[0]);
+                    assertEquals(wide + count, CompositeKey.decode(cursor.getPayload(), types)[0]);
+                    count++;
+                }
+                assertEquals(500, count);
+            }
+
+            // an entry bigger than half a leaf is turned away before anything is written
+            char[] huge = new char[3000];
+            Arrays.fill(huge, 'y');
+            try {
+                tree.insert(CompositeKey.encode(Arrays.asList(1000)), 1, 0, CompositeKey.encode(Arrays.asList(new String(huge))));
+                fail("Entry too big for a leaf was accepted");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+            assertEquals(500, tree.compute_statistics().get_num_entries());
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_wide_keys() {
+        try {
+            // order 100 counts 99 keys to an internal node too, but only about 19 keys of 200 bytes fit in 4KB -
+            // internal nodes have to split (and be bulk loaded) on bytes, over more than one internal level
+            char[] filler = new char[195];
+            Arrays.fill(filler, 'k');
+            String prefix = new String(filler);
+            int n = 20000;
+
+            BPlusTreeIndexFile<String> tree = new BPlusTreeIndexFile<>(100, String.class, 4096, false);
+            for (int i = 0; i < n; i++) {
+                int key = (int) ((i * 7919L) % n);
+                tree.insert(prefix + String.format("%05d", key), key + 1);
+            }
+            List<IndexEntry<String>> entries = new ArrayList<>();
+            for (int key = 0; key < n; key++) {
+                entries.add(new IndexEntry<>(prefix + String.format("%05d", key), key + 1, 0));
+            }
+            BPlusTreeIndexFile<String> loaded = new BPlusTreeIndexFile<>(100, String.class, 4096, false);
+            loaded.bulk_load(entries, 1.0);
+
+            for (BPlusTreeIndexFile<String> t : Arrays.asList(tree, loaded)) {
+                assertTrue(t.compute_statistics().get_height() >= 4);
+                int count = 0;
+                IndexCursor<String> cursor = t.scan(null, false, null, false);
+                while (cursor.next()) {
+                    assertEquals(prefix + String.format("%05d", count), cursor.getKey());
+                    assertEquals(count + 1, cursor.getBlockId());
+                    count++;
+                }
+                assertEquals(n, count);
+                assertTrue(t.search(prefix + "12345") != -1);
+                assertEquals(-1, t.search(prefix + "x"));
+            }
+        } catch (Exception e) {
+            System.out.println(e);
+            System.out.println(e.getCause());
+            fail("Exception thrown");
+        }
+        System.out.println("Test passed :)");
+    }
+
+    @Test
+    public void test_statistics() {
+        // keys 0..49, key k inserted k % 3 + 1 times
+        BPlusTreeIndexFile<Integer> tree = new BPlusTreeIndexFile<>(4, Integer.class);
+        int entries = 0;
+        for (int key = 49; key >= 0; key--) {
+            for (int copy = 0; copy <= key % 3; copy++) {
+                tree.insert(key, key + 1, copy);
+                entries++;
+            }
+        }
+        IndexStatistics<Integer> stats = tree.compute_statistics();
+        assertEquals(tree.get_height(), stats.get_height());
+        assertEquals(entries, stats.get_num_entries());
+        assertEquals(50, stats.get_num_distinct_keys());
+        assertEquals(0, (int) stats.get_min_key());
+        assertEquals(49, (int) stats.get_max_key());
+        // at most 3 entries to a leaf of order 4
+        assertTrue(stats.get_num_leaves() >= entries / 3);
+
+        stats = new BPlusTreeIndexFile<>(4, Integer.class).compute_statistics();
+        assertEquals(0, stats.get_num_entries());
+        assertNull(stats.get_min_key());
+        System.out.println("Test passed :)");
+    }
+
+    // nulls first, then the natural order of the values
+    private static int compareTuples(Object[] t1, Object[] t2) {
+        for (int i = 0; i < t1.length; i++) {
+            if (t1[i] == null || t2[i] == null) {
+                if (t1[i] != t2[i]) {
+                    return t1[i] == null ? -1 : 1;
+                }
+                continue;
+            }
+            int cmp = ((Comparable<Object>) t1[i]).compareTo(t2[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+}